@@ -1,6 +1,7 @@
 package com.chenjie.kafka.annotation;
 
-import io.fabric8.kubernetes.client.KubernetesClient;
+import com.chenjie.kafka.utils.NamespaceResolver;
+import com.chenjie.kafka.utils.TopicNameResolver;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.BeansException;
@@ -23,25 +24,24 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import static com.chenjie.kafka.constants.KafkaPropertyConstants.DEFAULT_SPRING_KAFKA_NAMESPACE;
-import static com.chenjie.kafka.constants.KafkaPropertyConstants.SPRING_KAFKA_CONSUMER_NAMESPACE_KEY;
 
 
 /**
  * 修改kafkaListener注解中指定的 topic名，为其加上前缀
+ *
+ * @deprecated 通过反射修改注解只支持topics，已由{@link NamespaceKafkaListenerAnnotationEnhancer}代替
  */
+@Deprecated
 public class MyKafkaListenerAnnotationBeanPostProcessor implements BeanPostProcessor, Ordered {
     private final Environment env;
     private final LogAccessor logger = new LogAccessor(LogFactory.getLog(getClass()));
     private final Set<Class<?>> nonAnnotatedClasses = Collections.newSetFromMap(new ConcurrentHashMap<>(64));
-    private final String DEFAULT_SEPARATOR = "_";
     private final String EXPRESSION_PREFIX = "$";
     private final char EXPRESSION_SEPARATOR = ':';
     private String prefix;
-    private KubernetesClient kubernetesClient;
 
-    public MyKafkaListenerAnnotationBeanPostProcessor(Environment env, KubernetesClient client) {
+    public MyKafkaListenerAnnotationBeanPostProcessor(Environment env) {
         this.env = env;
-        this.kubernetesClient = client;
         prefix = this.env.getProperty("spring.kafka.consumer.namespace", DEFAULT_SPRING_KAFKA_NAMESPACE);
     }
 
@@ -111,12 +111,12 @@ public class MyKafkaListenerAnnotationBeanPostProcessor implements BeanPostProce
                     if (s.startsWith(EXPRESSION_PREFIX)) {
                         String realTopic = resolveTopicFromExpression(s);
                         if (Objects.nonNull(realTopic)) {
-                            return "".equals(prefix) ? realTopic : prefix + DEFAULT_SEPARATOR + realTopic;
+                            return TopicNameResolver.resolve(prefix, realTopic);
                         } else {
                             throw new IllegalArgumentException("cannot resolve placeholder: " + s);
                         }
                     } else {
-                        return "".equals(prefix) ? s : prefix + DEFAULT_SEPARATOR + s;
+                        return TopicNameResolver.resolve(prefix, s);
                     }
                 }
             }).toArray(val -> new String[topics.length]);
@@ -133,16 +133,7 @@ public class MyKafkaListenerAnnotationBeanPostProcessor implements BeanPostProce
      * @return
      */
     private String getDefaultNamespace() {
-        String consumerTopicPrefix = this.env.getProperty(SPRING_KAFKA_CONSUMER_NAMESPACE_KEY);
-        if (Objects.nonNull(consumerTopicPrefix)) {
-            return consumerTopicPrefix;
-        }
-        String k8sEnabled = this.env.getProperty("spring.cloud.kubernetes.enabled");
-        if ((Boolean.TRUE + "").equalsIgnoreCase(k8sEnabled)) {
-            return kubernetesClient.getNamespace() == null ? DEFAULT_SPRING_KAFKA_NAMESPACE : kubernetesClient.getNamespace();
-        } else {
-            return DEFAULT_SPRING_KAFKA_NAMESPACE;
-        }
+        return NamespaceResolver.consumerNamespace(env);
     }
 
     /**
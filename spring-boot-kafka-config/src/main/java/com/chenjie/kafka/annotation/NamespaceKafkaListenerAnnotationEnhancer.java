@@ -0,0 +1,83 @@
+package com.chenjie.kafka.annotation;
+
+import com.chenjie.kafka.utils.NamespaceResolver;
+import com.chenjie.kafka.utils.TopicNameResolver;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.kafka.annotation.KafkaListenerAnnotationBeanPostProcessor;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.AnnotatedElement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.DEFAULT_SPRING_KAFKA_NAMESPACE;
+
+/**
+ * 为@KafkaListener的topics、topicPartitions和topicPattern加上消费者命名空间前缀
+ * 占位符(${...})和SpEL(#{...})保持原样拼接在前缀后，由KafkaListenerAnnotationBeanPostProcessor统一解析
+ * 只改写注解属性，对单条和批量(List&lt;ConsumerRecord&gt;)监听器都适用
+ */
+public class NamespaceKafkaListenerAnnotationEnhancer implements KafkaListenerAnnotationBeanPostProcessor.AnnotationEnhancer {
+    private final LogAccessor logger = new LogAccessor(LogFactory.getLog(getClass()));
+    private final Environment env;
+    private volatile String namespace;
+
+    public NamespaceKafkaListenerAnnotationEnhancer(Environment env) {
+        this.env = env;
+    }
+
+    @Override
+    public Map<String, Object> apply(Map<String, Object> attributes, AnnotatedElement element) {
+        String prefix = getNamespace();
+        if (DEFAULT_SPRING_KAFKA_NAMESPACE.equals(prefix)) {
+            return attributes;
+        }
+        Map<String, Object> enhanced = new HashMap<>(attributes);
+        String[] topics = (String[]) attributes.get("topics");
+        if (Objects.nonNull(topics) && topics.length > 0) {
+            String[] prefixed = Arrays.stream(topics).map(topic -> TopicNameResolver.resolve(prefix, topic)).toArray(String[]::new);
+            enhanced.put("topics", prefixed);
+            logger.info(() -> "prefixed consumer topics of " + element + ": " + Arrays.asList(prefixed));
+        }
+        TopicPartition[] topicPartitions = (TopicPartition[]) attributes.get("topicPartitions");
+        if (Objects.nonNull(topicPartitions) && topicPartitions.length > 0) {
+            enhanced.put("topicPartitions", Arrays.stream(topicPartitions)
+                    .map(topicPartition -> prefix(prefix, topicPartition))
+                    .toArray(TopicPartition[]::new));
+        }
+        String topicPattern = (String) attributes.get("topicPattern");
+        if (StringUtils.hasText(topicPattern)) {
+            String prefixed = Pattern.quote(prefix + TopicNameResolver.DEFAULT_SEPARATOR) + "(?:" + topicPattern + ")";
+            enhanced.put("topicPattern", prefixed);
+            logger.info(() -> "prefixed consumer topic pattern of " + element + ": " + prefixed);
+        }
+        return enhanced;
+    }
+
+    private static TopicPartition prefix(String prefix, TopicPartition topicPartition) {
+        Map<String, Object> attributes = new HashMap<>(AnnotationUtils.getAnnotationAttributes(topicPartition));
+        attributes.put("topic", TopicNameResolver.resolve(prefix, topicPartition.topic()));
+        return AnnotationUtils.synthesizeAnnotation(attributes, TopicPartition.class, null);
+    }
+
+    /**
+     * 获取消费者命名空间，首次使用时解析并缓存
+     *
+     * @return
+     */
+    public String getNamespace() {
+        String resolved = this.namespace;
+        if (Objects.isNull(resolved)) {
+            resolved = NamespaceResolver.consumerNamespace(env);
+            this.namespace = resolved;
+        }
+        return resolved;
+    }
+}
@@ -13,5 +13,14 @@ public @interface SendMessage {
     //默认为发送邮件topic
     String value();
 
+    /**
+     * 消息key的SpEL表达式，可引用方法参数(#p0或参数名)和返回值(#result)，为空时不指定key
+     */
+    String key() default "";
+
+    /**
+     * 是否在切面线程池中序列化并发送，不阻塞业务线程
+     */
+    boolean async() default false;
 
 }
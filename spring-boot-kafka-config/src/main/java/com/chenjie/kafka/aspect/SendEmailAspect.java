@@ -1,7 +1,10 @@
 package com.chenjie.kafka.aspect;
 
-import com.alibaba.fastjson.JSONObject;
 import com.chenjie.kafka.annotation.SendMessage;
+import com.chenjie.kafka.outbox.KafkaOutbox;
+import com.chenjie.kafka.serializer.FastJsonMessageSerializer;
+import com.chenjie.kafka.serializer.MessageSerializer;
+import com.chenjie.kafka.serializer.RawValueSerializer;
 import com.chenjie.kafka.service.KafkaService;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.AfterReturning;
@@ -10,21 +13,54 @@ import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.util.StringUtils;
 
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * SendMessage注解切面，向kafka中发送消息
+ * 序列化由MessageSerializer完成，返回byte[]或ByteBuffer时视为已序列化，不经过MessageSerializer直接发送；
+ * async模式下key表达式求值、序列化和发送都交给切面线程池，不占用业务线程
+ * 开启outbox时消息先追加到本地outbox，broker不可用时也不会丢失；成功数在relay发送成功后才计入
  */
 @Aspect
 public class SendEmailAspect {
     private static final Logger logger = LoggerFactory.getLogger(SendEmailAspect.class);
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser();
+    private static final ParameterNameDiscoverer PARAMETER_NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
 
     private KafkaService kafkaService;
+    private final MessageSerializer serializer;
+    private final Executor asyncExecutor;
+    private final boolean asyncDefault;
+    private final Map<Method, Expression> keyExpressions = new ConcurrentHashMap<>();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong outboxAppendedCount = new AtomicLong();
+    private KafkaOutbox outbox;
+    private volatile SendMessageObserver observer = SendMessageObserver.NOOP;
 
     public SendEmailAspect(KafkaService<?, ?> kafkaService) {
+        this(kafkaService, new FastJsonMessageSerializer(), null, false);
+    }
+
+    public SendEmailAspect(KafkaService<?, ?> kafkaService, MessageSerializer serializer, Executor asyncExecutor, boolean asyncDefault) {
         this.kafkaService = kafkaService;
+        this.serializer = serializer;
+        this.asyncExecutor = asyncExecutor;
+        this.asyncDefault = asyncDefault;
     }
 
     @Pointcut("@annotation(com.chenjie.kafka.annotation.SendMessage)")
@@ -48,26 +84,122 @@ public class SendEmailAspect {
             return;
         }
 
-        if (!method.isAnnotationPresent(SendMessage.class)) {
+        SendMessage sendMessage = method.getAnnotation(SendMessage.class);
+        if (sendMessage == null) {
             logger.error(">>>>>SendMessage annotation does not exist in method>>>>>");
             return;
         }
 
-        if (StringUtils.isEmpty(rvt)) {
-            logger.error(">>>>>return value is empty in method>>>>>");
+        if (rvt == null || "".equals(rvt)) {
+            skippedCount.incrementAndGet();
+            logger.debug("return value is empty in method {}, skip sending", method.getName());
             return;
         }
 
-        SendMessage sendMessage = method.getAnnotation(SendMessage.class);
         String topic = sendMessage.value();
+        Object[] args = joinPoint.getArgs();
+        if (asyncExecutor != null && (asyncDefault || sendMessage.async())) {
+            long intercepted = System.nanoTime();
+            try {
+                asyncExecutor.execute(() -> send(topic, sendMessage, method, args, rvt, System.nanoTime() - intercepted));
+                return;
+            } catch (RejectedExecutionException e) {
+                logger.warn("send message executor rejected, send on caller thread, topic:[{}]", topic);
+            }
+        }
+        send(topic, sendMessage, method, args, rvt, 0L);
+    }
 
+    @SuppressWarnings("unchecked")
+    private void send(String topic, SendMessage sendMessage, Method method, Object[] args, Object rvt, long handoffNanos) {
+        SendMessageObserver observer = this.observer;
+        long start = System.nanoTime();
+        long serializeNanos = 0L;
         try {
-            kafkaService.send(topic, JSONObject.toJSONString(rvt));
-            logger.info("send message success topic:[{}], data : [{}]", topic, rvt.toString());
+            String key = resolveKey(sendMessage, method, args, rvt);
+            Object message = RawValueSerializer.isRaw(rvt) ? rvt : serializer.serialize(rvt);
+            serializeNanos = System.nanoTime() - start;
+            if (outbox != null) {
+                outbox.append(topic, key, message instanceof ByteBuffer ? toBytes((ByteBuffer) message) : message);
+                outboxAppendedCount.incrementAndGet();
+                observer.onSendMessage(topic, handoffNanos, serializeNanos, null);
+                return;
+            }
+            long serialized = serializeNanos;
+            kafkaService.sendAsync(topic, kafkaService.getNamespace(), null, null, key, message)
+                    .whenComplete((result, ex) -> {
+                        if (ex == null) {
+                            sentCount.incrementAndGet();
+                        } else {
+                            failedCount.incrementAndGet();
+                            logger.error("send message error topic:[{}]", topic, ex);
+                        }
+                        observer.onSendMessage(topic, handoffNanos, serialized, (Throwable) ex);
+                    });
         } catch (Exception e) {
-            e.printStackTrace();
-            logger.error("send message error topic:[{}], data : [{}] , error : [{}]", topic, rvt.toString(), e);
+            failedCount.incrementAndGet();
+            logger.error("send message error topic:[{}]", topic, e);
+            observer.onSendMessage(topic, handoffNanos, serializeNanos, e);
         }
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        ByteBuffer source = buffer.duplicate();
+        source.rewind();
+        byte[] bytes = new byte[source.remaining()];
+        source.get(bytes);
+        return bytes;
+    }
+
+    private String resolveKey(SendMessage sendMessage, Method method, Object[] args, Object rvt) {
+        if (!StringUtils.hasText(sendMessage.key())) {
+            return null;
+        }
+        Expression expression = keyExpressions.computeIfAbsent(method, m -> PARSER.parseExpression(sendMessage.key()));
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(rvt, method, args, PARAMETER_NAME_DISCOVERER);
+        context.setVariable("result", rvt);
+        return expression.getValue(context, String.class);
+    }
+
+    /**
+     * 设置outbox后消息先写入本地outbox，由outbox的relay线程发送
+     */
+    public void setOutbox(KafkaOutbox outbox) {
+        this.outbox = outbox;
+    }
+
+    public KafkaOutbox getOutbox() {
+        return outbox;
+    }
+
+    public SendMessageObserver getObserver() {
+        return observer;
+    }
+
+    public void setObserver(SendMessageObserver observer) {
+        this.observer = observer == null ? SendMessageObserver.NOOP : observer;
+    }
+
+    /**
+     * 发送成功的消息数，开启outbox时包括relay已发送成功的消息，不包括还在outbox中的消息
+     */
+    public long getSentCount() {
+        KafkaOutbox outbox = this.outbox;
+        return sentCount.get() + (outbox == null ? 0L : outbox.getDeliveredCount());
+    }
+
+    /**
+     * 追加到outbox的消息数，尚未确认发送到kafka
+     */
+    public long getOutboxAppendedCount() {
+        return outboxAppendedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
 
+    public long getSkippedCount() {
+        return skippedCount.get();
     }
 }
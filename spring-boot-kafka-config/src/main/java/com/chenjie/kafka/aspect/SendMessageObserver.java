@@ -0,0 +1,22 @@
+package com.chenjie.kafka.aspect;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * SendMessage切面发送过程回调，用于采集指标；默认实现什么都不做
+ */
+public interface SendMessageObserver {
+    SendMessageObserver NOOP = new SendMessageObserver() {
+    };
+
+    /**
+     * 一条SendMessage消息处理完成(写入outbox或kafka确认，或失败)
+     *
+     * @param topic          原始topic
+     * @param handoffNanos   async模式下在切面线程池中排队的耗时，同步发送时为0
+     * @param serializeNanos 序列化耗时
+     * @param ex             失败时的异常
+     */
+    default void onSendMessage(String topic, long handoffNanos, long serializeNanos, @Nullable Throwable ex) {
+    }
+}
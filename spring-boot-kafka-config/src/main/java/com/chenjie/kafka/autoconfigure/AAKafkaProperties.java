@@ -133,6 +133,7 @@ public class AAKafkaProperties {
     public Map<String, Object> buildConsumerProperties() {
         Map<String, Object> properties = buildCommonProperties();
         properties.putAll(this.consumer.buildProperties());
+        this.consumer.buildPlacement().applyTo(properties);
         return properties;
     }
 
@@ -148,6 +149,9 @@ public class AAKafkaProperties {
     public Map<String, Object> buildProducerProperties() {
         Map<String, Object> properties = buildCommonProperties();
         properties.putAll(this.producer.buildProperties());
+        if (this.producer.getProfile() != null) {
+            this.producer.getProfile().applyTo(properties);
+        }
         return properties;
     }
 
@@ -272,6 +276,15 @@ public class AAKafkaProperties {
          * Maximum number of records returned in a single call to poll().
          */
         private Integer maxPollRecords;
+        /**
+         * 所在机房，与broker.rack一致时从同机房的follower副本读取
+         */
+        private String clientRack;
+        /**
+         * 是否默认使用CooperativeStickyAssignor增量再均衡
+         */
+        private boolean cooperativeRebalance = true;
+        private final StaticMembership staticMembership = new StaticMembership();
 
         public Ssl getSsl() {
             return this.ssl;
@@ -385,6 +398,31 @@ public class AAKafkaProperties {
             this.maxPollRecords = maxPollRecords;
         }
 
+        public String getClientRack() {
+            return this.clientRack;
+        }
+
+        public void setClientRack(String clientRack) {
+            this.clientRack = clientRack;
+        }
+
+        public boolean isCooperativeRebalance() {
+            return this.cooperativeRebalance;
+        }
+
+        public void setCooperativeRebalance(boolean cooperativeRebalance) {
+            this.cooperativeRebalance = cooperativeRebalance;
+        }
+
+        public StaticMembership getStaticMembership() {
+            return this.staticMembership;
+        }
+
+        public ConsumerPlacement buildPlacement() {
+            return new ConsumerPlacement(this.clientRack, this.cooperativeRebalance,
+                    this.staticMembership.isEnabled() ? ConsumerPlacement.instanceId(this.staticMembership.getInstanceId()) : null);
+        }
+
         public Map<String, String> getProperties() {
             return this.properties;
         }
@@ -415,6 +453,33 @@ public class AAKafkaProperties {
 
     }
 
+    /**
+     * 静态成员，重启时间在session.timeout.ms内时不触发再均衡
+     */
+    public static class StaticMembership {
+        private boolean enabled;
+        /**
+         * group.instance.id前缀，为空时使用主机名，每个监听容器再加上监听器id
+         */
+        private String instanceId;
+
+        public boolean isEnabled() {
+            return this.enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getInstanceId() {
+            return this.instanceId;
+        }
+
+        public void setInstanceId(String instanceId) {
+            this.instanceId = instanceId;
+        }
+    }
+
     public static class Producer {
 
         private final Ssl ssl = new Ssl();
@@ -468,6 +533,10 @@ public class AAKafkaProperties {
          * When non empty, enables transaction support for producer.
          */
         private String transactionIdPrefix;
+        /**
+         * producer预设(low-latency、high-throughput、large-payload)，只补充未显式配置的参数
+         */
+        private ProducerProfile profile;
 
         public Ssl getSsl() {
             return this.ssl;
@@ -477,6 +546,14 @@ public class AAKafkaProperties {
             return this.security;
         }
 
+        public ProducerProfile getProfile() {
+            return this.profile;
+        }
+
+        public void setProfile(ProducerProfile profile) {
+            this.profile = profile;
+        }
+
         public String getAcks() {
             return this.acks;
         }
@@ -676,11 +753,40 @@ public class AAKafkaProperties {
          * Directory location for the state store.
          */
         private String stateDir;
+        /**
+         * Whether to create the aa cluster streams builder (aaKafkaStreamsBuilder).
+         */
+        private boolean enabled;
+        /**
+         * Number of standby replicas kept for each state store.
+         */
+        private Integer numStandbyReplicas = 1;
+        private final Rocksdb rocksdb = new Rocksdb();
 
         public Ssl getSsl() {
             return this.ssl;
         }
 
+        public boolean isEnabled() {
+            return this.enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Integer getNumStandbyReplicas() {
+            return this.numStandbyReplicas;
+        }
+
+        public void setNumStandbyReplicas(Integer numStandbyReplicas) {
+            this.numStandbyReplicas = numStandbyReplicas;
+        }
+
+        public Rocksdb getRocksdb() {
+            return this.rocksdb;
+        }
+
         public Security getSecurity() {
             return this.security;
         }
@@ -755,11 +861,55 @@ public class AAKafkaProperties {
             map.from(this::getClientId).to(properties.in(CommonClientConfigs.CLIENT_ID_CONFIG));
             map.from(this::getReplicationFactor).to(properties.in("replication.factor"));
             map.from(this::getStateDir).to(properties.in("state.dir"));
+            map.from(this::getNumStandbyReplicas).to(properties.in("num.standby.replicas"));
             return properties.with(this.ssl, this.security, this.properties);
         }
 
     }
 
+    /**
+     * RocksDB state store memory bounds, shared by all stores of the streams application.
+     */
+    public static class Rocksdb {
+        /**
+         * Block cache shared by all state stores.
+         */
+        private DataSize blockCacheSize = DataSize.ofMegabytes(64);
+        /**
+         * Total memtable size of all state stores, counted against the block cache.
+         */
+        private DataSize writeBufferSize = DataSize.ofMegabytes(16);
+        /**
+         * Memtable size of a single state store; default the kafka streams default.
+         */
+        private DataSize memtableSize;
+
+        public DataSize getBlockCacheSize() {
+            return this.blockCacheSize;
+        }
+
+        public void setBlockCacheSize(DataSize blockCacheSize) {
+            this.blockCacheSize = blockCacheSize;
+        }
+
+        public DataSize getWriteBufferSize() {
+            return this.writeBufferSize;
+        }
+
+        public void setWriteBufferSize(DataSize writeBufferSize) {
+            this.writeBufferSize = writeBufferSize;
+        }
+
+        public DataSize getMemtableSize() {
+            return this.memtableSize;
+        }
+
+        public void setMemtableSize(DataSize memtableSize) {
+            this.memtableSize = memtableSize;
+        }
+
+    }
+
     public static class Template {
 
         /**
@@ -1,6 +1,9 @@
 package com.chenjie.kafka.autoconfigure;
 
+import com.chenjie.kafka.consumer.CompositeContainerCustomizer;
+import com.chenjie.kafka.consumer.StaticMembershipContainerCustomizer;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
 import org.springframework.boot.autoconfigure.kafka.DefaultKafkaConsumerFactoryCustomizer;
@@ -9,8 +12,12 @@ import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.ContainerCustomizer;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.security.jaas.KafkaJaasLoginModuleInitializer;
 import org.springframework.kafka.support.LoggingProducerListener;
 import org.springframework.kafka.support.ProducerListener;
@@ -18,6 +25,9 @@ import org.springframework.kafka.support.converter.RecordMessageConverter;
 import org.springframework.kafka.transaction.KafkaTransactionManager;
 
 import java.io.IOException;
+import java.util.Map;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.SPRING_KAFKA_PRODUCER_PROFILE;
 
 /**
  * 双活kafka配置
@@ -36,8 +46,8 @@ public class ActiveActiveKafkaConfigure {
 
     @Bean("aaKafkaTemplate")
     @ConditionalOnProperty(name = "spring.aa-kafka.enabled", havingValue = "true")
-    public KafkaTemplate<?, ?> aaKafkaTemplate(ProducerFactory<Object, Object> aaKafkaProducerFactory,
-                                               ProducerListener<Object, Object> aaKafkaProducerListener,
+    public KafkaTemplate<?, ?> aaKafkaTemplate(@Qualifier("aaKafkaProducerFactory") ProducerFactory<Object, Object> aaKafkaProducerFactory,
+                                               @Qualifier("aaKafkaProducerListener") ProducerListener<Object, Object> aaKafkaProducerListener,
                                                ObjectProvider<RecordMessageConverter> messageConverter) {
         KafkaTemplate<Object, Object> kafkaTemplate = new KafkaTemplate<>(aaKafkaProducerFactory);
         messageConverter.ifUnique(kafkaTemplate::setMessageConverter);
@@ -83,18 +93,35 @@ public class ActiveActiveKafkaConfigure {
      */
     @Bean("aaListenerContainerFactory")
     @ConditionalOnProperty(name = "spring.aa-kafka.enabled", havingValue = "true")
-    public ConcurrentKafkaListenerContainerFactory listenerContainerFactory(ConcurrentKafkaListenerContainerFactoryConfigurer configurer) {
-        //指定使用DefaultKafkaConsumerFactory
-        DefaultKafkaConsumerFactory<Object, Object> consumerFactory = new DefaultKafkaConsumerFactory<>(this.aaKafkaProperties.buildConsumerProperties());
+    public ConcurrentKafkaListenerContainerFactory listenerContainerFactory(ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+                                                                           @Qualifier("aaKafkaConsumerFactory") ConsumerFactory<Object, Object> aaKafkaConsumerFactory,
+                                                                           ObjectProvider<ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>>> containerCustomizer) {
         ConcurrentKafkaListenerContainerFactory factory = new ConcurrentKafkaListenerContainerFactory();
-        factory.setConsumerFactory(consumerFactory);
-        configurer.configure(factory, consumerFactory);
+        configurer.configure(factory, aaKafkaConsumerFactory);
+        containerCustomizer.ifUnique(factory::setContainerCustomizer);
+        return factory;
+    }
+
+    /**
+     * 批量消费，监听方法参数为List&lt;ConsumerRecord&gt;时指定containerFactory为aaBatchListenerContainerFactory
+     *
+     * @return
+     */
+    @Bean("aaBatchListenerContainerFactory")
+    @ConditionalOnProperty(name = "spring.aa-kafka.enabled", havingValue = "true")
+    public ConcurrentKafkaListenerContainerFactory aaBatchListenerContainerFactory(ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+                                                                                   @Qualifier("aaKafkaConsumerFactory") ConsumerFactory<Object, Object> aaKafkaConsumerFactory,
+                                                                                   ObjectProvider<ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>>> containerCustomizer) {
+        ConcurrentKafkaListenerContainerFactory factory = new ConcurrentKafkaListenerContainerFactory();
+        configurer.configure(factory, aaKafkaConsumerFactory);
+        containerCustomizer.ifUnique(factory::setContainerCustomizer);
+        factory.setBatchListener(true);
         return factory;
     }
 
     @Bean("aaKafkaTransactionManager")
     @ConditionalOnProperty(name = "spring.aa-kafka.producer.transaction-id-prefix")
-    public KafkaTransactionManager<?, ?> aaKafkaTransactionManager(ProducerFactory<?, ?> producerFactory) {
+    public KafkaTransactionManager<?, ?> aaKafkaTransactionManager(@Qualifier("aaKafkaProducerFactory") ProducerFactory<?, ?> producerFactory) {
         return new KafkaTransactionManager<>(producerFactory);
     }
 
@@ -124,8 +151,8 @@ public class ActiveActiveKafkaConfigure {
     //---------------------------------------------
 
     @Bean("kafkaTemplate")
-    public KafkaTemplate<?, ?> kafkaTemplate(ProducerFactory<Object, Object> kafkaProducerFactory,
-                                             ProducerListener<Object, Object> kafkaProducerListener,
+    public KafkaTemplate<?, ?> kafkaTemplate(@Qualifier("kafkaProducerFactory") ProducerFactory<Object, Object> kafkaProducerFactory,
+                                             @Qualifier("kafkaProducerListener") ProducerListener<Object, Object> kafkaProducerListener,
                                              ObjectProvider<RecordMessageConverter> messageConverter) {
         KafkaTemplate<Object, Object> kafkaTemplate = new KafkaTemplate<>(kafkaProducerFactory);
         messageConverter.ifUnique(kafkaTemplate::setMessageConverter);
@@ -141,18 +168,23 @@ public class ActiveActiveKafkaConfigure {
 
     @Bean
     public ConsumerFactory<?, ?> kafkaConsumerFactory(
-            ObjectProvider<DefaultKafkaConsumerFactoryCustomizer> customizers) {
-        DefaultKafkaConsumerFactory<Object, Object> factory = new DefaultKafkaConsumerFactory<>(
-                this.kafkaProperties.buildConsumerProperties());
+            ObjectProvider<DefaultKafkaConsumerFactoryCustomizer> customizers, Environment env) {
+        Map<String, Object> properties = this.kafkaProperties.buildConsumerProperties();
+        ConsumerPlacement.of(env).applyTo(properties);
+        DefaultKafkaConsumerFactory<Object, Object> factory = new DefaultKafkaConsumerFactory<>(properties);
         customizers.orderedStream().forEach((customizer) -> customizer.customize(factory));
         return factory;
     }
 
     @Bean
     public ProducerFactory<?, ?> kafkaProducerFactory(
-            ObjectProvider<DefaultKafkaProducerFactoryCustomizer> customizers) {
-        DefaultKafkaProducerFactory<?, ?> factory = new DefaultKafkaProducerFactory<>(
-                this.kafkaProperties.buildProducerProperties());
+            ObjectProvider<DefaultKafkaProducerFactoryCustomizer> customizers, Environment env) {
+        Map<String, Object> properties = this.kafkaProperties.buildProducerProperties();
+        ProducerProfile profile = ProducerProfile.of(env.getProperty(SPRING_KAFKA_PRODUCER_PROFILE));
+        if (profile != null) {
+            profile.applyTo(properties);
+        }
+        DefaultKafkaProducerFactory<?, ?> factory = new DefaultKafkaProducerFactory<>(properties);
         String transactionIdPrefix = this.kafkaProperties.getProducer().getTransactionIdPrefix();
         if (transactionIdPrefix != null) {
             factory.setTransactionIdPrefix(transactionIdPrefix);
@@ -161,9 +193,49 @@ public class ActiveActiveKafkaConfigure {
         return factory;
     }
 
+    /**
+     * 开启静态成员时为每个监听容器生成不同的group.instance.id，主集群和双活集群分别使用各自的前缀
+     */
+    @Bean
+    public StaticMembershipContainerCustomizer staticMembershipContainerCustomizer(
+            @Qualifier("kafkaConsumerFactory") ObjectProvider<ConsumerFactory<?, ?>> kafkaConsumerFactory,
+            @Qualifier("aaKafkaConsumerFactory") ObjectProvider<ConsumerFactory<?, ?>> aaKafkaConsumerFactory, Environment env) {
+        StaticMembershipContainerCustomizer customizer = new StaticMembershipContainerCustomizer();
+        kafkaConsumerFactory.ifAvailable(factory -> customizer.register(factory, ConsumerPlacement.of(env).getGroupInstanceId()));
+        aaKafkaConsumerFactory.ifAvailable(factory -> customizer.register(factory,
+                this.aaKafkaProperties.getConsumer().buildPlacement().getGroupInstanceId()));
+        return customizer;
+    }
+
+    /**
+     * 监听容器工厂只能设置一个ContainerCustomizer，由它依次调用监听指标、静态成员等customizer
+     */
+    @Bean
+    @Primary
+    public CompositeContainerCustomizer compositeContainerCustomizer(
+            ObjectProvider<ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>>> customizers) {
+        return new CompositeContainerCustomizer(customizers);
+    }
+
+    /**
+     * 批量消费，监听方法参数为List&lt;ConsumerRecord&gt;时指定containerFactory为batchListenerContainerFactory
+     *
+     * @return
+     */
+    @Bean("batchListenerContainerFactory")
+    public ConcurrentKafkaListenerContainerFactory batchListenerContainerFactory(ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+                                                                                 @Qualifier("kafkaConsumerFactory") ConsumerFactory<Object, Object> kafkaConsumerFactory,
+                                                                                 ObjectProvider<ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>>> containerCustomizer) {
+        ConcurrentKafkaListenerContainerFactory factory = new ConcurrentKafkaListenerContainerFactory();
+        configurer.configure(factory, kafkaConsumerFactory);
+        containerCustomizer.ifUnique(factory::setContainerCustomizer);
+        factory.setBatchListener(true);
+        return factory;
+    }
+
     @Bean
     @ConditionalOnProperty(name = "spring.kafka.producer.transaction-id-prefix")
-    public KafkaTransactionManager<?, ?> kafkaTransactionManager(ProducerFactory<?, ?> producerFactory) {
+    public KafkaTransactionManager<?, ?> kafkaTransactionManager(@Qualifier("kafkaProducerFactory") ProducerFactory<?, ?> producerFactory) {
         return new KafkaTransactionManager<>(producerFactory);
     }
 
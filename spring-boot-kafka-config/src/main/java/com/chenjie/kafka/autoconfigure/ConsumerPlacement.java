@@ -0,0 +1,104 @@
+package com.chenjie.kafka.autoconfigure;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
+import org.springframework.core.env.Environment;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.*;
+
+/**
+ * consumer的就近读取和再均衡设置，主集群和双活集群各自配置：
+ * client.rack与broker.rack一致时从同机房的follower副本读取(broker需配置replica.selector.class=RackAwareReplicaSelector)；
+ * 默认使用CooperativeStickyAssignor，再均衡时只迁移需要移动的分区，其余分区不停止消费；
+ * 开启静态成员后consumer带group.instance.id加入消费组，session.timeout.ms内重启不触发再均衡；
+ * group.instance.id不写入consumer工厂配置(同一工厂创建的所有consumer会使用同一个id而互相踢出)，
+ * 由StaticMembershipContainerCustomizer按监听容器加上后缀后设置
+ * 只补充未显式配置的参数，properties.*中显式配置的值优先
+ */
+public final class ConsumerPlacement {
+    private static final String HOSTNAME_ENV = "HOSTNAME";
+
+    private final String clientRack;
+    private final boolean cooperativeRebalance;
+    private final String groupInstanceId;
+
+    public ConsumerPlacement(@Nullable String clientRack, boolean cooperativeRebalance, @Nullable String groupInstanceId) {
+        this.clientRack = clientRack;
+        this.cooperativeRebalance = cooperativeRebalance;
+        this.groupInstanceId = groupInstanceId;
+    }
+
+    /**
+     * 主集群，读取spring.kafka.consumer.client-rack、cooperative-rebalance、static-membership.*
+     *
+     * @param env
+     * @return
+     */
+    public static ConsumerPlacement of(Environment env) {
+        boolean staticMembership = env.getProperty(SPRING_KAFKA_CONSUMER_STATIC_MEMBERSHIP_ENABLED, Boolean.class, Boolean.FALSE);
+        return new ConsumerPlacement(env.getProperty(SPRING_KAFKA_CONSUMER_CLIENT_RACK),
+                env.getProperty(SPRING_KAFKA_CONSUMER_COOPERATIVE_REBALANCE, Boolean.class, Boolean.TRUE),
+                staticMembership ? instanceId(env.getProperty(SPRING_KAFKA_CONSUMER_STATIC_MEMBERSHIP_INSTANCE_ID)) : null);
+    }
+
+    /**
+     * 把client.rack和分区分配策略补充到consumer配置中，已存在的参数保持不变，不包括group.instance.id
+     *
+     * @param properties consumer配置
+     * @return properties
+     */
+    public Map<String, Object> applyTo(Map<String, Object> properties) {
+        if (StringUtils.hasText(clientRack)) {
+            properties.putIfAbsent(ConsumerConfig.CLIENT_RACK_CONFIG, clientRack);
+        }
+        if (cooperativeRebalance) {
+            properties.putIfAbsent(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, CooperativeStickyAssignor.class.getName());
+        }
+        return properties;
+    }
+
+    /**
+     * 静态成员id，未配置时使用主机名(k8s中为pod名，StatefulSet重启后不变)
+     *
+     * @param configured 配置的instance-id
+     * @return
+     */
+    static String instanceId(@Nullable String configured) {
+        if (StringUtils.hasText(configured)) {
+            return configured;
+        }
+        String hostname = System.getenv(HOSTNAME_ENV);
+        if (StringUtils.hasText(hostname)) {
+            return hostname;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("cannot resolve hostname for kafka static membership, "
+                    + "please set " + SPRING_KAFKA_CONSUMER_STATIC_MEMBERSHIP_INSTANCE_ID, e);
+        }
+    }
+
+    @Nullable
+    public String getClientRack() {
+        return clientRack;
+    }
+
+    public boolean isCooperativeRebalance() {
+        return cooperativeRebalance;
+    }
+
+    /**
+     * @return 静态成员id前缀，未开启静态成员时为null
+     */
+    @Nullable
+    public String getGroupInstanceId() {
+        return groupInstanceId;
+    }
+}
@@ -1,10 +1,27 @@
 package com.chenjie.kafka.autoconfigure;
 
 
-import com.chenjie.kafka.annotation.MyKafkaListenerAnnotationBeanPostProcessor;
+import com.chenjie.kafka.annotation.NamespaceKafkaListenerAnnotationEnhancer;
 import com.chenjie.kafka.aspect.SendEmailAspect;
+import com.chenjie.kafka.consumer.DeduplicatingRecordFilterStrategy;
+import com.chenjie.kafka.consumer.KeyOrderedProcessor;
+import com.chenjie.kafka.metrics.DeduplicationMetrics;
+import com.chenjie.kafka.metrics.KafkaListenerMetrics;
+import com.chenjie.kafka.metrics.KafkaServiceMetrics;
+import com.chenjie.kafka.metrics.SendMessageMetrics;
+import com.chenjie.kafka.outbox.KafkaOutbox;
+import com.chenjie.kafka.outbox.SegmentLog;
+import com.chenjie.kafka.serializer.FastJsonMessageSerializer;
+import com.chenjie.kafka.serializer.JacksonMessageSerializer;
+import com.chenjie.kafka.serializer.JsonbMessageSerializer;
+import com.chenjie.kafka.serializer.MessageSerializer;
 import com.chenjie.kafka.service.KafkaService;
-import io.fabric8.kubernetes.client.KubernetesClient;
+import com.chenjie.kafka.utils.NamespaceResolver;
+import com.chenjie.kafka.utils.ThreadFactories;
+import com.chenjie.kafka.utils.TopicNameResolver;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
@@ -13,17 +30,36 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
-import org.springframework.cloud.kubernetes.KubernetesAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.core.annotation.Order;
 import org.springframework.core.env.Environment;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.kafka.listener.adapter.RecordFilterStrategy;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
+import org.springframework.kafka.retrytopic.RetryTopicSchedulerWrapper;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.*;
 
 @Configuration
 @ConditionalOnProperty(name = "spring.kafka.enabled", havingValue = "true", matchIfMissing = true)
-@ConditionalOnClass({KafkaTemplate.class, KubernetesAutoConfiguration.class, ActiveActiveKafkaConfigure.class})
+@ConditionalOnClass({KafkaTemplate.class, ActiveActiveKafkaConfigure.class})
 @EnableConfigurationProperties(KafkaProperties.class)
 @Order(Integer.MAX_VALUE - 10)
 public class KafkaServiceAutoConfigure {
@@ -35,8 +71,6 @@ public class KafkaServiceAutoConfigure {
     private KafkaTemplate<?, ?> kafkaTemplate;
     @Autowired
     private Environment env;
-    @Autowired
-    private KubernetesClient kubernetesClient;
 
     public KafkaServiceAutoConfigure() {
     }
@@ -51,20 +85,140 @@ public class KafkaServiceAutoConfigure {
     @DependsOn("kafkaTemplate")
 //    @ConditionalOnBean(name = "kafkaTemplate")
     public KafkaService<?, ?> kafkaService() {
-        return new KafkaService(kafkaTemplate, aaKafkaTemplate, env, kubernetesClient);
+        return new KafkaService(kafkaTemplate, aaKafkaTemplate, env);
+    }
+
+    /**
+     * 为@KafkaListener的topic加上消费者命名空间前缀，由KafkaListenerAnnotationBeanPostProcessor调用，必须是static方法
+     *
+     * @return
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = SPRING_KAFKA_CONSUMER_NAMESPACE_ENHANCER_ENABLED, havingValue = "true", matchIfMissing = true)
+    public static NamespaceKafkaListenerAnnotationEnhancer namespaceKafkaListenerAnnotationEnhancer(Environment env) {
+        return new NamespaceKafkaListenerAnnotationEnhancer(env);
+    }
+
+    /**
+     * 批量监听器按key并行处理的线程池，同一批消息最多max.poll.records条，队列不设上限
+     *
+     * @return
+     */
+    @Bean(name = "keyOrderedProcessorExecutor", destroyMethod = "shutdown")
+    @ConditionalOnMissingBean(name = "keyOrderedProcessorExecutor")
+    @ConditionalOnProperty(name = SPRING_KAFKA_CONSUMER_PARALLEL_ENABLED, havingValue = "true")
+    public ThreadPoolExecutor keyOrderedProcessorExecutor() {
+        int threads = Integer.parseInt(env.getProperty(SPRING_KAFKA_CONSUMER_PARALLEL_THREADS, ThreadFactories.isVirtual(env) ? "256" : "16"));
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                ThreadFactories.create(env, "kafka-key-ordered-"));
+    }
+
+    /**
+     * 批量监听器按key并行处理引擎
+     *
+     * @return
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = SPRING_KAFKA_CONSUMER_PARALLEL_ENABLED, havingValue = "true")
+    public KeyOrderedProcessor keyOrderedProcessor(@Qualifier("keyOrderedProcessorExecutor") ThreadPoolExecutor keyOrderedProcessorExecutor) {
+        long nackSleepMs = Long.parseLong(env.getProperty(SPRING_KAFKA_CONSUMER_PARALLEL_NACK_SLEEP_MS, "1000"));
+        return new KeyOrderedProcessor(keyOrderedProcessorExecutor, Duration.ofMillis(nackSleepMs));
+    }
+
+    /**
+     * 按消息ID去重，spring boot的ConcurrentKafkaListenerContainerFactoryConfigurer会把唯一的RecordFilterStrategy
+     * 设置到所有经它配置的containerFactory上(包括批量和双活的containerFactory)
+     *
+     * @return
+     */
+    @Bean
+    @ConditionalOnMissingBean(RecordFilterStrategy.class)
+    @ConditionalOnProperty(name = SPRING_KAFKA_CONSUMER_DEDUP_ENABLED, havingValue = "true")
+    public DeduplicatingRecordFilterStrategy<Object, Object> deduplicatingRecordFilterStrategy() {
+        return new DeduplicatingRecordFilterStrategy<>(
+                Integer.parseInt(env.getProperty(SPRING_KAFKA_CONSUMER_DEDUP_WINDOW_SIZE, "100000")),
+                Double.parseDouble(env.getProperty(SPRING_KAFKA_CONSUMER_DEDUP_FALSE_POSITIVE_RATE, "0.01")));
+    }
+
+    /**
+     * 非阻塞重试：监听方法抛异常时消息转发到重试topic，到期后再消费，重试用尽后转发到死信topic
+     * 重试topic名为监听的topic加-retry-序号，死信topic加-dlt，监听的topic已带命名空间前缀，重试topic随之带上同样的前缀
+     * 延迟由暂停分区实现，监听线程不会sleep，一条失败的消息不会阻塞所在分区
+     *
+     * @return
+     */
+    @Bean
+    @ConditionalOnMissingBean(name = "namespaceRetryTopicConfiguration")
+    @ConditionalOnProperty(name = SPRING_KAFKA_CONSUMER_RETRY_TOPIC_ENABLED, havingValue = "true")
+    public RetryTopicConfiguration namespaceRetryTopicConfiguration() {
+        String namespace = NamespaceResolver.consumerNamespace(env);
+        RetryTopicConfigurationBuilder builder = RetryTopicConfigurationBuilder.newInstance()
+                .maxAttempts(Integer.parseInt(env.getProperty(SPRING_KAFKA_CONSUMER_RETRY_TOPIC_ATTEMPTS, "4")))
+                .exponentialBackoff(Long.parseLong(env.getProperty(SPRING_KAFKA_CONSUMER_RETRY_TOPIC_INITIAL_DELAY_MS, "1000")),
+                        Double.parseDouble(env.getProperty(SPRING_KAFKA_CONSUMER_RETRY_TOPIC_MULTIPLIER, "2.0")),
+                        Long.parseLong(env.getProperty(SPRING_KAFKA_CONSUMER_RETRY_TOPIC_MAX_DELAY_MS, "60000")))
+                .setTopicSuffixingStrategy(TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE)
+                .autoCreateTopics(Boolean.parseBoolean(env.getProperty(SPRING_KAFKA_CONSUMER_RETRY_TOPIC_AUTO_CREATE, Boolean.TRUE + "")),
+                        Integer.parseInt(env.getProperty(SPRING_KAFKA_CONSUMER_RETRY_TOPIC_PARTITIONS, "-1")),
+                        Short.parseShort(env.getProperty(SPRING_KAFKA_CONSUMER_RETRY_TOPIC_REPLICATION_FACTOR, "-1")));
+        String[] topics = env.getProperty(SPRING_KAFKA_CONSUMER_RETRY_TOPIC_TOPICS, String[].class, new String[0]);
+        if (topics.length > 0) {
+            builder.includeTopics(Arrays.stream(topics).map(topic -> TopicNameResolver.resolve(namespace, topic)).collect(Collectors.toList()));
+        }
+        String[] excludeTopics = env.getProperty(SPRING_KAFKA_CONSUMER_RETRY_TOPIC_EXCLUDE_TOPICS, String[].class, new String[0]);
+        if (excludeTopics.length > 0) {
+            builder.excludeTopics(Arrays.stream(excludeTopics).map(topic -> TopicNameResolver.resolve(namespace, topic)).collect(Collectors.toList()));
+        }
+        return builder.create(kafkaTemplate);
+    }
+
+    /**
+     * 重试topic暂停、恢复分区用的调度器，应用中没有TaskScheduler时创建
+     *
+     * @return
+     */
+    @Bean
+    @ConditionalOnMissingBean({TaskScheduler.class, RetryTopicSchedulerWrapper.class})
+    @ConditionalOnProperty(name = SPRING_KAFKA_CONSUMER_RETRY_TOPIC_ENABLED, havingValue = "true")
+    public RetryTopicSchedulerWrapper retryTopicSchedulerWrapper() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("kafka-retry-topic-");
+        return new RetryTopicSchedulerWrapper(scheduler);
     }
 
     /**
-     * kafka消费者bean后置处理器
+     * SendMessage消息序列化器，spring.kafka.producer.send-message.serializer可选fastjson(默认)、jackson、jsonb
      *
      * @return
      */
-//    @Bean
-//    @ConditionalOnMissingBean
-//    @ConditionalOnBean(KafkaService.class)
-//    public MyKafkaListenerAnnotationBeanPostProcessor myAnnotationProcessor() {
-//        return new MyKafkaListenerAnnotationBeanPostProcessor(env, kubernetesClient);
-//    }
+    @Bean
+    @ConditionalOnMissingBean
+    public MessageSerializer messageSerializer(ObjectProvider<ObjectMapper> objectMapper) {
+        String type = env.getProperty(SPRING_KAFKA_SEND_MESSAGE_SERIALIZER, "fastjson");
+        if ("jackson".equalsIgnoreCase(type)) {
+            return new JacksonMessageSerializer(objectMapper.getIfAvailable(ObjectMapper::new));
+        }
+        if ("jsonb".equalsIgnoreCase(type)) {
+            return new JsonbMessageSerializer();
+        }
+        return new FastJsonMessageSerializer();
+    }
+
+    /**
+     * SendMessage异步发送线程池，队列满时退回业务线程发送
+     *
+     * @return
+     */
+    @Bean(name = "sendMessageExecutor", destroyMethod = "shutdown")
+    @ConditionalOnMissingBean(name = "sendMessageExecutor")
+    public ThreadPoolExecutor sendMessageExecutor() {
+        int threads = Integer.parseInt(env.getProperty(SPRING_KAFKA_SEND_MESSAGE_ASYNC_THREADS, "2"));
+        int queueCapacity = Integer.parseInt(env.getProperty(SPRING_KAFKA_SEND_MESSAGE_ASYNC_QUEUE_CAPACITY, "10000"));
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueCapacity),
+                ThreadFactories.create(env, "send-message-"), new ThreadPoolExecutor.AbortPolicy());
+    }
 
     /**
      * kafka消息发送实例
@@ -73,7 +227,78 @@ public class KafkaServiceAutoConfigure {
      */
     @Bean
     @ConditionalOnMissingBean
-    public SendEmailAspect sendEmailAspect() {
-        return new SendEmailAspect(kafkaService());
+    public SendEmailAspect sendEmailAspect(MessageSerializer messageSerializer,
+                                           @Qualifier("sendMessageExecutor") ThreadPoolExecutor sendMessageExecutor,
+                                           ObjectProvider<KafkaOutbox> kafkaOutbox) {
+        boolean async = Boolean.parseBoolean(env.getProperty(SPRING_KAFKA_SEND_MESSAGE_ASYNC, Boolean.FALSE + ""));
+        SendEmailAspect sendEmailAspect = new SendEmailAspect(kafkaService(), messageSerializer, sendMessageExecutor, async);
+        kafkaOutbox.ifAvailable(sendEmailAspect::setOutbox);
+        return sendEmailAspect;
+    }
+
+    /**
+     * SendMessage outbox，消息先写入本地内存映射日志再由后台线程批量发送
+     *
+     * @return
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = SPRING_KAFKA_SEND_MESSAGE_OUTBOX_ENABLED, havingValue = "true")
+    public KafkaOutbox kafkaOutbox() throws IOException {
+        SegmentLog log = new SegmentLog(Paths.get(env.getProperty(SPRING_KAFKA_SEND_MESSAGE_OUTBOX_DIR, "kafka-outbox")),
+                Integer.parseInt(env.getProperty(SPRING_KAFKA_SEND_MESSAGE_OUTBOX_SEGMENT_BYTES, "67108864")));
+        return new KafkaOutbox(log, kafkaService(),
+                Integer.parseInt(env.getProperty(SPRING_KAFKA_SEND_MESSAGE_OUTBOX_BATCH_SIZE, "500")),
+                Long.parseLong(env.getProperty(SPRING_KAFKA_SEND_MESSAGE_OUTBOX_POLL_INTERVAL_MS, "100")),
+                Long.parseLong(env.getProperty(SPRING_KAFKA_SEND_MESSAGE_OUTBOX_FLUSH_INTERVAL_MS, "1000")),
+                Long.parseLong(env.getProperty(SPRING_KAFKA_SEND_MESSAGE_OUTBOX_SEND_TIMEOUT_MS, "30000")));
+    }
+
+    /**
+     * kafka发送指标，存在micrometer时注册
+     */
+    @Configuration
+    @ConditionalOnClass(MeterBinder.class)
+    static class KafkaServiceMetricsConfigure {
+        @Bean
+        @ConditionalOnMissingBean
+        public KafkaServiceMetrics kafkaServiceMetrics(KafkaService<?, ?> kafkaService) {
+            return new KafkaServiceMetrics(kafkaService);
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        public SendMessageMetrics sendMessageMetrics(SendEmailAspect sendEmailAspect, KafkaService<?, ?> kafkaService) {
+            return new SendMessageMetrics(sendEmailAspect, kafkaService.getNamespace());
+        }
+
+        /**
+         * 去重计数，去重关闭或RecordFilterStrategy被替换成其它实现时不注册
+         */
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnProperty(name = SPRING_KAFKA_CONSUMER_DEDUP_ENABLED, havingValue = "true")
+        public DeduplicationMetrics deduplicationMetrics(ObjectProvider<RecordFilterStrategy<?, ?>> recordFilterStrategy,
+                                                         Environment env) {
+            RecordFilterStrategy<?, ?> strategy = recordFilterStrategy.getIfUnique();
+            return new DeduplicationMetrics(strategy instanceof DeduplicatingRecordFilterStrategy
+                    ? (DeduplicatingRecordFilterStrategy<?, ?>) strategy : null, NamespaceResolver.consumerNamespace(env));
+        }
+
+        /**
+         * 监听器指标，作为ContainerCustomizer由spring boot设置到默认containerFactory，
+         * ActiveActiveKafkaConfigure中的批量和双活containerFactory也会设置
+         */
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnProperty(name = SPRING_KAFKA_CONSUMER_METRICS_ENABLED, havingValue = "true", matchIfMissing = true)
+        public KafkaListenerMetrics kafkaListenerMetrics(Environment env,
+                                                         ObjectProvider<RecordInterceptor<Object, Object>> recordInterceptor,
+                                                         ObjectProvider<BatchInterceptor<Object, Object>> batchInterceptor) {
+            return new KafkaListenerMetrics(NamespaceResolver.consumerNamespace(env),
+                    Long.parseLong(env.getProperty(SPRING_KAFKA_CONSUMER_METRICS_SLOW_THRESHOLD_MS, "1000")),
+                    Long.parseLong(env.getProperty(SPRING_KAFKA_CONSUMER_METRICS_SLOW_SAMPLE_INTERVAL_MS, "10000")),
+                    recordInterceptor.getIfUnique(), batchInterceptor.getIfUnique());
+        }
     }
 }
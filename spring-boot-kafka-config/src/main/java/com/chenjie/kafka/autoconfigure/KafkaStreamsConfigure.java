@@ -0,0 +1,142 @@
+package com.chenjie.kafka.autoconfigure;
+
+import com.chenjie.kafka.metrics.KafkaStreamsMetrics;
+import com.chenjie.kafka.streams.BoundedMemoryRocksDBConfig;
+import com.chenjie.kafka.streams.NamespacedStreamsBuilder;
+import com.chenjie.kafka.utils.NamespaceResolver;
+import com.chenjie.kafka.utils.TopicNameResolver;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.ssl.SslBundles;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.config.KafkaStreamsConfiguration;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.*;
+
+/**
+ * kafka streams配置，主集群和双活集群各一个StreamsBuilder，分别由spring.kafka.streams.enabled和spring.aa-kafka.streams.enabled开启
+ * 拓扑通过注入NamespacedStreamsBuilder(双活集群为aaNamespacedStreamsBuilder)构建，输入输出topic和application.id都带消费者命名空间前缀
+ * 不要同时使用@EnableKafkaStreams
+ */
+@Configuration
+@ConditionalOnClass(StreamsBuilder.class)
+@ConditionalOnProperty(name = "spring.kafka.enabled", havingValue = "true")
+@EnableConfigurationProperties({AAKafkaProperties.class, KafkaProperties.class})
+public class KafkaStreamsConfigure {
+    private final KafkaProperties kafkaProperties;
+    private final AAKafkaProperties aaKafkaProperties;
+    private final Environment env;
+
+    public KafkaStreamsConfigure(KafkaProperties kafkaProperties, AAKafkaProperties aaKafkaProperties, Environment env) {
+        this.kafkaProperties = kafkaProperties;
+        this.aaKafkaProperties = aaKafkaProperties;
+        this.env = env;
+    }
+
+    /**
+     * 主集群StreamsBuilder
+     *
+     * @return
+     */
+    @Bean("kafkaStreamsBuilder")
+    @ConditionalOnProperty(name = SPRING_KAFKA_STREAMS_ENABLED, havingValue = "true")
+    public StreamsBuilderFactoryBean kafkaStreamsBuilder(ObjectProvider<SslBundles> sslBundles) {
+        Map<String, Object> properties = kafkaProperties.buildStreamsProperties(sslBundles.getIfAvailable());
+        properties.putIfAbsent(StreamsConfig.NUM_STANDBY_REPLICAS_CONFIG,
+                Integer.parseInt(env.getProperty(SPRING_KAFKA_STREAMS_NUM_STANDBY_REPLICAS, "1")));
+        String memtableSize = env.getProperty(SPRING_KAFKA_STREAMS_ROCKSDB_MEMTABLE_SIZE);
+        applyRocksdb(properties,
+                DataSize.parse(env.getProperty(SPRING_KAFKA_STREAMS_ROCKSDB_BLOCK_CACHE_SIZE, "64MB")),
+                DataSize.parse(env.getProperty(SPRING_KAFKA_STREAMS_ROCKSDB_WRITE_BUFFER_SIZE, "16MB")),
+                Objects.nonNull(memtableSize) ? DataSize.parse(memtableSize) : null);
+        return streamsBuilder(properties, NamespaceResolver.consumerNamespace(env), kafkaProperties.getStreams().isAutoStartup());
+    }
+
+    /**
+     * 双活集群StreamsBuilder，未配置state-dir时使用单独的目录，避免与主集群同名application.id争用状态目录锁
+     *
+     * @return
+     */
+    @Bean("aaKafkaStreamsBuilder")
+    @ConditionalOnProperty(name = {"spring.aa-kafka.enabled", "spring.aa-kafka.streams.enabled"}, havingValue = "true")
+    public StreamsBuilderFactoryBean aaKafkaStreamsBuilder() {
+        AAKafkaProperties.Streams streams = aaKafkaProperties.getStreams();
+        Map<String, Object> properties = aaKafkaProperties.buildStreamsProperties();
+        properties.putIfAbsent(StreamsConfig.STATE_DIR_CONFIG,
+                Paths.get(System.getProperty("java.io.tmpdir"), "kafka-streams-aa").toString());
+        applyRocksdb(properties, streams.getRocksdb().getBlockCacheSize(), streams.getRocksdb().getWriteBufferSize(),
+                streams.getRocksdb().getMemtableSize());
+        return streamsBuilder(properties, NamespaceResolver.consumerNamespace(env), streams.isAutoStartup());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = "namespacedStreamsBuilder")
+    @ConditionalOnProperty(name = SPRING_KAFKA_STREAMS_ENABLED, havingValue = "true")
+    public NamespacedStreamsBuilder namespacedStreamsBuilder(@Qualifier("kafkaStreamsBuilder") StreamsBuilder kafkaStreamsBuilder) {
+        return new NamespacedStreamsBuilder(kafkaStreamsBuilder, NamespaceResolver.consumerNamespace(env));
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = "aaNamespacedStreamsBuilder")
+    @ConditionalOnProperty(name = {"spring.aa-kafka.enabled", "spring.aa-kafka.streams.enabled"}, havingValue = "true")
+    public NamespacedStreamsBuilder aaNamespacedStreamsBuilder(@Qualifier("aaKafkaStreamsBuilder") StreamsBuilder aaKafkaStreamsBuilder) {
+        return new NamespacedStreamsBuilder(aaKafkaStreamsBuilder, NamespaceResolver.consumerNamespace(env));
+    }
+
+    /**
+     * application.id默认spring.application.name，加上命名空间前缀，不同命名空间的内部topic、消费组和状态目录互不影响
+     */
+    private StreamsBuilderFactoryBean streamsBuilder(Map<String, Object> properties, String namespace, boolean autoStartup) {
+        Object applicationId = properties.get(StreamsConfig.APPLICATION_ID_CONFIG);
+        String resolved = Objects.nonNull(applicationId) ? applicationId.toString() : env.getProperty(SPRING_APPLICATION_NAME_KEY);
+        if (!StringUtils.hasText(resolved)) {
+            throw new IllegalStateException("kafka streams application-id or " + SPRING_APPLICATION_NAME_KEY + " must be set");
+        }
+        properties.put(StreamsConfig.APPLICATION_ID_CONFIG, TopicNameResolver.resolve(namespace, resolved));
+        StreamsBuilderFactoryBean factory = new StreamsBuilderFactoryBean(new KafkaStreamsConfiguration(properties));
+        factory.setAutoStartup(autoStartup);
+        return factory;
+    }
+
+    private static void applyRocksdb(Map<String, Object> properties, DataSize blockCacheSize, DataSize writeBufferSize,
+                                     @Nullable DataSize memtableSize) {
+        properties.putIfAbsent(StreamsConfig.ROCKSDB_CONFIG_SETTER_CLASS_CONFIG, BoundedMemoryRocksDBConfig.class);
+        properties.put(BoundedMemoryRocksDBConfig.BLOCK_CACHE_SIZE_CONFIG, blockCacheSize.toBytes());
+        properties.put(BoundedMemoryRocksDBConfig.WRITE_BUFFER_SIZE_CONFIG, writeBufferSize.toBytes());
+        if (Objects.nonNull(memtableSize)) {
+            properties.put(BoundedMemoryRocksDBConfig.MEMTABLE_SIZE_CONFIG, memtableSize.toBytes());
+        }
+    }
+
+    /**
+     * kafka streams客户端指标，存在micrometer时注册
+     */
+    @Configuration
+    @ConditionalOnClass(MeterBinder.class)
+    static class KafkaStreamsMetricsConfigure {
+        @Bean
+        @ConditionalOnMissingBean
+        public KafkaStreamsMetrics kafkaStreamsBuilderMetrics(ObjectProvider<StreamsBuilderFactoryBean> streamsBuilders) {
+            return new KafkaStreamsMetrics(streamsBuilders.orderedStream().collect(Collectors.toList()));
+        }
+    }
+}
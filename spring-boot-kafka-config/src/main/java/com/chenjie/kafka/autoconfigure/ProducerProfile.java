@@ -0,0 +1,85 @@
+package com.chenjie.kafka.autoconfigure;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * producer预设：一起设置linger.ms、batch.size、compression.type、buffer.memory和acks
+ * 通过spring.kafka.producer.profile和spring.aa-kafka.producer.profile为两个集群分别选择，
+ * 只补充未显式配置的参数，spring.kafka.producer.*中显式配置的值优先
+ */
+public enum ProducerProfile {
+    /**
+     * 低延迟：不等待攒批、不压缩，只等leader确认
+     */
+    LOW_LATENCY(settings("0", 16 * 1024, "none", 32L * 1024 * 1024, "1")),
+    /**
+     * 高吞吐：攒批20ms、256KB批次、lz4压缩，所有副本确认
+     */
+    HIGH_THROUGHPUT(settings("20", 256 * 1024, "lz4", 128L * 1024 * 1024, "all")),
+    /**
+     * 大消息：1MB批次、zstd压缩，单个请求最大8MB，broker和topic的max.message.bytes需要同步调大
+     */
+    LARGE_PAYLOAD(settings("10", 1024 * 1024, "zstd", 256L * 1024 * 1024, "all",
+            ProducerConfig.MAX_REQUEST_SIZE_CONFIG, 8 * 1024 * 1024));
+
+    private final Map<String, Object> settings;
+
+    ProducerProfile(Map<String, Object> settings) {
+        this.settings = Collections.unmodifiableMap(settings);
+    }
+
+    /**
+     * @return 预设的producer参数
+     */
+    public Map<String, Object> getSettings() {
+        return settings;
+    }
+
+    /**
+     * 把预设参数补充到producer配置中，已存在的参数保持不变
+     *
+     * @param properties producer配置
+     * @return properties
+     */
+    public Map<String, Object> applyTo(Map<String, Object> properties) {
+        settings.forEach(properties::putIfAbsent);
+        return properties;
+    }
+
+    /**
+     * @param value low-latency、high-throughput、large-payload，大小写和-/_均可
+     * @return 为空时返回null
+     */
+    @Nullable
+    public static ProducerProfile of(@Nullable String value) {
+        if (!StringUtils.hasText(value)) {
+            return null;
+        }
+        for (ProducerProfile profile : values()) {
+            if (profile.name().equalsIgnoreCase(value) || profile.name().replace('_', '-').equalsIgnoreCase(value)) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("unknown kafka producer profile: " + value);
+    }
+
+    private static Map<String, Object> settings(String lingerMs, int batchSize, String compressionType, long bufferMemory,
+                                                String acks, Object... extra) {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        settings.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        settings.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        settings.put(ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemory);
+        settings.put(ProducerConfig.ACKS_CONFIG, acks);
+        for (int i = 0; i < extra.length; i += 2) {
+            settings.put((String) extra[i], extra[i + 1]);
+        }
+        return settings;
+    }
+}
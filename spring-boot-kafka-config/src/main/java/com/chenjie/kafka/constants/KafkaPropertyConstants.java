@@ -9,6 +9,56 @@ public class KafkaPropertyConstants {
      */
     public static final String SPRING_KAFKA_PRODUCER_NAMESPACE_KEY = "spring.kafka.producer.namespace";
     public static final String SPRING_KAFKA_CONSUMER_NAMESPACE_KEY = "spring.kafka.consumer.namespace";
+    /**
+     * 是否为@KafkaListener的topic加上消费者命名空间前缀
+     */
+    public static final String SPRING_KAFKA_CONSUMER_NAMESPACE_ENHANCER_ENABLED = "spring.kafka.consumer.namespace-enhancer.enabled";
+    /**
+     * 批量监听器按key并行处理
+     */
+    public static final String SPRING_KAFKA_CONSUMER_PARALLEL_ENABLED = "spring.kafka.consumer.parallel.enabled";
+    public static final String SPRING_KAFKA_CONSUMER_PARALLEL_THREADS = "spring.kafka.consumer.parallel.threads";
+    public static final String SPRING_KAFKA_CONSUMER_PARALLEL_NACK_SLEEP_MS = "spring.kafka.consumer.parallel.nack-sleep-ms";
+    /**
+     * 消费端按消息ID去重
+     */
+    public static final String SPRING_KAFKA_CONSUMER_DEDUP_ENABLED = "spring.kafka.consumer.dedup.enabled";
+    public static final String SPRING_KAFKA_CONSUMER_DEDUP_WINDOW_SIZE = "spring.kafka.consumer.dedup.window-size";
+    public static final String SPRING_KAFKA_CONSUMER_DEDUP_FALSE_POSITIVE_RATE = "spring.kafka.consumer.dedup.false-positive-rate";
+    /**
+     * 监听器处理耗时、消费速率、lag指标及慢消息采样
+     */
+    public static final String SPRING_KAFKA_CONSUMER_METRICS_ENABLED = "spring.kafka.consumer.metrics.enabled";
+    public static final String SPRING_KAFKA_CONSUMER_METRICS_SLOW_THRESHOLD_MS = "spring.kafka.consumer.metrics.slow-threshold-ms";
+    public static final String SPRING_KAFKA_CONSUMER_METRICS_SLOW_SAMPLE_INTERVAL_MS = "spring.kafka.consumer.metrics.slow-sample-interval-ms";
+    /**
+     * 非阻塞重试topic及死信topic
+     */
+    public static final String SPRING_KAFKA_CONSUMER_RETRY_TOPIC_ENABLED = "spring.kafka.consumer.retry-topic.enabled";
+    public static final String SPRING_KAFKA_CONSUMER_RETRY_TOPIC_ATTEMPTS = "spring.kafka.consumer.retry-topic.attempts";
+    public static final String SPRING_KAFKA_CONSUMER_RETRY_TOPIC_INITIAL_DELAY_MS = "spring.kafka.consumer.retry-topic.initial-delay-ms";
+    public static final String SPRING_KAFKA_CONSUMER_RETRY_TOPIC_MULTIPLIER = "spring.kafka.consumer.retry-topic.multiplier";
+    public static final String SPRING_KAFKA_CONSUMER_RETRY_TOPIC_MAX_DELAY_MS = "spring.kafka.consumer.retry-topic.max-delay-ms";
+    public static final String SPRING_KAFKA_CONSUMER_RETRY_TOPIC_TOPICS = "spring.kafka.consumer.retry-topic.topics";
+    public static final String SPRING_KAFKA_CONSUMER_RETRY_TOPIC_EXCLUDE_TOPICS = "spring.kafka.consumer.retry-topic.exclude-topics";
+    public static final String SPRING_KAFKA_CONSUMER_RETRY_TOPIC_AUTO_CREATE = "spring.kafka.consumer.retry-topic.auto-create-topics";
+    public static final String SPRING_KAFKA_CONSUMER_RETRY_TOPIC_PARTITIONS = "spring.kafka.consumer.retry-topic.partitions";
+    public static final String SPRING_KAFKA_CONSUMER_RETRY_TOPIC_REPLICATION_FACTOR = "spring.kafka.consumer.retry-topic.replication-factor";
+    /**
+     * consumer就近读取(client.rack)、cooperative-sticky分配和静态成员，spring boot的KafkaProperties没有这些字段，由ActiveActiveKafkaConfigure读取
+     */
+    public static final String SPRING_KAFKA_CONSUMER_CLIENT_RACK = "spring.kafka.consumer.client-rack";
+    public static final String SPRING_KAFKA_CONSUMER_COOPERATIVE_REBALANCE = "spring.kafka.consumer.cooperative-rebalance";
+    public static final String SPRING_KAFKA_CONSUMER_STATIC_MEMBERSHIP_ENABLED = "spring.kafka.consumer.static-membership.enabled";
+    public static final String SPRING_KAFKA_CONSUMER_STATIC_MEMBERSHIP_INSTANCE_ID = "spring.kafka.consumer.static-membership.instance-id";
+    /**
+     * kafka streams，双活集群对应的配置在AAKafkaProperties.Streams中
+     */
+    public static final String SPRING_KAFKA_STREAMS_ENABLED = "spring.kafka.streams.enabled";
+    public static final String SPRING_KAFKA_STREAMS_NUM_STANDBY_REPLICAS = "spring.kafka.streams.num-standby-replicas";
+    public static final String SPRING_KAFKA_STREAMS_ROCKSDB_BLOCK_CACHE_SIZE = "spring.kafka.streams.rocksdb.block-cache-size";
+    public static final String SPRING_KAFKA_STREAMS_ROCKSDB_WRITE_BUFFER_SIZE = "spring.kafka.streams.rocksdb.write-buffer-size";
+    public static final String SPRING_KAFKA_STREAMS_ROCKSDB_MEMTABLE_SIZE = "spring.kafka.streams.rocksdb.memtable-size";
     /**
      * default namespace(prefix)
      */
@@ -21,4 +71,79 @@ public class KafkaPropertyConstants {
 
     public static final String PUBLIC_NAMESPACE_PREFIX = "public";
     public static final String SPRING_KAFKA_PRODUCER_THREADS_SIZE = "spring.kafka.producer.threads.size";
+    /**
+     * sendAsync分发模式: direct(直接调用KafkaTemplate) / executor(经由workers线程池)
+     */
+    public static final String SPRING_KAFKA_PRODUCER_DISPATCH_MODE = "spring.kafka.producer.dispatch-mode";
+    /**
+     * bothSendAsync默认双活写入模式: both / first / secondary-async
+     */
+    public static final String SPRING_KAFKA_PRODUCER_ACTIVE_ACTIVE_WRITE_MODE = "spring.kafka.producer.active-active.write-mode";
+    /**
+     * 主集群与双活集群之间按健康状况自动路由
+     */
+    public static final String SPRING_KAFKA_PRODUCER_ROUTING_ENABLED = "spring.kafka.producer.routing.enabled";
+    public static final String SPRING_KAFKA_PRODUCER_ROUTING_FAILURE_RATE_THRESHOLD = "spring.kafka.producer.routing.failure-rate-threshold";
+    public static final String SPRING_KAFKA_PRODUCER_ROUTING_MINIMUM_CALLS = "spring.kafka.producer.routing.minimum-calls";
+    public static final String SPRING_KAFKA_PRODUCER_ROUTING_WINDOW_MS = "spring.kafka.producer.routing.window-ms";
+    public static final String SPRING_KAFKA_PRODUCER_ROUTING_OPEN_DURATION_MS = "spring.kafka.producer.routing.open-duration-ms";
+    public static final String SPRING_KAFKA_PRODUCER_ROUTING_SLOW_CALL_THRESHOLD_MS = "spring.kafka.producer.routing.slow-call-threshold-ms";
+    public static final String SPRING_KAFKA_PRODUCER_ROUTING_FAILOVER_RETRY = "spring.kafka.producer.routing.failover-retry";
+    public static final String SPRING_KAFKA_PRODUCER_THREADS_QUEUE_CAPACITY = "spring.kafka.producer.threads.queue-capacity";
+    /**
+     * 发送隔离舱，spring.kafka.producer.bulkheads.<name>.namespaces/topics/max-records/max-bytes/overflow-policy/threads/queue-capacity/dedicated-producer/profile
+     */
+    public static final String SPRING_KAFKA_PRODUCER_BULKHEADS = "spring.kafka.producer.bulkheads";
+    /**
+     * producer预设，spring boot的KafkaProperties没有该字段，由ActiveActiveKafkaConfigure读取
+     */
+    public static final String SPRING_KAFKA_PRODUCER_PROFILE = "spring.kafka.producer.profile";
+    /**
+     * 发送时为每条消息加上雪花算法生成的消息ID header，同一条消息重试或发往两个集群时ID不变
+     */
+    public static final String SPRING_KAFKA_PRODUCER_MESSAGE_ID_ENABLED = "spring.kafka.producer.message-id.enabled";
+    public static final String SPRING_KAFKA_PRODUCER_MESSAGE_ID_WORKER_ID = "spring.kafka.producer.message-id.worker-id";
+    public static final String SPRING_KAFKA_PRODUCER_MESSAGE_ID_DATACENTER_ID = "spring.kafka.producer.message-id.datacenter-id";
+    /**
+     * 消息ID header名，值为8字节big-endian的long
+     */
+    public static final String MESSAGE_ID_HEADER = "x-message-id";
+    /**
+     * 关闭时等待已接收消息发送完成的最长时间
+     */
+    public static final String SPRING_KAFKA_PRODUCER_SHUTDOWN_DRAIN_TIMEOUT_MS = "spring.kafka.producer.shutdown.drain-timeout-ms";
+    /**
+     * 发送窗口(在途消息条数/字节数上限)
+     */
+    public static final String SPRING_KAFKA_PRODUCER_WINDOW_ENABLED = "spring.kafka.producer.window.enabled";
+    public static final String SPRING_KAFKA_PRODUCER_WINDOW_MAX_RECORDS = "spring.kafka.producer.window.max-records";
+    public static final String SPRING_KAFKA_PRODUCER_WINDOW_MAX_BYTES = "spring.kafka.producer.window.max-bytes";
+    public static final String SPRING_KAFKA_PRODUCER_WINDOW_OVERFLOW_POLICY = "spring.kafka.producer.window.overflow-policy";
+    public static final String SPRING_KAFKA_PRODUCER_WINDOW_BLOCK_TIMEOUT_MS = "spring.kafka.producer.window.block-timeout-ms";
+    public static final String SPRING_KAFKA_PRODUCER_WINDOW_PENDING_CAPACITY = "spring.kafka.producer.window.pending-capacity";
+    public static final String SPRING_KAFKA_PRODUCER_WINDOW_SPILL_DIR = "spring.kafka.producer.window.spill-dir";
+    public static final String SPRING_KAFKA_PRODUCER_WINDOW_OBJECT_BYTES = "spring.kafka.producer.window.object-bytes";
+    /**
+     * KafkaService.sendPooled使用的ByteBuffer池
+     */
+    public static final String SPRING_KAFKA_PRODUCER_BUFFER_POOL_BUFFER_SIZE = "spring.kafka.producer.buffer-pool.buffer-size";
+    public static final String SPRING_KAFKA_PRODUCER_BUFFER_POOL_MAX_POOLED = "spring.kafka.producer.buffer-pool.max-pooled";
+
+    /**
+     * SendMessage切面配置
+     */
+    public static final String SPRING_KAFKA_SEND_MESSAGE_SERIALIZER = "spring.kafka.producer.send-message.serializer";
+    public static final String SPRING_KAFKA_SEND_MESSAGE_ASYNC = "spring.kafka.producer.send-message.async";
+    public static final String SPRING_KAFKA_SEND_MESSAGE_ASYNC_THREADS = "spring.kafka.producer.send-message.async-threads";
+    public static final String SPRING_KAFKA_SEND_MESSAGE_ASYNC_QUEUE_CAPACITY = "spring.kafka.producer.send-message.async-queue-capacity";
+    /**
+     * SendMessage outbox模式
+     */
+    public static final String SPRING_KAFKA_SEND_MESSAGE_OUTBOX_ENABLED = "spring.kafka.producer.send-message.outbox.enabled";
+    public static final String SPRING_KAFKA_SEND_MESSAGE_OUTBOX_DIR = "spring.kafka.producer.send-message.outbox.dir";
+    public static final String SPRING_KAFKA_SEND_MESSAGE_OUTBOX_SEGMENT_BYTES = "spring.kafka.producer.send-message.outbox.segment-bytes";
+    public static final String SPRING_KAFKA_SEND_MESSAGE_OUTBOX_BATCH_SIZE = "spring.kafka.producer.send-message.outbox.batch-size";
+    public static final String SPRING_KAFKA_SEND_MESSAGE_OUTBOX_POLL_INTERVAL_MS = "spring.kafka.producer.send-message.outbox.poll-interval-ms";
+    public static final String SPRING_KAFKA_SEND_MESSAGE_OUTBOX_FLUSH_INTERVAL_MS = "spring.kafka.producer.send-message.outbox.flush-interval-ms";
+    public static final String SPRING_KAFKA_SEND_MESSAGE_OUTBOX_SEND_TIMEOUT_MS = "spring.kafka.producer.send-message.outbox.send-timeout-ms";
 }
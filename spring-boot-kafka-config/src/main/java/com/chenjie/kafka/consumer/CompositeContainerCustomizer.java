@@ -0,0 +1,42 @@
+package com.chenjie.kafka.consumer;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.kafka.config.ContainerCustomizer;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * 依次调用容器中其它所有ContainerCustomizer
+ * 监听容器工厂(包括spring boot创建的kafkaListenerContainerFactory)只能设置一个ContainerCustomizer，注册为@Primary后所有工厂都使用它
+ */
+public class CompositeContainerCustomizer
+        implements ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>> {
+    private final ObjectProvider<ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>>> customizers;
+    private volatile List<ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>>> delegates;
+
+    public CompositeContainerCustomizer(ObjectProvider<ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>>> customizers) {
+        this.customizers = customizers;
+    }
+
+    @Override
+    public void configure(ConcurrentMessageListenerContainer<Object, Object> container) {
+        for (ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>> customizer : getDelegates()) {
+            customizer.configure(container);
+        }
+    }
+
+    /**
+     * 首次创建监听容器时才获取，此时所有单例都已创建
+     */
+    public List<ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>>> getDelegates() {
+        List<ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>>> resolved = this.delegates;
+        if (Objects.isNull(resolved)) {
+            resolved = customizers.orderedStream().filter(customizer -> customizer != this).collect(Collectors.toList());
+            this.delegates = resolved;
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,217 @@
+package com.chenjie.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.listener.adapter.RecordFilterStrategy;
+import org.springframework.lang.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.MESSAGE_ID_HEADER;
+
+/**
+ * 按消息ID header去重，在监听方法执行前丢弃最近window-size条内重复的消息
+ * LRU精确保存最近的消息ID，只有LRU命中才丢弃；布隆过滤器用很少的内存覆盖更长的窗口，
+ * LRU未命中而布隆过滤器命中的消息只计数不丢弃，用于判断window-size是否足够，误判不会导致消息被丢弃
+ * 按消息ID的哈希分成多段，每段有自己的锁、LRU和布隆过滤器，窗口平均分到各段，各监听线程不争用同一把锁
+ * 没有消息ID header的消息不参与去重；两个集群的容器共用一个实例时跨集群重复的消息也会被丢弃
+ * 只在内存中去重，应用重启或分区再均衡到其它实例后窗口重新开始，强一致的幂等仍需业务侧保证
+ */
+public class DeduplicatingRecordFilterStrategy<K, V> implements RecordFilterStrategy<K, V> {
+    private static final Logger logger = LoggerFactory.getLogger(DeduplicatingRecordFilterStrategy.class);
+    private static final int MAX_SEGMENTS = 64;
+
+    private final int windowSize;
+    private final Segment[] segments;
+    private final AtomicLong duplicateCount = new AtomicLong();
+    private final AtomicLong probableReplayCount = new AtomicLong();
+
+    /**
+     * @param windowSize        LRU保存的最近消息ID个数
+     * @param falsePositiveRate 布隆过滤器的误判率
+     */
+    public DeduplicatingRecordFilterStrategy(int windowSize, double falsePositiveRate) {
+        this(windowSize, falsePositiveRate, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param segments 分段数，向上取2的幂，最多64段，每段至少保存1024个ID
+     */
+    DeduplicatingRecordFilterStrategy(int windowSize, double falsePositiveRate, int segments) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be positive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        }
+        this.windowSize = windowSize;
+        int count = Integer.highestOneBit(Math.max(1, Math.min(Math.min(segments, MAX_SEGMENTS), windowSize / 1024)));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // 余数分给前面的段，各段容量之和等于windowSize
+            this.segments[i] = new Segment(windowSize / count + (i < windowSize % count ? 1 : 0), falsePositiveRate);
+        }
+    }
+
+    /**
+     * @return true表示重复消息，丢弃
+     */
+    @Override
+    public boolean filter(ConsumerRecord<K, V> record) {
+        Long id = messageId(record);
+        if (Objects.isNull(id)) {
+            return false;
+        }
+        // 段号用乘法哈希的高位，与布隆过滤器使用的mix哈希无关
+        Segment segment = segments[(int) ((id * 0x9E3779B97F4A7C15L) >>> 58) & (segments.length - 1)];
+        switch (segment.put(id, BloomFilter.mix(id))) {
+            case DUPLICATE:
+                duplicateCount.incrementAndGet();
+                logger.debug("[Dedup] drop duplicate record {}-{}@{}, message id {}", record.topic(), record.partition(), record.offset(), id);
+                return true;
+            case PROBABLE_REPLAY:
+                probableReplayCount.incrementAndGet();
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return 消息ID header的值，没有或格式不对时为null
+     */
+    @Nullable
+    public static Long messageId(ConsumerRecord<?, ?> record) {
+        Header header = record.headers().lastHeader(MESSAGE_ID_HEADER);
+        if (Objects.isNull(header) || Objects.isNull(header.value()) || header.value().length != Long.BYTES) {
+            return null;
+        }
+        return ByteBuffer.wrap(header.value()).getLong();
+    }
+
+    /**
+     * @return 已丢弃的重复消息条数
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * @return LRU未命中但布隆过滤器命中的次数，即超出window-size的重放(含误判)，持续增长说明window-size偏小
+     */
+    public long getProbableReplayCount() {
+        return probableReplayCount.get();
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    int getSegmentCount() {
+        return segments.length;
+    }
+
+    private enum Result {
+        NEW, DUPLICATE, PROBABLE_REPLAY
+    }
+
+    /**
+     * 一段LRU和两代布隆过滤器，由段内的锁保护
+     */
+    private static final class Segment {
+        private final int capacity;
+        private final double falsePositiveRate;
+        private final Map<Long, Boolean> recent;
+        private BloomFilter current;
+        private BloomFilter previous;
+
+        private Segment(int capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            this.recent = new LinkedHashMap<Long, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                    return size() > Segment.this.capacity;
+                }
+            };
+            this.current = new BloomFilter(capacity, falsePositiveRate);
+            this.previous = new BloomFilter(capacity, falsePositiveRate);
+        }
+
+        private synchronized Result put(long id, long hash) {
+            if (Objects.nonNull(recent.put(id, Boolean.TRUE))) {
+                return Result.DUPLICATE;
+            }
+            boolean maybeSeen = current.mightContain(hash) || previous.mightContain(hash);
+            if (current.put(hash) >= capacity) {
+                // 当前代写满后轮换，布隆过滤器覆盖最近capacity到2倍capacity条消息
+                previous = current;
+                current = new BloomFilter(capacity, falsePositiveRate);
+            }
+            return maybeSeen ? Result.PROBABLE_REPLAY : Result.NEW;
+        }
+    }
+
+    /**
+     * 布隆过滤器，读写都在所属段的锁内进行
+     */
+    private static final class BloomFilter {
+        private final long[] bits;
+        private final long bitSize;
+        private final int hashes;
+        private int insertions;
+
+        private BloomFilter(int expectedInsertions, double falsePositiveRate) {
+            long size = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bits = new long[(int) ((Math.max(size, Long.SIZE) + Long.SIZE - 1) / Long.SIZE)];
+            this.bitSize = (long) bits.length * Long.SIZE;
+            this.hashes = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+        }
+
+        /**
+         * @param hash mix后的消息ID
+         */
+        private boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitSize;
+                if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return 写入后的元素个数
+         */
+        private int put(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitSize;
+                bits[(int) (index >>> 6)] |= 1L << index;
+            }
+            return ++insertions;
+        }
+
+        /**
+         * murmur3 fmix64，雪花ID的低位是递增序号，需要先打散
+         */
+        private static long mix(long value) {
+            value ^= value >>> 33;
+            value *= 0xff51afd7ed558ccdL;
+            value ^= value >>> 33;
+            value *= 0xc4ceb9fe1a85ec53L;
+            value ^= value >>> 33;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.chenjie.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.lang.Nullable;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * 批量监听器的并行处理引擎：同一批消息按key分发到线程池并行处理，同一分区内相同key的消息保持顺序
+ * 没有key的消息按分区保持顺序；某条消息失败后，同key的后续消息不再处理
+ * 整批处理完后提交连续完成的位置：全部成功时acknowledge，否则从第一条未完成的消息处nack重新投递
+ * nack和BatchListenerFailedException都按整批的下标生效，不区分分区：下标之后所有分区的消息都会重新投递，
+ * 包括其它分区已经处理成功的消息，handler需要能重复处理同一条消息
+ * <pre>
+ * &#64;KafkaListener(topics = "myTopic", containerFactory = "batchListenerContainerFactory")
+ * public void listen(List&lt;ConsumerRecord&lt;String, String&gt;&gt; records, Acknowledgment ack) {
+ *     keyOrderedProcessor.process(records, ack, record -&gt; handle(record));
+ * }
+ * </pre>
+ */
+public class KeyOrderedProcessor {
+    private static final Logger logger = LoggerFactory.getLogger(KeyOrderedProcessor.class);
+    private static final Object NO_KEY = new Object();
+
+    private final Executor executor;
+    private final Duration nackSleep;
+
+    public KeyOrderedProcessor(Executor executor, Duration nackSleep) {
+        this.executor = executor;
+        this.nackSleep = nackSleep;
+    }
+
+    /**
+     * 并行处理一批消息并提交位置，在监听线程上调用，整批处理完后返回
+     *
+     * @param records 一次拉取到的消息
+     * @param ack     手动提交时传入，失败时按整批下标nack；为null时处理失败抛出BatchListenerFailedException交给容器的错误处理器
+     * @param handler 单条消息处理逻辑
+     * @return 连续处理成功的消息条数
+     */
+    public <K, V> int process(List<ConsumerRecord<K, V>> records, @Nullable Acknowledgment ack, RecordHandler<K, V> handler) {
+        if (records.isEmpty()) {
+            return 0;
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[records.size()];
+        Map<List<Object>, CompletableFuture<Void>> tails = new HashMap<>();
+        for (int i = 0; i < futures.length; i++) {
+            ConsumerRecord<K, V> record = records.get(i);
+            Runnable task = () -> {
+                try {
+                    handler.handle(record);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            };
+            List<Object> orderingKey = orderingKey(record);
+            CompletableFuture<Void> tail = tails.get(orderingKey);
+            CompletableFuture<Void> future = tail == null ? CompletableFuture.runAsync(task, executor) : tail.thenRunAsync(task, executor);
+            tails.put(orderingKey, future);
+            futures[i] = future;
+        }
+        CompletableFuture.allOf(futures).exceptionally(ex -> null).join();
+        int watermark = watermark(futures);
+        if (watermark == futures.length) {
+            if (ack != null) {
+                ack.acknowledge();
+            }
+            return watermark;
+        }
+        Throwable cause = cause(futures[watermark]);
+        ConsumerRecord<K, V> failed = records.get(watermark);
+        logger.warn("[KeyOrderedProcessor] record {}-{}@{} failed, {} of {} records committed, failed partitions {}, "
+                        + "{} succeeded records after it will be redelivered",
+                failed.topic(), failed.partition(), failed.offset(), watermark, futures.length,
+                failedPartitions(records, futures), redelivered(futures, watermark), cause);
+        if (ack == null) {
+            throw new BatchListenerFailedException("record failed in key ordered processor", cause, watermark);
+        }
+        ack.nack(watermark, nackSleep);
+        return watermark;
+    }
+
+    /**
+     * 第一条未成功的消息下标(按投递顺序，跨分区)，之前的消息都已处理成功
+     */
+    private static int watermark(CompletableFuture<?>[] futures) {
+        for (int i = 0; i < futures.length; i++) {
+            if (futures[i].isCompletedExceptionally()) {
+                return i;
+            }
+        }
+        return futures.length;
+    }
+
+    /**
+     * 每个失败分区第一条失败消息的offset，按投递顺序
+     */
+    private static Map<TopicPartition, Long> failedPartitions(List<? extends ConsumerRecord<?, ?>> records, CompletableFuture<?>[] futures) {
+        Map<TopicPartition, Long> failed = new LinkedHashMap<>();
+        for (int i = 0; i < futures.length; i++) {
+            if (futures[i].isCompletedExceptionally()) {
+                ConsumerRecord<?, ?> record = records.get(i);
+                failed.putIfAbsent(new TopicPartition(record.topic(), record.partition()), record.offset());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * watermark之后已经处理成功、会随nack重新投递的消息条数
+     */
+    private static int redelivered(CompletableFuture<?>[] futures, int watermark) {
+        int count = 0;
+        for (int i = watermark; i < futures.length; i++) {
+            if (!futures[i].isCompletedExceptionally()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Throwable cause(CompletableFuture<?> future) {
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause() == null ? e : e.getCause();
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    /**
+     * 保序的维度：topic + partition + key，byte[]类型的key按内容比较
+     */
+    private static List<Object> orderingKey(ConsumerRecord<?, ?> record) {
+        Object key = record.key();
+        if (key instanceof byte[]) {
+            key = ByteBuffer.wrap((byte[]) key);
+        }
+        return Arrays.asList(record.topic(), record.partition(), Objects.isNull(key) ? NO_KEY : key);
+    }
+
+    /**
+     * 单条消息处理逻辑
+     */
+    @FunctionalInterface
+    public interface RecordHandler<K, V> {
+        void handle(ConsumerRecord<K, V> record) throws Exception;
+    }
+}
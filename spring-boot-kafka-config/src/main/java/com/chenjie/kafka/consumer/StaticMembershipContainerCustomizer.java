@@ -0,0 +1,57 @@
+package com.chenjie.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.kafka.config.ContainerCustomizer;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.util.StringUtils;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * 静态成员：为开启了静态成员的consumer工厂创建的每个监听容器设置group.instance.id = 前缀-监听器id，
+ * 同一消费组内的多个监听器不会使用相同的group.instance.id；并发消费时spring-kafka再加上-0、-1...
+ * 前缀只保存在这里，不放进工厂配置，不经过监听容器创建的consumer(如ConsumerFactory.createConsumer)不使用静态成员
+ * 监听器已在consumer properties中指定group.instance.id时保持不变
+ */
+public class StaticMembershipContainerCustomizer
+        implements ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>> {
+    private final Map<ConsumerFactory<?, ?>, String> instanceIds = new IdentityHashMap<>();
+
+    /**
+     * @param consumerFactory 开启静态成员的consumer工厂
+     * @param instanceId      group.instance.id前缀，为空时该工厂不使用静态成员
+     */
+    public StaticMembershipContainerCustomizer register(ConsumerFactory<?, ?> consumerFactory, String instanceId) {
+        if (StringUtils.hasText(instanceId)) {
+            instanceIds.put(consumerFactory, instanceId);
+        }
+        return this;
+    }
+
+    @Override
+    public void configure(ConcurrentMessageListenerContainer<Object, Object> container) {
+        if (instanceIds.isEmpty()) {
+            return;
+        }
+        Properties current = container.getContainerProperties().getKafkaConsumerProperties();
+        if (StringUtils.hasText(current.getProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG))) {
+            return;
+        }
+        // 容器的consumerFactory是protected字段，没有getter
+        ConsumerFactory<?, ?> consumerFactory = (ConsumerFactory<?, ?>) new DirectFieldAccessor(container).getPropertyValue("consumerFactory");
+        String base = Objects.isNull(consumerFactory) ? null : instanceIds.get(consumerFactory);
+        if (Objects.isNull(base)) {
+            return;
+        }
+        // 工厂的Properties会被复制到所有容器，不能直接修改
+        Properties properties = new Properties();
+        properties.putAll(current);
+        properties.setProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG, base + "-" + container.getListenerId());
+        container.getContainerProperties().setKafkaConsumerProperties(properties);
+    }
+}
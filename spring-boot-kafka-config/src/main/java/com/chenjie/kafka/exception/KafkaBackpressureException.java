@@ -0,0 +1,21 @@
+package com.chenjie.kafka.exception;
+
+/**
+ * kafka发送窗口已满时的背压异常类
+ */
+public class KafkaBackpressureException extends RuntimeException {
+    public KafkaBackpressureException() {
+    }
+
+    public KafkaBackpressureException(String message) {
+        super(message);
+    }
+
+    public KafkaBackpressureException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public KafkaBackpressureException(Throwable cause) {
+        super(cause);
+    }
+}
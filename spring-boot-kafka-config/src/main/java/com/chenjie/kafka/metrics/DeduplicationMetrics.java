@@ -0,0 +1,42 @@
+package com.chenjie.kafka.metrics;
+
+import com.chenjie.kafka.consumer.DeduplicatingRecordFilterStrategy;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.lang.Nullable;
+
+/**
+ * 消息去重计数：LRU命中丢弃的重复消息，以及超出window-size的重放(布隆过滤器命中)
+ */
+public class DeduplicationMetrics implements MeterBinder {
+    @Nullable
+    private final DeduplicatingRecordFilterStrategy<?, ?> strategy;
+    private final Tags tags;
+
+    /**
+     * @param strategy 为空时(RecordFilterStrategy被替换成其它实现)不注册
+     */
+    public DeduplicationMetrics(@Nullable DeduplicatingRecordFilterStrategy<?, ?> strategy, String namespace) {
+        this.strategy = strategy;
+        this.tags = Tags.of("namespace", namespace);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (strategy == null) {
+            return;
+        }
+        FunctionCounter.builder("kafka.consumer.dedup", strategy, DeduplicatingRecordFilterStrategy::getDuplicateCount)
+                .description("按消息ID去重的消息数，duplicate已丢弃，probable-replay未丢弃，持续增长说明window-size偏小")
+                .tags(tags)
+                .tag("result", "duplicate")
+                .register(registry);
+        FunctionCounter.builder("kafka.consumer.dedup", strategy, DeduplicatingRecordFilterStrategy::getProbableReplayCount)
+                .description("按消息ID去重的消息数，duplicate已丢弃，probable-replay未丢弃，持续增长说明window-size偏小")
+                .tags(tags)
+                .tag("result", "probable-replay")
+                .register(registry);
+    }
+}
@@ -0,0 +1,225 @@
+package com.chenjie.kafka.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.config.ContainerCustomizer;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.CompositeBatchInterceptor;
+import org.springframework.kafka.listener.CompositeRecordInterceptor;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.lang.Nullable;
+
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按监听器(listener id)统计处理耗时、消费条数、分区lag，并采样打印慢消息
+ * 作为ContainerCustomizer为每个容器挂上独立的拦截器，已配置的RecordInterceptor/BatchInterceptor放在前面组合执行
+ * lag取自consumer本地的拉取位置，不发起额外请求；指标在收到第一条消息时才注册，与MeterRegistry的初始化顺序无关
+ */
+public class KafkaListenerMetrics implements MeterBinder,
+        ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>> {
+    private static final Logger logger = LoggerFactory.getLogger(KafkaListenerMetrics.class);
+
+    private final Tags tags;
+    private final long slowThresholdNanos;
+    private final long slowSampleIntervalNanos;
+    @Nullable
+    private final RecordInterceptor<Object, Object> recordInterceptor;
+    @Nullable
+    private final BatchInterceptor<Object, Object> batchInterceptor;
+    private volatile MeterRegistry registry;
+
+    public KafkaListenerMetrics(String namespace, long slowThresholdMs, long slowSampleIntervalMs,
+                                @Nullable RecordInterceptor<Object, Object> recordInterceptor,
+                                @Nullable BatchInterceptor<Object, Object> batchInterceptor) {
+        this.tags = Tags.of("namespace", namespace);
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+        this.slowSampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(slowSampleIntervalMs);
+        this.recordInterceptor = recordInterceptor;
+        this.batchInterceptor = batchInterceptor;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void configure(ConcurrentMessageListenerContainer<Object, Object> container) {
+        String listener = Objects.nonNull(container.getListenerId()) ? container.getListenerId() : container.getBeanName();
+        ListenerInterceptor interceptor = new ListenerInterceptor(listener);
+        container.setRecordInterceptor(Objects.isNull(recordInterceptor) ? interceptor
+                : new CompositeRecordInterceptor<>(recordInterceptor, interceptor));
+        container.setBatchInterceptor(Objects.isNull(batchInterceptor) ? interceptor
+                : new CompositeBatchInterceptor<>(batchInterceptor, interceptor));
+    }
+
+    /**
+     * 单个监听器的拦截器，并发容器的多个消费线程共用，开始时间按线程保存
+     */
+    class ListenerInterceptor implements RecordInterceptor<Object, Object>, BatchInterceptor<Object, Object> {
+        private final String listener;
+        private final ThreadLocal<long[]> startNanos = ThreadLocal.withInitial(() -> new long[1]);
+        private final ConcurrentMap<TopicPartition, AtomicLong> lags = new ConcurrentHashMap<>();
+        private final AtomicLong lastSlowLogNanos = new AtomicLong(System.nanoTime() - slowSampleIntervalNanos);
+        private final AtomicLong suppressedSlow = new AtomicLong();
+        private volatile Timer successTimer;
+        private volatile Timer failureTimer;
+        private volatile Counter records;
+        private volatile Counter slow;
+
+        ListenerInterceptor(String listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public ConsumerRecord<Object, Object> intercept(ConsumerRecord<Object, Object> record, Consumer<Object, Object> consumer) {
+            updateLag(new TopicPartition(record.topic(), record.partition()), consumer);
+            startNanos.get()[0] = System.nanoTime();
+            return record;
+        }
+
+        @Override
+        public void success(ConsumerRecord<Object, Object> record, Consumer<Object, Object> consumer) {
+            complete(1, false, record);
+        }
+
+        @Override
+        public void failure(ConsumerRecord<Object, Object> record, Exception exception, Consumer<Object, Object> consumer) {
+            complete(1, true, record);
+        }
+
+        @Override
+        public ConsumerRecords<Object, Object> intercept(ConsumerRecords<Object, Object> records, Consumer<Object, Object> consumer) {
+            for (TopicPartition partition : records.partitions()) {
+                updateLag(partition, consumer);
+            }
+            startNanos.get()[0] = System.nanoTime();
+            return records;
+        }
+
+        @Override
+        public void success(ConsumerRecords<Object, Object> records, Consumer<Object, Object> consumer) {
+            complete(records.count(), false, first(records));
+        }
+
+        @Override
+        public void failure(ConsumerRecords<Object, Object> records, Exception exception, Consumer<Object, Object> consumer) {
+            complete(records.count(), true, first(records));
+        }
+
+        private void complete(int count, boolean failed, @Nullable ConsumerRecord<Object, Object> sample) {
+            long[] start = startNanos.get();
+            if (start[0] == 0L || !ensureMeters()) {
+                return;
+            }
+            long elapsed = System.nanoTime() - start[0];
+            start[0] = 0L;
+            (failed ? failureTimer : successTimer).record(elapsed, TimeUnit.NANOSECONDS);
+            records.increment(count);
+            if (elapsed >= slowThresholdNanos) {
+                slow.increment();
+                sampleSlow(count, elapsed, sample);
+            }
+        }
+
+        /**
+         * 每个间隔最多打印一条，其余只计数，避免消费积压时刷屏
+         */
+        private void sampleSlow(int count, long elapsed, @Nullable ConsumerRecord<Object, Object> sample) {
+            long now = System.nanoTime();
+            long last = lastSlowLogNanos.get();
+            if (now - last < slowSampleIntervalNanos || !lastSlowLogNanos.compareAndSet(last, now)) {
+                suppressedSlow.incrementAndGet();
+                return;
+            }
+            if (Objects.isNull(sample)) {
+                return;
+            }
+            logger.warn("slow kafka listener {}: {} record(s) from {}-{}@{} took {}ms, {} slow invocation(s) not logged",
+                    listener, count, sample.topic(), sample.partition(), sample.offset(),
+                    TimeUnit.NANOSECONDS.toMillis(elapsed), suppressedSlow.getAndSet(0));
+        }
+
+        private void updateLag(TopicPartition partition, Consumer<Object, Object> consumer) {
+            OptionalLong lag = consumer.currentLag(partition);
+            if (!lag.isPresent()) {
+                return;
+            }
+            AtomicLong value = lags.get(partition);
+            if (Objects.isNull(value)) {
+                MeterRegistry registry = KafkaListenerMetrics.this.registry;
+                if (Objects.isNull(registry)) {
+                    return;
+                }
+                value = lags.computeIfAbsent(partition, tp -> {
+                    AtomicLong created = new AtomicLong();
+                    Gauge.builder("kafka.consumer.listener.lag", created, AtomicLong::get)
+                            .description("监听器在该分区落后的消息条数")
+                            .tags(tags)
+                            .tag("listener", listener)
+                            .tag("topic", tp.topic())
+                            .tag("partition", String.valueOf(tp.partition()))
+                            .register(registry);
+                    return created;
+                });
+            }
+            value.set(lag.getAsLong());
+        }
+
+        private boolean ensureMeters() {
+            if (Objects.nonNull(records)) {
+                return true;
+            }
+            MeterRegistry registry = KafkaListenerMetrics.this.registry;
+            if (Objects.isNull(registry)) {
+                return false;
+            }
+            successTimer = timer(registry, "success");
+            failureTimer = timer(registry, "failure");
+            slow = Counter.builder("kafka.consumer.listener.slow")
+                    .description("处理耗时超过慢消息阈值的次数")
+                    .tags(tags)
+                    .tag("listener", listener)
+                    .register(registry);
+            records = Counter.builder("kafka.consumer.listener.records")
+                    .description("监听器处理的消息条数，按时间求速率即每秒消费条数")
+                    .tags(tags)
+                    .tag("listener", listener)
+                    .register(registry);
+            return true;
+        }
+
+        private Timer timer(MeterRegistry registry, String result) {
+            return Timer.builder("kafka.consumer.listener.processing")
+                    .description("监听方法处理单条消息(批量监听器为单批)的耗时")
+                    .tags(tags)
+                    .tag("listener", listener)
+                    .tag("result", result)
+                    .publishPercentileHistogram()
+                    .publishPercentiles(0.5, 0.99, 0.999)
+                    .register(registry);
+        }
+
+        @Nullable
+        private ConsumerRecord<Object, Object> first(ConsumerRecords<Object, Object> records) {
+            return records.isEmpty() ? null : records.iterator().next();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.chenjie.kafka.metrics;
+
+import com.chenjie.kafka.service.Bulkhead;
+import com.chenjie.kafka.service.ClusterHealth;
+import com.chenjie.kafka.service.ClusterRouter;
+import com.chenjie.kafka.service.KafkaSendObserver;
+import com.chenjie.kafka.service.KafkaService;
+import com.chenjie.kafka.service.SendWindow;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.lang.Nullable;
+
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * KafkaService发送队列及各集群发送耗时指标，由actuator自动注册
+ * 耗时分为排队(调用sendAsync到交给KafkaTemplate)和确认(交给KafkaTemplate到broker确认)两段，客户端百分位由HdrHistogram计算
+ */
+public class KafkaServiceMetrics implements MeterBinder, KafkaSendObserver {
+    /**
+     * 按topic统计的topic个数上限，超过后记为OTHER_TOPIC
+     */
+    static final int MAX_TAGGED_TOPICS = 1024;
+    static final String OTHER_TOPIC = "other";
+    static final String DEFAULT_BULKHEAD = "default";
+    private static final String[] CLUSTERS = {CLUSTER_PRIMARY, CLUSTER_AA};
+    private static final String[] RESULTS = {"success", "failure"};
+
+    private final KafkaService<?, ?> kafkaService;
+    private final ConcurrentMap<String, Counter[]> topicCounters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counter> errorCounters = new ConcurrentHashMap<>();
+    private final AtomicLong primaryInFlight = new AtomicLong();
+    private final AtomicLong aaInFlight = new AtomicLong();
+    private MeterRegistry registry;
+    private Tags tags;
+    private Timer[] latencyTimers;
+    private Timer[] ackTimers;
+    private Timer[] queueTimers;
+
+    public KafkaServiceMetrics(KafkaService<?, ?> kafkaService) {
+        this.kafkaService = kafkaService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Tags tags = Tags.of("namespace", kafkaService.getNamespace());
+        this.registry = registry;
+        this.tags = tags;
+        latencyTimers = new Timer[CLUSTERS.length * RESULTS.length];
+        ackTimers = new Timer[CLUSTERS.length * RESULTS.length];
+        queueTimers = new Timer[CLUSTERS.length];
+        for (int c = 0; c < CLUSTERS.length; c++) {
+            for (int r = 0; r < RESULTS.length; r++) {
+                latencyTimers[c * RESULTS.length + r] = timer(registry, tags, "kafka.producer.send.latency",
+                        "从调用sendAsync到broker确认的耗时", CLUSTERS[c], RESULTS[r]);
+                ackTimers[c * RESULTS.length + r] = timer(registry, tags, "kafka.producer.send.ack-latency",
+                        "从交给KafkaTemplate到broker确认的耗时", CLUSTERS[c], RESULTS[r]);
+            }
+            queueTimers[c] = timer(registry, tags, "kafka.producer.send.queue-time",
+                    "从调用sendAsync到交给KafkaTemplate的排队耗时(发送窗口及workers线程池)", CLUSTERS[c], null);
+        }
+        Gauge.builder("kafka.producer.send.in-flight", primaryInFlight, AtomicLong::get)
+                .description("已调用sendAsync尚未完成的消息条数")
+                .tags(tags)
+                .tag("cluster", CLUSTER_PRIMARY)
+                .register(registry);
+        Gauge.builder("kafka.producer.send.in-flight", aaInFlight, AtomicLong::get)
+                .description("已调用sendAsync尚未完成的消息条数")
+                .tags(tags)
+                .tag("cluster", CLUSTER_AA)
+                .register(registry);
+        kafkaService.setSendObserver(this);
+        Gauge.builder("kafka.producer.queue.depth", kafkaService, KafkaService::getQueueDepth)
+                .description("workers线程池中排队的发送任务数")
+                .tags(tags)
+                .tag("bulkhead", DEFAULT_BULKHEAD)
+                .register(registry);
+        ClusterRouter router = kafkaService.getClusterRouter();
+        if (Objects.nonNull(router)) {
+            bindClusterHealth(registry, tags, router.getPrimary());
+            bindClusterHealth(registry, tags, router.getAa());
+        }
+        Gauge.builder("kafka.producer.window.spilled", kafkaService, KafkaService::getSpilledCount)
+                .description("已落盘待重发的消息条数")
+                .tags(tags)
+                .register(registry);
+        if (Objects.nonNull(kafkaService.getSendWindow())) {
+            bindWindow(registry, tags.and("bulkhead", DEFAULT_BULKHEAD), kafkaService.getSendWindow());
+        }
+        for (Bulkhead<?, ?> bulkhead : kafkaService.getBulkheads()) {
+            Tags bulkheadTags = tags.and("bulkhead", bulkhead.getName());
+            if (Objects.nonNull(bulkhead.getWorkers())) {
+                Gauge.builder("kafka.producer.queue.depth", bulkhead.getWorkers(), workers -> workers.getQueue().size())
+                        .description("workers线程池中排队的发送任务数")
+                        .tags(bulkheadTags)
+                        .register(registry);
+            }
+            if (Objects.nonNull(bulkhead.getWindow())) {
+                bindWindow(registry, bulkheadTags, bulkhead.getWindow());
+            }
+        }
+    }
+
+    private static void bindWindow(MeterRegistry registry, Tags tags, SendWindow<?, ?> window) {
+        Gauge.builder("kafka.producer.window.in-flight.records", window, SendWindow::getInFlightRecords)
+                .description("发送窗口中在途的消息条数")
+                .tags(tags)
+                .register(registry);
+        Gauge.builder("kafka.producer.window.in-flight.bytes", window, SendWindow::getInFlightBytes)
+                .description("发送窗口中在途的消息字节数")
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(registry);
+        Gauge.builder("kafka.producer.window.pending", window, SendWindow::getPendingRecords)
+                .description("发送窗口满时等待发送的消息条数")
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder("kafka.producer.window.rejected", window, SendWindow::getRejectedCount)
+                .description("发送窗口满而被拒绝的消息条数")
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder("kafka.producer.window.dropped", window, SendWindow::getDroppedCount)
+                .description("发送窗口满而被丢弃的消息条数")
+                .tags(tags)
+                .register(registry);
+    }
+
+    @Override
+    public void onSendStart(String cluster, String topic) {
+        (CLUSTER_AA.equals(cluster) ? aaInFlight : primaryInFlight).incrementAndGet();
+    }
+
+    @Override
+    public void onSendComplete(String cluster, String topic, long queuedNanos, long ackNanos, @Nullable Throwable ex) {
+        int c = CLUSTER_AA.equals(cluster) ? 1 : 0;
+        int index = c * RESULTS.length + (ex == null ? 0 : 1);
+        (c == 1 ? aaInFlight : primaryInFlight).decrementAndGet();
+        queueTimers[c].record(queuedNanos, TimeUnit.NANOSECONDS);
+        if (ackNanos >= 0) {
+            ackTimers[index].record(ackNanos, TimeUnit.NANOSECONDS);
+        }
+        latencyTimers[index].record(queuedNanos + Math.max(0L, ackNanos), TimeUnit.NANOSECONDS);
+        topicCounters(topic)[index].increment();
+        if (ex != null) {
+            errorCounter(cluster, ex).increment();
+        }
+    }
+
+    private Counter[] topicCounters(String topic) {
+        Counter[] counters = topicCounters.get(topic);
+        if (Objects.nonNull(counters)) {
+            return counters;
+        }
+        String tagged = topicCounters.size() >= MAX_TAGGED_TOPICS ? OTHER_TOPIC : topic;
+        return topicCounters.computeIfAbsent(tagged, t -> {
+            Counter[] created = new Counter[CLUSTERS.length * RESULTS.length];
+            for (int c = 0; c < CLUSTERS.length; c++) {
+                for (int r = 0; r < RESULTS.length; r++) {
+                    created[c * RESULTS.length + r] = Counter.builder("kafka.producer.send.records")
+                            .description("按topic统计的发送消息条数")
+                            .tags(tags)
+                            .tag("topic", t)
+                            .tag("cluster", CLUSTERS[c])
+                            .tag("result", RESULTS[r])
+                            .register(registry);
+                }
+            }
+            return created;
+        });
+    }
+
+    private Counter errorCounter(String cluster, Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        String exception = cause.getClass().getSimpleName();
+        return errorCounters.computeIfAbsent(cluster + ":" + exception, k -> Counter.builder("kafka.producer.send.errors")
+                .description("发送失败次数")
+                .tags(tags)
+                .tag("cluster", cluster)
+                .tag("exception", exception)
+                .register(registry));
+    }
+
+    private static void bindClusterHealth(MeterRegistry registry, Tags tags, ClusterHealth health) {
+        Gauge.builder("kafka.producer.cluster.state", health, h -> h.getState().ordinal())
+                .description("集群熔断状态: 0 CLOSED, 1 HALF_OPEN, 2 OPEN")
+                .tags(tags)
+                .tag("cluster", health.getCluster())
+                .register(registry);
+        Gauge.builder("kafka.producer.cluster.p99", health, h -> h.getP99Nanos() / 1_000_000.0)
+                .description("路由统计的最近发送耗时p99")
+                .baseUnit("milliseconds")
+                .tags(tags)
+                .tag("cluster", health.getCluster())
+                .register(registry);
+    }
+
+    private static Timer timer(MeterRegistry registry, Tags tags, String name, String description, String cluster,
+                               @Nullable String result) {
+        Timer.Builder builder = Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .tag("cluster", cluster)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.99, 0.999);
+        if (Objects.nonNull(result)) {
+            builder.tag("result", result);
+        }
+        return builder.register(registry);
+    }
+}
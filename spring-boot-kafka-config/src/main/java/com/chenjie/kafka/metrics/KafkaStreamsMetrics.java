@@ -0,0 +1,26 @@
+package com.chenjie.kafka.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.kafka.streams.KafkaStreamsMicrometerListener;
+
+import java.util.List;
+
+/**
+ * kafka streams客户端指标(线程、任务、state store等)，streams启动时注册，spring.id标签为StreamsBuilder的bean名
+ */
+public class KafkaStreamsMetrics implements MeterBinder {
+    private final List<StreamsBuilderFactoryBean> streamsBuilders;
+
+    public KafkaStreamsMetrics(List<StreamsBuilderFactoryBean> streamsBuilders) {
+        this.streamsBuilders = streamsBuilders;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (StreamsBuilderFactoryBean streamsBuilder : streamsBuilders) {
+            streamsBuilder.addListener(new KafkaStreamsMicrometerListener(registry));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.chenjie.kafka.metrics;
+
+import com.chenjie.kafka.aspect.SendEmailAspect;
+import com.chenjie.kafka.aspect.SendMessageObserver;
+import com.chenjie.kafka.outbox.KafkaOutbox;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.lang.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SendMessage切面发送计数及排队、序列化耗时，替代逐条INFO日志
+ */
+public class SendMessageMetrics implements MeterBinder, SendMessageObserver {
+    private final SendEmailAspect sendEmailAspect;
+    private final Tags tags;
+    private Timer handoffTimer;
+    private Timer serializeTimer;
+
+    public SendMessageMetrics(SendEmailAspect sendEmailAspect, String namespace) {
+        this.sendEmailAspect = sendEmailAspect;
+        this.tags = Tags.of("namespace", namespace);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("kafka.send-message", sendEmailAspect, SendEmailAspect::getSentCount)
+                .description("SendMessage切面发送的消息数")
+                .tags(tags)
+                .tag("result", "success")
+                .register(registry);
+        FunctionCounter.builder("kafka.send-message", sendEmailAspect, SendEmailAspect::getFailedCount)
+                .description("SendMessage切面发送的消息数")
+                .tags(tags)
+                .tag("result", "failure")
+                .register(registry);
+        FunctionCounter.builder("kafka.send-message", sendEmailAspect, SendEmailAspect::getSkippedCount)
+                .description("SendMessage切面发送的消息数")
+                .tags(tags)
+                .tag("result", "skipped")
+                .register(registry);
+        handoffTimer = Timer.builder("kafka.send-message.handoff")
+                .description("async模式下消息在切面线程池中排队的耗时")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+        serializeTimer = Timer.builder("kafka.send-message.serialize")
+                .description("SendMessage返回值序列化耗时")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+        sendEmailAspect.setObserver(this);
+        if (sendEmailAspect.getOutbox() != null) {
+            FunctionCounter.builder("kafka.send-message.outbox.appended", sendEmailAspect, SendEmailAspect::getOutboxAppendedCount)
+                    .description("追加到outbox的消息数，发送成功后计入kafka.send-message")
+                    .tags(tags)
+                    .register(registry);
+            Gauge.builder("kafka.send-message.outbox.backlog", sendEmailAspect.getOutbox(), KafkaOutbox::getBacklog)
+                    .description("outbox中尚未发送到kafka的消息数")
+                    .tags(tags)
+                    .register(registry);
+            FunctionCounter.builder("kafka.send-message.outbox.corrupt", sendEmailAspect.getOutbox(), KafkaOutbox::getCorruptCount)
+                    .description("outbox日志中crc或长度校验失败、已跳过的记录数")
+                    .tags(tags)
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void onSendMessage(String topic, long handoffNanos, long serializeNanos, @Nullable Throwable ex) {
+        handoffTimer.record(handoffNanos, TimeUnit.NANOSECONDS);
+        serializeTimer.record(serializeNanos, TimeUnit.NANOSECONDS);
+    }
+}
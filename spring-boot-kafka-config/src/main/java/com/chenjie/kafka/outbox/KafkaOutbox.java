@@ -0,0 +1,201 @@
+package com.chenjie.kafka.outbox;
+
+import com.chenjie.kafka.service.BatchSendResult;
+import com.chenjie.kafka.service.KafkaService;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SendMessage的outbox模式：消息先追加到本地SegmentLog，再由后台relay线程批量发送到KafkaService
+ * 发送成功后才提交位置，进程重启后从上次提交的位置继续发送(at-least-once)
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class KafkaOutbox implements SmartLifecycle {
+    private static final Logger logger = LoggerFactory.getLogger(KafkaOutbox.class);
+    private static final long MAX_BACKOFF_MS = 30000L;
+
+    private final SegmentLog log;
+    private final KafkaService kafkaService;
+    private final int batchSize;
+    private final long pollIntervalMs;
+    private final long flushIntervalMs;
+    private final long sendTimeoutMs;
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private volatile boolean running;
+    private volatile boolean stopped;
+    private Thread relay;
+
+    public KafkaOutbox(SegmentLog log, KafkaService<?, ?> kafkaService, int batchSize, long pollIntervalMs,
+                       long flushIntervalMs, long sendTimeoutMs) {
+        this.log = log;
+        this.kafkaService = kafkaService;
+        this.batchSize = batchSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.flushIntervalMs = flushIntervalMs;
+        this.sendTimeoutMs = sendTimeoutMs;
+    }
+
+    /**
+     * 追加一条待发送消息，topic为未加前缀的原始topic
+     *
+     * @param topic 原始topic
+     * @param key   消息key
+     * @param value String或byte[]
+     * @throws IllegalStateException outbox已停止
+     */
+    public void append(String topic, @Nullable String key, Object value) {
+        if (stopped) {
+            throw new IllegalStateException("outbox is stopped, cannot append message, topic: " + topic);
+        }
+        try {
+            log.append(new OutboxMessage(topic, key, value).encode());
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot append message to outbox, topic: " + topic, e);
+        }
+    }
+
+    public long getBacklog() {
+        return log.getBacklog();
+    }
+
+    /**
+     * relay已发送成功并提交位置的消息数
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /**
+     * @return outbox日志中发现并跳过的损坏记录数
+     */
+    public long getCorruptCount() {
+        return log.getCorruptCount();
+    }
+
+    @Override
+    public void start() {
+        if (stopped) {
+            throw new IllegalStateException("outbox is stopped and its log is closed");
+        }
+        running = true;
+        relay = new Thread(this::relayLoop, "kafka-outbox-relay");
+        relay.setDaemon(true);
+        relay.start();
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        running = false;
+        if (relay != null) {
+            relay.interrupt();
+            try {
+                relay.join(sendTimeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            logger.error("[KafkaOutbox] cannot close outbox log", e);
+        }
+        logger.info("[KafkaOutbox] stopped with {} unsent records left in outbox", log.getBacklog());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 先于KafkaService停止，保证relay停止时producer仍可用
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 100;
+    }
+
+    private void relayLoop() {
+        long lastFlush = System.currentTimeMillis();
+        while (running) {
+            try {
+                if (System.currentTimeMillis() - lastFlush >= flushIntervalMs) {
+                    log.flush();
+                    lastFlush = System.currentTimeMillis();
+                }
+                List<SegmentLog.Entry> entries = log.read(log.getCommitted(), batchSize);
+                if (entries.isEmpty()) {
+                    TimeUnit.MILLISECONDS.sleep(pollIntervalMs);
+                    continue;
+                }
+                List<ProducerRecord> records = new ArrayList<>(entries.size());
+                for (SegmentLog.Entry entry : entries) {
+                    if (entry.isCorrupt()) {
+                        continue;
+                    }
+                    OutboxMessage message = OutboxMessage.decode(entry.getPayload());
+                    records.add(new ProducerRecord<>(message.getTopic(), message.getKey(), message.getValue()));
+                }
+                if (records.isEmpty() || deliver(records)) {
+                    log.commit(entries.get(entries.size() - 1).getNext(), entries.size());
+                    deliveredCount.addAndGet(records.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("[KafkaOutbox] relay error", e);
+            }
+        }
+    }
+
+    /**
+     * 发送一批消息，失败的部分按指数退避重试直到全部成功或relay停止
+     *
+     * @return 是否全部发送成功
+     */
+    private boolean deliver(List<ProducerRecord> records) throws InterruptedException {
+        List<ProducerRecord> pending = records;
+        long backoffMs = pollIntervalMs;
+        while (running) {
+            BatchSendResult result;
+            try {
+                result = (BatchSendResult) kafkaService.sendAll(pending).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                logger.warn("[KafkaOutbox] send batch of {} records failed, retry in {}ms", pending.size(), backoffMs, e);
+                TimeUnit.MILLISECONDS.sleep(backoffMs);
+                backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+                continue;
+            }
+            if (result.isAllSucceeded()) {
+                return true;
+            }
+            List<ProducerRecord> failed = new ArrayList<>(result.getFailedCount());
+            Throwable cause = null;
+            for (int i = 0; i < result.size(); i++) {
+                if (result.getError(i) != null) {
+                    failed.add(pending.get(i));
+                    cause = cause == null ? result.getError(i) : cause;
+                }
+            }
+            logger.warn("[KafkaOutbox] {} of {} records failed, retry in {}ms", failed.size(), pending.size(), backoffMs, cause);
+            pending = failed;
+            TimeUnit.MILLISECONDS.sleep(backoffMs);
+            backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        }
+        return false;
+    }
+}
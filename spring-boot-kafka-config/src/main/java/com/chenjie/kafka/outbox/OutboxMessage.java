@@ -0,0 +1,70 @@
+package com.chenjie.kafka.outbox;
+
+import org.springframework.lang.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * outbox中的一条消息，value只支持String和byte[]
+ */
+public class OutboxMessage {
+    private static final byte STRING_VALUE = 0;
+    private static final byte BYTES_VALUE = 1;
+
+    private final String topic;
+    private final String key;
+    private final Object value;
+
+    public OutboxMessage(String topic, @Nullable String key, Object value) {
+        if (!(value instanceof String) && !(value instanceof byte[])) {
+            throw new IllegalArgumentException("outbox only supports String or byte[] values, but got " + value.getClass().getName());
+        }
+        this.topic = topic;
+        this.key = key;
+        this.value = value;
+    }
+
+    public byte[] encode() {
+        byte[] bytes = value instanceof String ? ((String) value).getBytes(StandardCharsets.UTF_8) : (byte[]) value;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length + topic.length() + 16);
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeUTF(topic);
+            out.writeBoolean(key != null);
+            if (key != null) {
+                out.writeUTF(key);
+            }
+            out.writeByte(value instanceof String ? STRING_VALUE : BYTES_VALUE);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    public static OutboxMessage decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            String topic = in.readUTF();
+            String key = in.readBoolean() ? in.readUTF() : null;
+            byte type = in.readByte();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new OutboxMessage(topic, key, type == STRING_VALUE ? new String(bytes, StandardCharsets.UTF_8) : bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+}
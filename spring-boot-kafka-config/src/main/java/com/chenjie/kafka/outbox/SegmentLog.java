@@ -0,0 +1,404 @@
+package com.chenjie.kafka.outbox;
+
+import org.apache.kafka.common.utils.ByteBufferUnmapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 本地只追加日志，由多个固定大小的内存映射segment文件组成
+ * 每条记录格式为 [int length][int crc32][payload]，length为0表示segment剩余部分未写入
+ * 已消费的位置保存在checkpoint文件中，checkpoint之前的segment会被删除
+ * crc校验失败的记录复制到quarantine目录后跳过，以损坏记录的形式返回，提交位置照常越过它；
+ * 长度损坏时无法定位下一条，跳过所在segment的剩余部分
+ */
+public class SegmentLog implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentLog.class);
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String QUARANTINE_DIR = "quarantine";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private long activeId;
+    private FileChannel activeChannel;
+    private MappedByteBuffer active;
+    private Position committed;
+    private long backlog;
+    private long corruptCount;
+    private Position lastCorrupt = new Position(-1L, -1);
+    private boolean closed;
+
+    public SegmentLog(Path dir, int segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(file -> segments.put(segmentId(file), file));
+        }
+        this.committed = readCheckpoint();
+        if (segments.isEmpty()) {
+            segments.put(committed.segmentId, segmentPath(committed.segmentId));
+        }
+        segments.headMap(committed.segmentId).values().forEach(this::deleteQuietly);
+        segments.headMap(committed.segmentId).clear();
+        openActive(segments.lastKey());
+        this.backlog = countFrom(committed);
+        if (backlog > 0) {
+            logger.info("[SegmentLog] recovered {} unsent records from {}", backlog, dir);
+        }
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param payload 记录内容
+     */
+    public synchronized void append(byte[] payload) throws IOException {
+        ensureOpen();
+        int required = HEADER_BYTES + payload.length;
+        if (required > segmentBytes) {
+            throw new IllegalArgumentException("record of " + payload.length + " bytes exceeds segment size " + segmentBytes);
+        }
+        if (active.remaining() < required) {
+            roll();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        int start = active.position();
+        active.position(start + 4);
+        active.putInt((int) crc.getValue());
+        active.put(payload);
+        // 最后写长度，读到非0长度时内容已完整
+        active.putInt(start, payload.length);
+        backlog++;
+    }
+
+    /**
+     * 从指定位置起读取记录，只在锁内取segment文件和可读上限，文件读取和crc校验不阻塞append
+     *
+     * @param from       起始位置
+     * @param maxRecords 最多读取条数
+     * @return 记录及其后一条的位置，包括跳过的损坏记录
+     */
+    public List<Entry> read(Position from, int maxRecords) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Position position = from;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (entries.size() < maxRecords) {
+            ReadRange range = locate(position);
+            if (range == null) {
+                break;
+            }
+            position = range.position;
+            Path segment = range.segment;
+            boolean sealed = range.sealed;
+            int limit = range.limit;
+            if (position.offset + HEADER_BYTES > limit) {
+                if (!sealed) {
+                    break;
+                }
+                position = nextSegment(position);
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                while (entries.size() < maxRecords && position.offset + HEADER_BYTES <= limit) {
+                    header.clear();
+                    channel.read(header, position.offset);
+                    header.flip();
+                    int length = header.getInt();
+                    int checksum = header.getInt();
+                    if (length <= 0 || position.offset + HEADER_BYTES + length > limit) {
+                        if (length != 0 && reportCorrupt(position)) {
+                            logger.error("[SegmentLog] corrupted record length {} at {}:{}, skip rest of segment", length, segment, position.offset);
+                        }
+                        break;
+                    }
+                    ByteBuffer payload = ByteBuffer.allocate(length);
+                    channel.read(payload, position.offset + HEADER_BYTES);
+                    CRC32 crc = new CRC32();
+                    crc.update(payload.array());
+                    boolean corrupt = (int) crc.getValue() != checksum;
+                    if (corrupt && reportCorrupt(position)) {
+                        logger.error("[SegmentLog] corrupted record at {}:{}, moved to {}", segment, position.offset,
+                                quarantine(position, header, payload));
+                    }
+                    position = new Position(position.segmentId, position.offset + HEADER_BYTES + length);
+                    entries.add(new Entry(payload.array(), position, corrupt));
+                }
+            }
+            if (entries.size() >= maxRecords || !sealed) {
+                break;
+            }
+            position = nextSegment(position);
+        }
+        return entries;
+    }
+
+    /**
+     * 提交消费位置，删除已完全消费的segment
+     *
+     * @param position 下一条待消费记录的位置
+     * @param records  本次提交的记录条数
+     */
+    public synchronized void commit(Position position, int records) throws IOException {
+        Path tmp = dir.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.write(tmp, (position.segmentId + ":" + position.offset).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, dir.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committed = position;
+        backlog = Math.max(0L, backlog - records);
+        segments.headMap(position.segmentId).values().forEach(this::deleteQuietly);
+        segments.headMap(position.segmentId).clear();
+    }
+
+    /**
+     * 将当前segment刷到磁盘
+     */
+    public synchronized void flush() {
+        ensureOpen();
+        active.force();
+    }
+
+    public synchronized Position getCommitted() {
+        return committed;
+    }
+
+    /**
+     * @return 已写入但尚未提交的记录条数
+     */
+    public synchronized long getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * @return 发现的损坏记录数，同一位置只计一次
+     */
+    public synchronized long getCorruptCount() {
+        return corruptCount;
+    }
+
+    /**
+     * 刷盘并解除当前segment的内存映射，关闭后不能再追加或读取
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeActive();
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("segment log " + dir + " is closed");
+        }
+    }
+
+    /**
+     * 重复读取同一段日志(启动时统计、发送失败后重读)时每条损坏记录只报告一次
+     */
+    private synchronized boolean reportCorrupt(Position position) {
+        if (position.compareTo(lastCorrupt) <= 0) {
+            return false;
+        }
+        lastCorrupt = position;
+        corruptCount++;
+        return true;
+    }
+
+    /**
+     * 把损坏记录原样写到quarantine目录，写入失败只记录日志
+     */
+    private Path quarantine(Position position, ByteBuffer header, ByteBuffer payload) {
+        Path file = dir.resolve(QUARANTINE_DIR).resolve(String.format("%020d-%d", position.segmentId, position.offset));
+        try {
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.write(new ByteBuffer[]{header.duplicate().rewind(), payload.duplicate().rewind()});
+            }
+        } catch (IOException e) {
+            logger.warn("[SegmentLog] cannot quarantine corrupted record {}:{}", position.segmentId, position.offset, e);
+        }
+        return file;
+    }
+
+    /**
+     * position所在segment及其可读上限，segment已不存在时从下一个segment开头读，没有更多segment时为null
+     * 上限之前的内容已写完，锁外读取时不会被append修改
+     */
+    private synchronized ReadRange locate(Position position) {
+        ensureOpen();
+        Path segment = segments.get(position.segmentId);
+        if (segment == null) {
+            Long next = segments.higherKey(position.segmentId);
+            if (next == null) {
+                return null;
+            }
+            position = new Position(next, 0);
+            segment = segments.get(next);
+        }
+        boolean sealed = position.segmentId != activeId;
+        return new ReadRange(position, segment, sealed ? segmentBytes : active.position(), sealed);
+    }
+
+    private synchronized Position nextSegment(Position position) {
+        Long next = segments.higherKey(position.segmentId);
+        return next == null ? position : new Position(next, 0);
+    }
+
+    private void roll() throws IOException {
+        closeActive();
+        long nextId = activeId + 1;
+        segments.put(nextId, segmentPath(nextId));
+        openActive(nextId);
+    }
+
+    private void closeActive() throws IOException {
+        active.force();
+        // 不等GC回收，立即释放映射，避免segment删除后仍占用磁盘和地址空间
+        ByteBufferUnmapper.unmap(segmentPath(activeId).toString(), active);
+        active = null;
+        activeChannel.close();
+    }
+
+    private void openActive(long id) throws IOException {
+        this.activeId = id;
+        this.activeChannel = FileChannel.open(segmentPath(id), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        // 找到写入位置
+        int position = 0;
+        while (position + HEADER_BYTES <= segmentBytes) {
+            int length = active.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > segmentBytes) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+        }
+        active.position(position);
+    }
+
+    private long countFrom(Position from) throws IOException {
+        long count = 0;
+        Position position = from;
+        List<Entry> entries;
+        while (!(entries = read(position, 1024)).isEmpty()) {
+            count += entries.size();
+            position = entries.get(entries.size() - 1).getNext();
+        }
+        return count;
+    }
+
+    private Position readCheckpoint() throws IOException {
+        Path checkpoint = dir.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(checkpoint)) {
+            return new Position(segments.isEmpty() ? 0L : segments.firstKey(), 0);
+        }
+        String[] parts = new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8).trim().split(":");
+        return new Position(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    private Path segmentPath(long id) {
+        return dir.resolve(String.format("%020d", id) + SEGMENT_SUFFIX);
+    }
+
+    private static long segmentId(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("[SegmentLog] cannot delete segment {}", file, e);
+        }
+    }
+
+    /**
+     * 日志中的位置
+     */
+    public static final class Position implements Comparable<Position> {
+        private final long segmentId;
+        private final int offset;
+
+        public Position(long segmentId, int offset) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+        }
+
+        public long getSegmentId() {
+            return segmentId;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        @Override
+        public int compareTo(Position other) {
+            int result = Long.compare(segmentId, other.segmentId);
+            return result != 0 ? result : Integer.compare(offset, other.offset);
+        }
+    }
+
+    private static final class ReadRange {
+        private final Position position;
+        private final Path segment;
+        private final int limit;
+        private final boolean sealed;
+
+        private ReadRange(Position position, Path segment, int limit, boolean sealed) {
+            this.position = position;
+            this.segment = segment;
+            this.limit = limit;
+            this.sealed = sealed;
+        }
+    }
+
+    /**
+     * 读取到的一条记录
+     */
+    public static final class Entry {
+        private final byte[] payload;
+        private final Position next;
+        private final boolean corrupt;
+
+        private Entry(byte[] payload, Position next, boolean corrupt) {
+            this.payload = payload;
+            this.next = next;
+            this.corrupt = corrupt;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        public Position getNext() {
+            return next;
+        }
+
+        /**
+         * @return crc校验失败，payload不可用，只用于越过这条记录提交位置
+         */
+        public boolean isCorrupt() {
+            return corrupt;
+        }
+    }
+}
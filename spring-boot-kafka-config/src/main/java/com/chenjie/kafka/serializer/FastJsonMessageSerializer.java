@@ -0,0 +1,14 @@
+package com.chenjie.kafka.serializer;
+
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * fastjson序列化为json字符串，默认的序列化器
+ */
+public class FastJsonMessageSerializer implements MessageSerializer {
+
+    @Override
+    public Object serialize(Object value) {
+        return JSONObject.toJSONString(value);
+    }
+}
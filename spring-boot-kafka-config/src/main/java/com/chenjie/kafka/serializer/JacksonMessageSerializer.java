@@ -0,0 +1,24 @@
+package com.chenjie.kafka.serializer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * jackson序列化为json字节，需要producer使用ByteArraySerializer
+ */
+public class JacksonMessageSerializer implements MessageSerializer {
+    private final ObjectMapper objectMapper;
+
+    public JacksonMessageSerializer(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Object serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("cannot serialize message of type " + value.getClass().getName(), e);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.chenjie.kafka.serializer;
+
+import com.alibaba.fastjson2.JSONB;
+
+/**
+ * fastjson2 JSONB二进制序列化，producer未配置ByteArraySerializer时由KafkaService的raw producer发送
+ */
+public class JsonbMessageSerializer implements MessageSerializer {
+
+    @Override
+    public Object serialize(Object value) {
+        return JSONB.toBytes(value);
+    }
+}
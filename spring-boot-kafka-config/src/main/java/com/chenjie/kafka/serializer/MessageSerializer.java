@@ -0,0 +1,16 @@
+package com.chenjie.kafka.serializer;
+
+/**
+ * SendMessage切面使用的消息序列化器
+ * 返回String时需要producer配置StringSerializer；返回byte[]时producer的value-serializer不支持byte[]会改用单独的raw producer发送
+ */
+public interface MessageSerializer {
+
+    /**
+     * 序列化方法返回值
+     *
+     * @param value 方法返回值，不为null
+     * @return 发送到kafka的消息体
+     */
+    Object serialize(Object value);
+}
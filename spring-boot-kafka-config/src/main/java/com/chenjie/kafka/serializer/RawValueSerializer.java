@@ -0,0 +1,122 @@
+package com.chenjie.kafka.serializer;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.ByteBufferSerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.lang.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * 已序列化好的消息体：byte[]交给ByteArraySerializer，ByteBuffer交给ByteBufferSerializer，不再经过json和String编码
+ * ByteBuffer发送的是[0, limit)之间的字节，写完后需要flip()
+ * 指定delegate时，其它类型交给delegate序列化，用作key-serializer时普通key和已序列化的key(重发落盘消息)都能发送
+ */
+public class RawValueSerializer implements Serializer<Object> {
+    private final ByteArraySerializer bytes = new ByteArraySerializer();
+    private final ByteBufferSerializer buffers = new ByteBufferSerializer();
+    private final Serializer<Object> delegate;
+
+    public RawValueSerializer() {
+        this(null);
+    }
+
+    public RawValueSerializer(@Nullable Serializer<Object> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        if (data instanceof ByteBuffer) {
+            return buffers.serialize(topic, (ByteBuffer) data);
+        }
+        if (Objects.nonNull(delegate) && Objects.nonNull(data) && !(data instanceof byte[])) {
+            return delegate.serialize(topic, data);
+        }
+        return bytes.serialize(topic, (byte[]) data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        if (Objects.nonNull(delegate) && Objects.nonNull(data) && !isRaw(data)) {
+            return delegate.serialize(topic, headers, data);
+        }
+        return serialize(topic, data);
+    }
+
+    @Override
+    public void close() {
+        if (Objects.nonNull(delegate)) {
+            delegate.close();
+        }
+    }
+
+    /**
+     * @param value 消息体
+     * @return 是否是byte[]或ByteBuffer
+     */
+    public static boolean isRaw(Object value) {
+        return value instanceof byte[] || value instanceof ByteBuffer;
+    }
+
+    /**
+     * producer配置的value-serializer能否直接发送该消息体，可以时不需要单独的producer
+     *
+     * @param factory producer工厂
+     * @param value   byte[]或ByteBuffer
+     * @return
+     */
+    public static boolean supports(ProducerFactory<?, ?> factory, Object value) {
+        return supports(factory, value, false);
+    }
+
+    /**
+     * @param isKey true时检查key-serializer
+     */
+    public static boolean supports(ProducerFactory<?, ?> factory, Object value, boolean isKey) {
+        Object configured = factory.getConfigurationProperties()
+                .get(isKey ? ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG : ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG);
+        if (Objects.isNull(configured)) {
+            return false;
+        }
+        String name = configured instanceof Class ? ((Class<?>) configured).getName() : configured.toString();
+        if (RawValueSerializer.class.getName().equals(name)) {
+            return true;
+        }
+        return value instanceof byte[] ? ByteArraySerializer.class.getName().equals(name)
+                : ByteBufferSerializer.class.getName().equals(name);
+    }
+
+    /**
+     * producer工厂实际使用的序列化器：优先取工厂中的实例，没有时按配置的类名创建
+     *
+     * @param factory producer工厂
+     * @param isKey   true时取key-serializer
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static Serializer<Object> configured(ProducerFactory<?, ?> factory, boolean isKey) {
+        Supplier<? extends Serializer<?>> supplier = isKey ? factory.getKeySerializerSupplier() : factory.getValueSerializerSupplier();
+        Serializer<?> serializer = Objects.isNull(supplier) ? null : supplier.get();
+        if (Objects.nonNull(serializer)) {
+            return (Serializer<Object>) serializer;
+        }
+        Object configured = factory.getConfigurationProperties()
+                .get(isKey ? ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG : ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG);
+        try {
+            serializer = configured instanceof Class
+                    ? Utils.newInstance((Class<?>) configured, Serializer.class)
+                    : Utils.newInstance(String.valueOf(configured), Serializer.class);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("cannot create serializer " + configured, e);
+        }
+        serializer.configure(factory.getConfigurationProperties(), isKey);
+        return (Serializer<Object>) serializer;
+    }
+}
@@ -0,0 +1,28 @@
+package com.chenjie.kafka.service;
+
+/**
+ * bothSendAsync的双活写入模式
+ */
+public enum ActiveActiveWriteMode {
+    /**
+     * 两个集群都确认后完成，任一失败则失败
+     */
+    BOTH,
+    /**
+     * 任一集群确认即完成，两个都失败才失败
+     */
+    FIRST,
+    /**
+     * 主集群确认即完成，双活集群异步发送，失败只记录日志
+     */
+    SECONDARY_ASYNC;
+
+    public static ActiveActiveWriteMode of(String value) {
+        for (ActiveActiveWriteMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value) || mode.name().replace('_', '-').equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        return BOTH;
+    }
+}
@@ -0,0 +1,62 @@
+package com.chenjie.kafka.service;
+
+import org.springframework.kafka.support.SendResult;
+import org.springframework.lang.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 批量发送的汇总结果，下标与传入的消息顺序一致
+ */
+public class BatchSendResult<K, V> {
+    private final SendResult<K, V>[] results;
+    private final Throwable[] errors;
+    private final int failedCount;
+
+    BatchSendResult(SendResult<K, V>[] results, Throwable[] errors) {
+        this.results = results;
+        this.errors = errors;
+        this.failedCount = (int) Arrays.stream(errors).filter(Objects::nonNull).count();
+    }
+
+    public int size() {
+        return results.length;
+    }
+
+    public int getSuccessCount() {
+        return results.length - failedCount;
+    }
+
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    public boolean isAllSucceeded() {
+        return failedCount == 0;
+    }
+
+    /**
+     * @param index 消息下标
+     * @return 发送成功时的结果，失败时为null
+     */
+    @Nullable
+    public SendResult<K, V> getResult(int index) {
+        return results[index];
+    }
+
+    /**
+     * @param index 消息下标
+     * @return 发送失败时的异常，成功时为null
+     */
+    @Nullable
+    public Throwable getError(int index) {
+        return errors[index];
+    }
+
+    public List<SendResult<K, V>> getResults() {
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+}
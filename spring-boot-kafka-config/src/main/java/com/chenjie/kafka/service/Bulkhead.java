@@ -0,0 +1,245 @@
+package com.chenjie.kafka.service;
+
+import com.chenjie.kafka.autoconfigure.ProducerProfile;
+import com.chenjie.kafka.utils.TopicNameResolver;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 发送隔离舱：一组命名空间或topic独占发送窗口、workers线程池，以及可选的独立producer
+ * 某个租户突发流量时只会占满自己的窗口和队列，不影响其它命名空间的发送延迟
+ */
+public class Bulkhead<K, V> {
+    private final String name;
+    private final Set<String> namespaces;
+    private final List<String> topicPrefixes;
+    private final Set<String> topics;
+    private final SendWindow<K, V> window;
+    private final ThreadPoolExecutor workers;
+    private final KafkaTemplate<K, V> kafkaTemplate;
+    private final KafkaTemplate<K, V> aaKafkaTemplate;
+
+    Bulkhead(String name, Properties properties, @Nullable SendWindow<K, V> window, @Nullable ThreadPoolExecutor workers,
+             @Nullable KafkaTemplate<K, V> kafkaTemplate, @Nullable KafkaTemplate<K, V> aaKafkaTemplate) {
+        this.name = name;
+        this.namespaces = Collections.unmodifiableSet(new HashSet<>(properties.getNamespaces()));
+        List<String> prefixes = new ArrayList<>();
+        properties.getNamespaces().forEach(namespace -> prefixes.add(namespace + TopicNameResolver.DEFAULT_SEPARATOR));
+        this.topicPrefixes = Collections.unmodifiableList(prefixes);
+        this.topics = Collections.unmodifiableSet(new HashSet<>(properties.getTopics()));
+        this.window = window;
+        this.workers = workers;
+        this.kafkaTemplate = kafkaTemplate;
+        this.aaKafkaTemplate = aaKafkaTemplate;
+    }
+
+    /**
+     * 按TopicNameResolver记录的命名空间精确匹配，命名空间a不会匹配命名空间a_b的topic；
+     * 没有记录时(不是按命名空间拼接的topic或超过缓存上限)按前缀匹配
+     *
+     * @param topic 已加前缀的topic
+     * @return topic是否属于该隔离舱
+     */
+    public boolean matches(String topic) {
+        if (topics.contains(topic)) {
+            return true;
+        }
+        String namespace = TopicNameResolver.namespaceOf(topic);
+        if (Objects.nonNull(namespace)) {
+            return namespaces.contains(namespace);
+        }
+        for (String prefix : topicPrefixes) {
+            if (topic.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 用于独立producer的KafkaTemplate，复制共享producer的配置，修改client.id；指定了profile时profile的参数覆盖共享配置
+     */
+    @Nullable
+    static <K, V> KafkaTemplate<K, V> dedicatedTemplate(String name, @Nullable KafkaTemplate<K, V> shared,
+                                                       @Nullable ProducerProfile profile) {
+        if (Objects.isNull(shared)) {
+            return null;
+        }
+        ProducerFactory<K, V> factory = shared.getProducerFactory();
+        Object clientId = factory.getConfigurationProperties().get(ProducerConfig.CLIENT_ID_CONFIG);
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put(ProducerConfig.CLIENT_ID_CONFIG, (Objects.isNull(clientId) ? "producer" : clientId) + "-" + name);
+        if (Objects.nonNull(profile)) {
+            overrides.putAll(profile.getSettings());
+        }
+        KafkaTemplate<K, V> template = new KafkaTemplate<>(factory.copyWithConfigurationOverride(overrides));
+        template.setDefaultTopic(shared.getDefaultTopic());
+        return template;
+    }
+
+    /**
+     * 关闭独立producer
+     */
+    void close() throws Exception {
+        for (KafkaTemplate<K, V> template : Arrays.asList(kafkaTemplate, aaKafkaTemplate)) {
+            if (Objects.nonNull(template) && template.getProducerFactory() instanceof DisposableBean) {
+                ((DisposableBean) template.getProducerFactory()).destroy();
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Nullable
+    public SendWindow<K, V> getWindow() {
+        return window;
+    }
+
+    @Nullable
+    public ThreadPoolExecutor getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return 独立producer的KafkaTemplate，未开启时为null
+     */
+    @Nullable
+    public KafkaTemplate<K, V> getKafkaTemplate() {
+        return kafkaTemplate;
+    }
+
+    @Nullable
+    public KafkaTemplate<K, V> getAaKafkaTemplate() {
+        return aaKafkaTemplate;
+    }
+
+    /**
+     * spring.kafka.producer.bulkheads.&lt;name&gt;.*
+     */
+    public static class Properties {
+        /**
+         * 属于该隔离舱的命名空间
+         */
+        private List<String> namespaces = new ArrayList<>();
+        /**
+         * 属于该隔离舱的topic(已加前缀的完整topic名)
+         */
+        private List<String> topics = new ArrayList<>();
+        /**
+         * 在途消息条数上限，为空时沿用spring.kafka.producer.window.max-records
+         */
+        private Integer maxRecords;
+        /**
+         * 在途消息字节数上限，为空时沿用spring.kafka.producer.window.max-bytes
+         */
+        private Long maxBytes;
+        /**
+         * 窗口满时的处理策略，为空时沿用spring.kafka.producer.window.overflow-policy
+         */
+        private String overflowPolicy;
+        /**
+         * 独立workers线程数，为空时使用共享workers
+         */
+        private Integer threads;
+        /**
+         * 独立workers队列长度
+         */
+        private int queueCapacity = 1000;
+        /**
+         * 是否使用独立的producer实例(独立的buffer.memory和网络连接)
+         */
+        private boolean dedicatedProducer;
+        /**
+         * 独立producer使用的预设(low-latency、high-throughput、large-payload)，只在dedicated-producer为true时生效
+         */
+        private String profile;
+
+        public List<String> getNamespaces() {
+            return namespaces;
+        }
+
+        public void setNamespaces(List<String> namespaces) {
+            this.namespaces = namespaces;
+        }
+
+        public List<String> getTopics() {
+            return topics;
+        }
+
+        public void setTopics(List<String> topics) {
+            this.topics = topics;
+        }
+
+        public Integer getMaxRecords() {
+            return maxRecords;
+        }
+
+        public void setMaxRecords(Integer maxRecords) {
+            this.maxRecords = maxRecords;
+        }
+
+        public Long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(Long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        public String getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setOverflowPolicy(String overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        public Integer getThreads() {
+            return threads;
+        }
+
+        public void setThreads(Integer threads) {
+            this.threads = threads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public boolean isDedicatedProducer() {
+            return dedicatedProducer;
+        }
+
+        public void setDedicatedProducer(boolean dedicatedProducer) {
+            this.dedicatedProducer = dedicatedProducer;
+        }
+
+        public String getProfile() {
+            return profile;
+        }
+
+        public void setProfile(String profile) {
+            this.profile = profile;
+        }
+    }
+}
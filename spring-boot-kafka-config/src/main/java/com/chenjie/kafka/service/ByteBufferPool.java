@@ -0,0 +1,79 @@
+package com.chenjie.kafka.service;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定大小的ByteBuffer池，供KafkaService.sendPooled在缓冲区中直接构造消息体，避免每条消息分配新的数组
+ * 超过bufferSize的消息临时分配，不归还到池中；池满时归还的缓冲区直接丢弃
+ */
+public class ByteBufferPool {
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> free;
+    private final LongAdder allocated = new LongAdder();
+
+    public ByteBufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0 || maxPooled <= 0) {
+            throw new IllegalArgumentException("bufferSize and maxPooled must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * @return 已clear的缓冲区，容量为bufferSize
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            allocated.increment();
+            return ByteBuffer.allocate(bufferSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * @param minCapacity 需要的最小容量
+     * @return 容量不小于minCapacity的缓冲区
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        if (minCapacity > bufferSize) {
+            allocated.increment();
+            return ByteBuffer.allocate(minCapacity);
+        }
+        return acquire();
+    }
+
+    /**
+     * 归还缓冲区，归还后不能再读写
+     *
+     * @param buffer acquire得到的缓冲区
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize || buffer.isReadOnly()) {
+            return;
+        }
+        buffer.clear();
+        free.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return 池中空闲的缓冲区个数
+     */
+    public int getPooled() {
+        return free.size();
+    }
+
+    /**
+     * @return 池中没有空闲缓冲区时新分配的次数
+     */
+    public long getAllocated() {
+        return allocated.sum();
+    }
+}
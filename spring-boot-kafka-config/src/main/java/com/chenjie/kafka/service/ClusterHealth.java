@@ -0,0 +1,193 @@
+package com.chenjie.kafka.service;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 单个kafka集群的健康状态，包含按时间窗口统计错误率的熔断器和最近发送耗时的p99
+ * OPEN状态持续openDuration后进入HALF_OPEN(按时间推进，不依赖是否有消息路由过来)，同一时间只放行一条探测消息，成功则恢复CLOSED
+ */
+public class ClusterHealth {
+    private static final int LATENCY_SAMPLES = 256;
+    private static final long P99_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    public enum Permit {
+        /**
+         * 不允许发送
+         */
+        DENIED,
+        /**
+         * 正常发送
+         */
+        NORMAL,
+        /**
+         * HALF_OPEN状态下的探测发送
+         */
+        PROBE
+    }
+
+    private final String cluster;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long windowNanos;
+    private final long openNanos;
+    private final long slowCallNanos;
+    private final LongSupplier clock;
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private final AtomicLong latencyCursor = new AtomicLong();
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+    private volatile long p99Nanos;
+    private volatile long p99ComputedAt;
+    private long windowStart;
+    private int calls;
+    private int failures;
+
+    public ClusterHealth(String cluster, double failureRateThreshold, int minimumCalls, long windowMs,
+                         long openDurationMs, long slowCallThresholdMs) {
+        this(cluster, failureRateThreshold, minimumCalls, windowMs, openDurationMs, slowCallThresholdMs, System::nanoTime);
+    }
+
+    /**
+     * @param clock 纳秒时钟，测试中用来推进时间
+     */
+    ClusterHealth(String cluster, double failureRateThreshold, int minimumCalls, long windowMs,
+                  long openDurationMs, long slowCallThresholdMs, LongSupplier clock) {
+        this.clock = clock;
+        this.windowStart = clock.getAsLong();
+        this.cluster = cluster;
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallThresholdMs);
+    }
+
+    /**
+     * 申请向该集群发送一条消息
+     *
+     * @return 是否允许以及是否为探测
+     */
+    public Permit acquire() {
+        State current = getState();
+        if (current == State.CLOSED) {
+            return Permit.NORMAL;
+        }
+        if (current == State.OPEN) {
+            return Permit.DENIED;
+        }
+        return probing.compareAndSet(false, true) ? Permit.PROBE : Permit.DENIED;
+    }
+
+    /**
+     * 发送没有真正到达集群(如被背压拒绝)时归还许可，不计入统计；探测许可归还后下一条消息可以重新探测
+     *
+     * @param permit 发送时申请到的许可
+     */
+    public void release(Permit permit) {
+        if (permit == Permit.PROBE) {
+            probing.set(false);
+        }
+    }
+
+    /**
+     * 记录一次发送结果
+     *
+     * @param elapsedNanos 耗时
+     * @param success      是否成功
+     * @param permit       发送时申请到的许可
+     */
+    public void record(long elapsedNanos, boolean success, Permit permit) {
+        latencies[(int) (latencyCursor.getAndIncrement() % LATENCY_SAMPLES)] = elapsedNanos;
+        if (permit == Permit.PROBE) {
+            synchronized (this) {
+                if (success) {
+                    state = State.CLOSED;
+                    resetWindow(clock.getAsLong());
+                } else {
+                    trip();
+                }
+            }
+            probing.set(false);
+            return;
+        }
+        synchronized (this) {
+            long now = clock.getAsLong();
+            if (now - windowStart >= windowNanos) {
+                resetWindow(now);
+            }
+            calls++;
+            if (!success) {
+                failures++;
+            }
+            if (state == State.CLOSED && calls >= minimumCalls && failures >= calls * failureRateThreshold) {
+                trip();
+            }
+        }
+    }
+
+    private void trip() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+    }
+
+    private void resetWindow(long now) {
+        windowStart = now;
+        calls = 0;
+        failures = 0;
+    }
+
+    /**
+     * @return 最近LATENCY_SAMPLES次发送耗时的p99，最多每秒重新计算一次
+     */
+    public long getP99Nanos() {
+        long now = clock.getAsLong();
+        if (now - p99ComputedAt >= P99_REFRESH_NANOS) {
+            int count = (int) Math.min(latencyCursor.get(), LATENCY_SAMPLES);
+            if (count > 0) {
+                long[] samples = Arrays.copyOf(latencies, count);
+                Arrays.sort(samples);
+                p99Nanos = samples[Math.min(count - 1, (int) Math.ceil(count * 0.99) - 1)];
+            }
+            p99ComputedAt = now;
+        }
+        return p99Nanos;
+    }
+
+    /**
+     * @return p99耗时是否超过慢调用阈值
+     */
+    public boolean isSlow() {
+        return getP99Nanos() > slowCallNanos;
+    }
+
+    public boolean isClosed() {
+        return getState() == State.CLOSED;
+    }
+
+    /**
+     * @return 当前状态，OPEN持续openDuration后在这里转为HALF_OPEN
+     */
+    public State getState() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openNanos) {
+            synchronized (this) {
+                if (state == State.OPEN && clock.getAsLong() - openedAt >= openNanos) {
+                    state = State.HALF_OPEN;
+                }
+            }
+        }
+        return state;
+    }
+
+    public String getCluster() {
+        return cluster;
+    }
+}
@@ -0,0 +1,90 @@
+package com.chenjie.kafka.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 主集群与双活集群之间的路由
+ * 默认发往主集群；主集群熔断时切到双活集群；主集群p99超过慢调用阈值而双活集群正常时，按p99的倒数加权分流
+ * 双活集群处于HALF_OPEN时，即使主集群正常也会把一条消息作为探测发往双活集群，使其能够恢复CLOSED
+ */
+public class ClusterRouter {
+    private final ClusterHealth primary;
+    private final ClusterHealth aa;
+    private final boolean failoverRetry;
+
+    public ClusterRouter(ClusterHealth primary, ClusterHealth aa, boolean failoverRetry) {
+        this.primary = primary;
+        this.aa = aa;
+        this.failoverRetry = failoverRetry;
+    }
+
+    /**
+     * 为一条消息选择集群
+     *
+     * @return 选中的集群及许可
+     */
+    public Route choose() {
+        ClusterHealth.Permit permit = primary.acquire();
+        if (permit == ClusterHealth.Permit.PROBE) {
+            return new Route(primary, permit);
+        }
+        if (permit == ClusterHealth.Permit.NORMAL) {
+            if (aa.getState() == ClusterHealth.State.HALF_OPEN && aa.acquire() == ClusterHealth.Permit.PROBE) {
+                return new Route(aa, ClusterHealth.Permit.PROBE);
+            }
+            if (primary.isSlow() && aa.isClosed() && !aa.isSlow() && preferAa()) {
+                return new Route(aa, ClusterHealth.Permit.NORMAL);
+            }
+            return new Route(primary, permit);
+        }
+        ClusterHealth.Permit aaPermit = aa.acquire();
+        if (aaPermit != ClusterHealth.Permit.DENIED) {
+            return new Route(aa, aaPermit);
+        }
+        // 两个集群都不可用时仍然发往主集群，由调用方感知失败
+        return new Route(primary, ClusterHealth.Permit.NORMAL);
+    }
+
+    private boolean preferAa() {
+        double primaryWeight = 1.0 / Math.max(1L, primary.getP99Nanos());
+        double aaWeight = 1.0 / Math.max(1L, aa.getP99Nanos());
+        return ThreadLocalRandom.current().nextDouble() * (primaryWeight + aaWeight) >= primaryWeight;
+    }
+
+    /**
+     * 发送失败后可以改发的另一个集群，不可改发时为null
+     */
+    public ClusterHealth failoverOf(ClusterHealth failed) {
+        if (!failoverRetry) {
+            return null;
+        }
+        ClusterHealth other = failed == primary ? aa : primary;
+        return other.isClosed() ? other : null;
+    }
+
+    public ClusterHealth getPrimary() {
+        return primary;
+    }
+
+    public ClusterHealth getAa() {
+        return aa;
+    }
+
+    public static final class Route {
+        private final ClusterHealth health;
+        private final ClusterHealth.Permit permit;
+
+        private Route(ClusterHealth health, ClusterHealth.Permit permit) {
+            this.health = health;
+            this.permit = permit;
+        }
+
+        public ClusterHealth getHealth() {
+            return health;
+        }
+
+        public ClusterHealth.Permit getPermit() {
+            return permit;
+        }
+    }
+}
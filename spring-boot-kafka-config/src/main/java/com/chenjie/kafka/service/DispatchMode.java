@@ -0,0 +1,19 @@
+package com.chenjie.kafka.service;
+
+/**
+ * sendAsync的分发模式
+ */
+public enum DispatchMode {
+    /**
+     * 直接在调用线程上调用KafkaTemplate.send，KafkaTemplate本身即为异步
+     */
+    DIRECT,
+    /**
+     * 先提交到workers线程池，再由池中线程调用KafkaTemplate.send
+     */
+    EXECUTOR;
+
+    public static DispatchMode of(String value) {
+        return EXECUTOR.name().equalsIgnoreCase(value) ? EXECUTOR : DIRECT;
+    }
+}
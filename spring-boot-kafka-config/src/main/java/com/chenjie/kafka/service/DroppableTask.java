@@ -0,0 +1,29 @@
+package com.chenjie.kafka.service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+/**
+ * 放入workers队列的发送任务，DROP_OLDEST策略把它从队列中取出丢弃时，用onDrop的返回值结束任务
+ * onDrop负责让调用方的future以背压异常结束，发送窗口和在途计数随之释放；只取消任务时调用方的future永远不会完成
+ */
+final class DroppableTask<T> extends FutureTask<T> {
+    private final Function<Throwable, T> onDrop;
+
+    DroppableTask(Callable<T> callable, Function<Throwable, T> onDrop) {
+        super(callable);
+        this.onDrop = onDrop;
+    }
+
+    /**
+     * 任务已从队列中取出，不会再被执行
+     *
+     * @param cause 丢弃原因
+     */
+    void drop(Throwable cause) {
+        if (!isDone()) {
+            set(onDrop.apply(cause));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.chenjie.kafka.service;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * KafkaService发送过程回调，用于采集指标；默认实现什么都不做
+ */
+public interface KafkaSendObserver {
+    String CLUSTER_PRIMARY = "primary";
+    String CLUSTER_AA = "aa";
+
+    KafkaSendObserver NOOP = new KafkaSendObserver() {
+    };
+
+    /**
+     * 单条消息开始发送(调用sendAsync)
+     *
+     * @param cluster primary或aa
+     * @param topic   已加前缀的topic
+     */
+    default void onSendStart(String cluster, String topic) {
+    }
+
+    /**
+     * 单条消息发送完成(broker确认或失败)
+     *
+     * @param cluster     primary或aa
+     * @param topic       已加前缀的topic
+     * @param queuedNanos 从调用sendAsync到交给KafkaTemplate的耗时(发送窗口及workers排队)
+     * @param ackNanos    从交给KafkaTemplate到broker确认的耗时，未交给KafkaTemplate就失败时为-1
+     * @param ex          失败时的异常
+     */
+    default void onSendComplete(String cluster, String topic, long queuedNanos, long ackNanos, @Nullable Throwable ex) {
+    }
+}
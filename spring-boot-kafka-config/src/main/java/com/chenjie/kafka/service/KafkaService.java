@@ -1,67 +1,171 @@
 package com.chenjie.kafka.service;
 
-import io.fabric8.kubernetes.client.KubernetesClient;
+import com.chenjie.kafka.autoconfigure.ProducerProfile;
+import com.chenjie.kafka.exception.KafkaBackpressureException;
+import com.chenjie.kafka.serializer.RawValueSerializer;
+import com.chenjie.kafka.utils.MessageIdGenerator;
+import com.chenjie.kafka.utils.NamespaceResolver;
+import com.chenjie.kafka.utils.ThreadFactories;
+import com.chenjie.kafka.utils.TopicNameResolver;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Serializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.core.env.Environment;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.lang.Nullable;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import static com.chenjie.kafka.constants.KafkaPropertyConstants.*;
 
 
 /**
  * kafka使用封装
+ * 容器关闭时先停止接收新消息，再在spring.kafka.producer.shutdown.drain-timeout-ms内发完已接收的消息
  */
 @SuppressWarnings({"unchecked"})
-public final class KafkaService<K, V> {
+public final class KafkaService<K, V> implements SmartLifecycle {
     private static final Logger logger = LoggerFactory.getLogger(KafkaService.class);
-    private static final String DEFAULT_SEPARATOR = "_";
     private KafkaTemplate<K, V> kafkaTemplate;
     private KafkaTemplate<K, V> aaKafkaTemplate;
     private String namespace;
     private Environment env;
-    private KubernetesClient kubernetesClient;
     private ExecutorService workers;
+    private DispatchMode dispatchMode;
+    private SendWindow<K, V> sendWindow;
+    private SpillStore spillStore;
+    private ActiveActiveWriteMode writeMode;
+    private volatile KafkaSendObserver sendObserver = KafkaSendObserver.NOOP;
+    private ClusterRouter clusterRouter;
+    private MessageIdGenerator messageIdGenerator;
+    private List<Bulkhead<K, V>> bulkheads = Collections.emptyList();
+    private final ConcurrentMap<String, Optional<Bulkhead<K, V>>> topicBulkheads = new ConcurrentHashMap<>();
+    private final LongAdder inFlight = new LongAdder();
+    private final ConcurrentMap<KafkaTemplate<K, V>, KafkaTemplate<K, V>> rawTemplates = new ConcurrentHashMap<>();
+    private final ByteBufferPool bufferPool;
+    private volatile boolean accepting = true;
+    private volatile boolean running;
+    private volatile boolean drained;
+    private final Object drainMonitor = new Object();
 
-    public KafkaService(KafkaTemplate<K, V> kafkaTemplate, Environment env, KubernetesClient client) {
-        this.kafkaTemplate = kafkaTemplate;
-        this.env = env;
-        this.kubernetesClient = client;
-        String namespace = env.getProperty(SPRING_KAFKA_PRODUCER_NAMESPACE_KEY);
-        if (Objects.isNull(namespace)) {
-            setDefaultNamespace();
-        } else {
-            setNamespace(namespace);
-        }
-        logger.info("[ProducerConfig] Specify namespace as {}", this.namespace.equals(DEFAULT_SPRING_KAFKA_NAMESPACE) ? "EMPTY STRING" : this.namespace);
-        int poolSize = Integer.parseInt(env.getProperty(SPRING_KAFKA_PRODUCER_THREADS_SIZE, "10"));
-        this.workers = Executors.newFixedThreadPool(poolSize);
+    public KafkaService(KafkaTemplate<K, V> kafkaTemplate, Environment env) {
+        this(kafkaTemplate, null, env);
     }
 
-    public KafkaService(KafkaTemplate<K, V> kafkaTemplate, KafkaTemplate<K, V> aaKafkaTemplate, Environment env, KubernetesClient client) {
+    public KafkaService(KafkaTemplate<K, V> kafkaTemplate, KafkaTemplate<K, V> aaKafkaTemplate, Environment env) {
         this.kafkaTemplate = kafkaTemplate;
         this.aaKafkaTemplate = aaKafkaTemplate;
         this.env = env;
-        this.kubernetesClient = client;
-        String namespace = env.getProperty(SPRING_KAFKA_PRODUCER_NAMESPACE_KEY);
-        if (Objects.isNull(namespace)) {
-            setDefaultNamespace();
-        } else {
-            setNamespace(namespace);
-        }
+        setNamespace(NamespaceResolver.producerNamespace(env));
         logger.info("[ProducerConfig] Specify namespace as {}", this.namespace.equals(DEFAULT_SPRING_KAFKA_NAMESPACE) ? "EMPTY STRING" : this.namespace);
-        int poolSize = Integer.parseInt(env.getProperty(SPRING_KAFKA_PRODUCER_THREADS_SIZE, "10"));
-        this.workers = Executors.newFixedThreadPool(poolSize);
+        this.dispatchMode = DispatchMode.of(env.getProperty(SPRING_KAFKA_PRODUCER_DISPATCH_MODE));
+        this.writeMode = ActiveActiveWriteMode.of(env.getProperty(SPRING_KAFKA_PRODUCER_ACTIVE_ACTIVE_WRITE_MODE));
+        OverflowPolicy policy = OverflowPolicy.of(env.getProperty(SPRING_KAFKA_PRODUCER_WINDOW_OVERFLOW_POLICY));
+        long blockTimeoutMs = Long.parseLong(env.getProperty(SPRING_KAFKA_PRODUCER_WINDOW_BLOCK_TIMEOUT_MS, "10000"));
+        // 虚拟线程阻塞(如buffer.memory耗尽)时不占用平台线程，默认线程数放大
+        int poolSize = Integer.parseInt(env.getProperty(SPRING_KAFKA_PRODUCER_THREADS_SIZE, ThreadFactories.isVirtual(env) ? "256" : "10"));
+        int queueCapacity = Integer.parseInt(env.getProperty(SPRING_KAFKA_PRODUCER_THREADS_QUEUE_CAPACITY, "10000"));
+        this.workers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), ThreadFactories.create(env, "kafka-producer-"),
+                rejectedHandler(policy, blockTimeoutMs));
+        if (Boolean.parseBoolean(env.getProperty(SPRING_KAFKA_PRODUCER_WINDOW_ENABLED, Boolean.TRUE + ""))) {
+            SpillStore spillStore = policy == OverflowPolicy.SPILL ? newSpillStore() : null;
+            this.sendWindow = new SendWindow<>(
+                    Integer.parseInt(env.getProperty(SPRING_KAFKA_PRODUCER_WINDOW_MAX_RECORDS, "10000")),
+                    Long.parseLong(env.getProperty(SPRING_KAFKA_PRODUCER_WINDOW_MAX_BYTES, "33554432")),
+                    policy, blockTimeoutMs,
+                    Integer.parseInt(env.getProperty(SPRING_KAFKA_PRODUCER_WINDOW_PENDING_CAPACITY, "10000")),
+                    spillStore,
+                    Long.parseLong(env.getProperty(SPRING_KAFKA_PRODUCER_WINDOW_OBJECT_BYTES, "1024")), null);
+            this.spillStore = spillStore;
+            logger.info("[ProducerConfig] Send window enabled, overflow policy {}", policy);
+        }
+        initBulkheads(policy, blockTimeoutMs);
+        this.bufferPool = new ByteBufferPool(
+                Integer.parseInt(env.getProperty(SPRING_KAFKA_PRODUCER_BUFFER_POOL_BUFFER_SIZE, "16384")),
+                Integer.parseInt(env.getProperty(SPRING_KAFKA_PRODUCER_BUFFER_POOL_MAX_POOLED, "256")));
+        if (Boolean.parseBoolean(env.getProperty(SPRING_KAFKA_PRODUCER_MESSAGE_ID_ENABLED, Boolean.FALSE + ""))) {
+            this.messageIdGenerator = MessageIdGenerator.of(env);
+            logger.info("[ProducerConfig] Message id header {} enabled, worker id {}, datacenter id {}", MESSAGE_ID_HEADER,
+                    messageIdGenerator.getWorkerId(), messageIdGenerator.getDatacenterId());
+        }
+        if (Objects.nonNull(aaKafkaTemplate)
+                && Boolean.parseBoolean(env.getProperty(SPRING_KAFKA_PRODUCER_ROUTING_ENABLED, Boolean.FALSE + ""))) {
+            this.clusterRouter = new ClusterRouter(clusterHealth(KafkaSendObserver.CLUSTER_PRIMARY),
+                    clusterHealth(KafkaSendObserver.CLUSTER_AA),
+                    Boolean.parseBoolean(env.getProperty(SPRING_KAFKA_PRODUCER_ROUTING_FAILOVER_RETRY, Boolean.TRUE + "")));
+            logger.info("[ProducerConfig] Health based routing between kafkaTemplate and aaKafkaTemplate enabled");
+        }
+    }
+
+    /**
+     * 按spring.kafka.producer.bulkheads.<name>.*创建隔离舱，每个隔离舱有自己的发送窗口，可选独立workers和producer
+     */
+    private void initBulkheads(OverflowPolicy defaultPolicy, long blockTimeoutMs) {
+        Map<String, Bulkhead.Properties> configured = Binder.get(env)
+                .bind(SPRING_KAFKA_PRODUCER_BULKHEADS, Bindable.mapOf(String.class, Bulkhead.Properties.class))
+                .orElse(Collections.emptyMap());
+        List<Bulkhead<K, V>> bulkheads = new ArrayList<>(configured.size());
+        configured.forEach((name, properties) -> {
+            OverflowPolicy policy = Objects.isNull(properties.getOverflowPolicy()) ? defaultPolicy : OverflowPolicy.of(properties.getOverflowPolicy());
+            if (policy == OverflowPolicy.SPILL && Objects.isNull(spillStore)) {
+                this.spillStore = newSpillStore();
+            }
+            SendWindow<K, V> window = new SendWindow<>(
+                    Objects.isNull(properties.getMaxRecords())
+                            ? Integer.parseInt(env.getProperty(SPRING_KAFKA_PRODUCER_WINDOW_MAX_RECORDS, "10000")) : properties.getMaxRecords(),
+                    Objects.isNull(properties.getMaxBytes())
+                            ? Long.parseLong(env.getProperty(SPRING_KAFKA_PRODUCER_WINDOW_MAX_BYTES, "33554432")) : properties.getMaxBytes(),
+                    policy, blockTimeoutMs,
+                    Integer.parseInt(env.getProperty(SPRING_KAFKA_PRODUCER_WINDOW_PENDING_CAPACITY, "10000")),
+                    policy == OverflowPolicy.SPILL ? spillStore : null,
+                    Long.parseLong(env.getProperty(SPRING_KAFKA_PRODUCER_WINDOW_OBJECT_BYTES, "1024")), null);
+            ThreadPoolExecutor pool = Objects.isNull(properties.getThreads()) ? null
+                    : new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(), 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(properties.getQueueCapacity()), ThreadFactories.create(env, "kafka-producer-" + name + "-"),
+                    rejectedHandler(policy, blockTimeoutMs));
+            boolean dedicated = properties.isDedicatedProducer();
+            ProducerProfile profile = ProducerProfile.of(properties.getProfile());
+            bulkheads.add(new Bulkhead<>(name, properties, window, pool,
+                    dedicated ? Bulkhead.dedicatedTemplate(name, kafkaTemplate, profile) : null,
+                    dedicated ? Bulkhead.dedicatedTemplate(name, aaKafkaTemplate, profile) : null));
+            logger.info("[ProducerConfig] Bulkhead {} for namespaces {} topics {}, overflow policy {}, dedicated workers {}, dedicated producer {}, profile {}",
+                    name, properties.getNamespaces(), properties.getTopics(), policy, Objects.nonNull(pool), dedicated, profile);
+        });
+        this.bulkheads = Collections.unmodifiableList(bulkheads);
+    }
+
+    /**
+     * 落盘时按kafkaTemplate的序列化器序列化key、value
+     */
+    private SpillStore newSpillStore() {
+        Path dir = Paths.get(env.getProperty(SPRING_KAFKA_PRODUCER_WINDOW_SPILL_DIR, "kafka-spill"));
+        KafkaTemplate<K, V> template = Objects.nonNull(kafkaTemplate) ? kafkaTemplate : aaKafkaTemplate;
+        if (Objects.isNull(template)) {
+            return new SpillStore(dir, new RawValueSerializer(), new RawValueSerializer());
+        }
+        return SpillStore.of(dir, template.getProducerFactory());
     }
 
     /**
@@ -84,15 +188,7 @@ public final class KafkaService<K, V> {
      * @return prefixedTopic
      */
     public static String getCustomPublicNamespaceKey(String topic, @Nullable List<String> groups) {
-        if (Objects.isNull(groups)) {
-            return PUBLIC_NAMESPACE_PREFIX + DEFAULT_SEPARATOR + topic;
-        }
-        StringBuilder stringBuilder = new StringBuilder(PUBLIC_NAMESPACE_PREFIX + DEFAULT_SEPARATOR);
-        groups.forEach(e -> {
-            stringBuilder.append(e).append(DEFAULT_SEPARATOR);
-        });
-        stringBuilder.append(topic).append(DEFAULT_SEPARATOR);
-        return stringBuilder.toString();
+        return TopicNameResolver.resolvePublic(topic, groups);
     }
 
     public KafkaTemplate<K, V> getKafkaTemplate() {
@@ -115,7 +211,7 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean kafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> kafkaTemplate.send(addTopicPrefix(topic), data));
+        return submit(kafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic), data));
     }
 
     public Future<CompletableFuture<SendResult<K, V>>> send(String topic, String namespace, V data) {
@@ -123,7 +219,7 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean kafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> kafkaTemplate.send(addTopicPrefix(topic, namespace), data));
+        return submit(kafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic, namespace), data));
     }
 
     /**
@@ -139,7 +235,7 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean kafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> kafkaTemplate.send(addTopicPrefix(topic), key, data));
+        return submit(kafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic), key, data));
     }
 
     public Future<CompletableFuture<SendResult<K, V>>> send(String topic, String namespace, K key, @Nullable V data) {
@@ -147,7 +243,7 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean kafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> kafkaTemplate.send(addTopicPrefix(topic, namespace), key, data));
+        return submit(kafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic, namespace), key, data));
     }
 
     public Future<CompletableFuture<SendResult<K, V>>> send(String topic, Integer partition, K key, @Nullable V data) {
@@ -155,7 +251,7 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean kafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> kafkaTemplate.send(addTopicPrefix(topic), partition, key, data));
+        return submit(kafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic), partition, key, data));
     }
 
     /**
@@ -173,7 +269,7 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean kafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> kafkaTemplate.send(addTopicPrefix(topic, namespace), partition, key, data));
+        return submit(kafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic, namespace), partition, key, data));
     }
 
     public Future<CompletableFuture<SendResult<K, V>>> send(String topic, Integer partition, Long timestamp, K key,
@@ -182,7 +278,7 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean kafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> kafkaTemplate.send(addTopicPrefix(topic), partition, timestamp, key, data));
+        return submit(kafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic), partition, timestamp, key, data));
     }
 
     /**
@@ -202,7 +298,56 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean kafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> kafkaTemplate.send(addTopicPrefix(topic, namespace), partition, timestamp, key, data));
+        return submit(kafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic, namespace), partition, timestamp, key, data));
+    }
+
+    /**
+     * 发送消息到指定topic，直接返回KafkaTemplate的发送结果，不经过workers线程池
+     *
+     * @param topic
+     * @param data
+     * @return
+     */
+    public CompletableFuture<SendResult<K, V>> sendAsync(String topic, V data) {
+        return sendAsync(topic, namespace, null, null, null, data);
+    }
+
+    public CompletableFuture<SendResult<K, V>> sendAsync(String topic, String namespace, V data) {
+        return sendAsync(topic, namespace, null, null, null, data);
+    }
+
+    public CompletableFuture<SendResult<K, V>> sendAsync(String topic, K key, @Nullable V data) {
+        return sendAsync(topic, namespace, null, null, key, data);
+    }
+
+    public CompletableFuture<SendResult<K, V>> sendAsync(String topic, String namespace, K key, @Nullable V data) {
+        return sendAsync(topic, namespace, null, null, key, data);
+    }
+
+    /**
+     * 发送消息到指定namespace的topic的指定分区中，同时指定消息key和消息时间
+     *
+     * @param topic
+     * @param namespace
+     * @param partition
+     * @param timestamp
+     * @param key
+     * @param data
+     * @return
+     */
+    public CompletableFuture<SendResult<K, V>> sendAsync(String topic, String namespace, @Nullable Integer partition,
+                                                        @Nullable Long timestamp, @Nullable K key, @Nullable V data) {
+        return routedSend(new ProducerRecord<>(addTopicPrefix(topic, namespace), partition, timestamp, key, data));
+    }
+
+    /**
+     * 发送已构造好的消息，topic会加上默认命名空间前缀
+     *
+     * @param record
+     * @return
+     */
+    public CompletableFuture<SendResult<K, V>> sendAsync(ProducerRecord<K, V> record) {
+        return routedSend(withTopicPrefix(record));
     }
 
     /**
@@ -217,7 +362,7 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean aaKafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> aaKafkaTemplate.send(addTopicPrefix(topic), data));
+        return submit(aaKafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic), data));
     }
 
     public Future<CompletableFuture<SendResult<K, V>>> aaSend(String topic, String namespace, V data) {
@@ -225,7 +370,7 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean aaKafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> aaKafkaTemplate.send(addTopicPrefix(topic, namespace), data));
+        return submit(aaKafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic, namespace), data));
     }
 
     public Future<CompletableFuture<SendResult<K, V>>> aaSend(String topic, K key, @Nullable V data) {
@@ -233,7 +378,7 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean aaKafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> aaKafkaTemplate.send(addTopicPrefix(topic), key, data));
+        return submit(aaKafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic), key, data));
     }
 
     public Future<CompletableFuture<SendResult<K, V>>> aaSend(String topic, String namespace, K key, @Nullable V data) {
@@ -241,7 +386,7 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean aaKafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> aaKafkaTemplate.send(addTopicPrefix(topic, namespace), key, data));
+        return submit(aaKafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic, namespace), key, data));
     }
 
     public Future<CompletableFuture<SendResult<K, V>>> aaSend(String topic, Integer partition, K key, @Nullable V data) {
@@ -249,7 +394,7 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean aaKafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> aaKafkaTemplate.send(addTopicPrefix(topic), partition, key, data));
+        return submit(aaKafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic), partition, key, data));
     }
 
     public Future<CompletableFuture<SendResult<K, V>>> aaSend(String topic, String namespace, Integer partition, K key, @Nullable V data) {
@@ -257,7 +402,7 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean aaKafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> aaKafkaTemplate.send(addTopicPrefix(topic, namespace), partition, key, data));
+        return submit(aaKafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic, namespace), partition, key, data));
     }
 
     public Future<CompletableFuture<SendResult<K, V>>> aaSend(String topic, Integer partition, Long timestamp, K key,
@@ -266,7 +411,7 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean aaKafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> aaKafkaTemplate.send(addTopicPrefix(topic), partition, timestamp, key, data));
+        return submit(aaKafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic), partition, timestamp, key, data));
     }
 
     public Future<CompletableFuture<SendResult<K, V>>> aaSend(String topic, String namespace, Integer partition, Long timestamp, K key,
@@ -275,7 +420,192 @@ public final class KafkaService<K, V> {
             logger.error("Cannot find the bean aaKafkaTemplate, please check your configuration.");
             return null;
         }
-        return workers.submit(() -> aaKafkaTemplate.send(addTopicPrefix(topic, namespace), partition, timestamp, key, data));
+        return submit(aaKafkaTemplate, new ProducerRecord<>(addTopicPrefix(topic, namespace), partition, timestamp, key, data));
+    }
+
+    /**
+     * aaSendAsync方法和sendAsync方法对应，只不过发到的是另外一个双活kafka
+     *
+     * @param topic
+     * @param data
+     * @return
+     */
+    public CompletableFuture<SendResult<K, V>> aaSendAsync(String topic, V data) {
+        return aaSendAsync(topic, namespace, null, null, null, data);
+    }
+
+    public CompletableFuture<SendResult<K, V>> aaSendAsync(String topic, String namespace, V data) {
+        return aaSendAsync(topic, namespace, null, null, null, data);
+    }
+
+    public CompletableFuture<SendResult<K, V>> aaSendAsync(String topic, K key, @Nullable V data) {
+        return aaSendAsync(topic, namespace, null, null, key, data);
+    }
+
+    public CompletableFuture<SendResult<K, V>> aaSendAsync(String topic, String namespace, K key, @Nullable V data) {
+        return aaSendAsync(topic, namespace, null, null, key, data);
+    }
+
+    public CompletableFuture<SendResult<K, V>> aaSendAsync(String topic, String namespace, @Nullable Integer partition,
+                                                          @Nullable Long timestamp, @Nullable K key, @Nullable V data) {
+        return doSend(aaKafkaTemplate, "aaKafkaTemplate",
+                new ProducerRecord<>(addTopicPrefix(topic, namespace), partition, timestamp, key, data));
+    }
+
+    public CompletableFuture<SendResult<K, V>> aaSendAsync(ProducerRecord<K, V> record) {
+        return doSend(aaKafkaTemplate, "aaKafkaTemplate", withTopicPrefix(record));
+    }
+
+    /**
+     * 发送已序列化好的消息体，由ByteArraySerializer直接写出，不经过json和String编码
+     * producer配置的value-serializer不支持byte[]时，使用按需创建的单独producer(client.id加-raw后缀)，其余配置相同
+     *
+     * @param topic
+     * @param key
+     * @param value
+     * @return
+     */
+    public CompletableFuture<SendResult<K, byte[]>> sendBytes(String topic, @Nullable K key, byte[] value) {
+        return sendBytes(topic, namespace, null, key, value, null);
+    }
+
+    public CompletableFuture<SendResult<K, byte[]>> sendBytes(String topic, String namespace, @Nullable Integer partition,
+                                                             @Nullable K key, byte[] value, @Nullable Iterable<Header> headers) {
+        return (CompletableFuture) routedSend(rawRecord(topic, namespace, partition, key, value, headers));
+    }
+
+    /**
+     * 发送ByteBuffer中[0, limit)之间的字节，由ByteBufferSerializer写出，完成前不能修改buffer
+     *
+     * @param topic
+     * @param key
+     * @param value 已flip()的buffer
+     * @return
+     */
+    public CompletableFuture<SendResult<K, ByteBuffer>> sendBuffer(String topic, @Nullable K key, ByteBuffer value) {
+        return sendBuffer(topic, namespace, null, key, value, null);
+    }
+
+    public CompletableFuture<SendResult<K, ByteBuffer>> sendBuffer(String topic, String namespace, @Nullable Integer partition,
+                                                                  @Nullable K key, ByteBuffer value, @Nullable Iterable<Header> headers) {
+        return (CompletableFuture) routedSend(rawRecord(topic, namespace, partition, key, value, headers));
+    }
+
+    /**
+     * 在池化的ByteBuffer中构造消息体并发送，writer写完后自动flip()，发送完成(成功或失败)后buffer归还到池中
+     * 结果中ProducerRecord的value已归还，不能再读取
+     *
+     * @param topic
+     * @param key
+     * @param writer 向buffer写入消息体，超出buffer-size时抛出BufferOverflowException，本次发送失败
+     * @return
+     */
+    public CompletableFuture<SendResult<K, ByteBuffer>> sendPooled(String topic, @Nullable K key, Consumer<ByteBuffer> writer) {
+        return sendPooled(topic, namespace, null, key, writer, null);
+    }
+
+    public CompletableFuture<SendResult<K, ByteBuffer>> sendPooled(String topic, String namespace, @Nullable Integer partition,
+                                                                  @Nullable K key, Consumer<ByteBuffer> writer,
+                                                                  @Nullable Iterable<Header> headers) {
+        return pooled(writer, buffer -> sendBuffer(topic, namespace, partition, key, buffer, headers));
+    }
+
+    /**
+     * aaSendBytes、aaSendBuffer、aaSendPooled和sendBytes、sendBuffer、sendPooled对应，只不过发到的是另外一个双活kafka
+     */
+    public CompletableFuture<SendResult<K, byte[]>> aaSendBytes(String topic, @Nullable K key, byte[] value) {
+        return aaSendBytes(topic, namespace, null, key, value, null);
+    }
+
+    public CompletableFuture<SendResult<K, byte[]>> aaSendBytes(String topic, String namespace, @Nullable Integer partition,
+                                                               @Nullable K key, byte[] value, @Nullable Iterable<Header> headers) {
+        return (CompletableFuture) doSend(aaKafkaTemplate, "aaKafkaTemplate", rawRecord(topic, namespace, partition, key, value, headers));
+    }
+
+    public CompletableFuture<SendResult<K, ByteBuffer>> aaSendBuffer(String topic, @Nullable K key, ByteBuffer value) {
+        return aaSendBuffer(topic, namespace, null, key, value, null);
+    }
+
+    public CompletableFuture<SendResult<K, ByteBuffer>> aaSendBuffer(String topic, String namespace, @Nullable Integer partition,
+                                                                    @Nullable K key, ByteBuffer value, @Nullable Iterable<Header> headers) {
+        return (CompletableFuture) doSend(aaKafkaTemplate, "aaKafkaTemplate", rawRecord(topic, namespace, partition, key, value, headers));
+    }
+
+    public CompletableFuture<SendResult<K, ByteBuffer>> aaSendPooled(String topic, @Nullable K key, Consumer<ByteBuffer> writer) {
+        return aaSendPooled(topic, namespace, null, key, writer, null);
+    }
+
+    public CompletableFuture<SendResult<K, ByteBuffer>> aaSendPooled(String topic, String namespace, @Nullable Integer partition,
+                                                                    @Nullable K key, Consumer<ByteBuffer> writer,
+                                                                    @Nullable Iterable<Header> headers) {
+        return pooled(writer, buffer -> aaSendBuffer(topic, namespace, partition, key, buffer, headers));
+    }
+
+    private ProducerRecord<K, V> rawRecord(String topic, String namespace, @Nullable Integer partition, @Nullable K key,
+                                           Object value, @Nullable Iterable<Header> headers) {
+        return new ProducerRecord<>(addTopicPrefix(topic, namespace), partition, null, key, (V) value, headers);
+    }
+
+    private CompletableFuture<SendResult<K, ByteBuffer>> pooled(Consumer<ByteBuffer> writer,
+                                                               Function<ByteBuffer, CompletableFuture<SendResult<K, ByteBuffer>>> sender) {
+        ByteBuffer buffer = bufferPool.acquire();
+        CompletableFuture<SendResult<K, ByteBuffer>> future;
+        try {
+            writer.accept(buffer);
+            buffer.flip();
+            future = sender.apply(buffer);
+        } catch (Exception e) {
+            bufferPool.release(buffer);
+            return CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((result, ex) -> bufferPool.release(buffer));
+    }
+
+    /**
+     * 批量发送到指定topic，topic只加一次前缀；所有消息都指定了分区时按分区分组后依次交给producer，同一分区内保持传入顺序
+     * 只要有消息没有指定分区(由producer的partitioner按key或粘性分区决定)，就按传入顺序发送，不解析partitioner的结果
+     * 消息自身的topic会被忽略；headers复制一份后再加消息ID，不修改传入的消息
+     *
+     * @param topic   原始topic
+     * @param records 消息
+     * @return 全部消息完成后的汇总结果，单条失败不会使其异常完成
+     */
+    public CompletableFuture<BatchSendResult<K, V>> sendBatch(String topic, Collection<ProducerRecord<K, V>> records) {
+        return sendBatch(topic, namespace, records);
+    }
+
+    public CompletableFuture<BatchSendResult<K, V>> sendBatch(String topic, String namespace, Collection<ProducerRecord<K, V>> records) {
+        String prefixedTopic = addTopicPrefix(topic, namespace);
+        return doSendBatch(kafkaTemplate, "kafkaTemplate", records, record -> prefixedTopic, this::routedSend);
+    }
+
+    /**
+     * 批量发送到各消息自身的topic，每个不同的topic只加一次前缀
+     *
+     * @param records 消息
+     * @return 全部消息完成后的汇总结果
+     */
+    public CompletableFuture<BatchSendResult<K, V>> sendAll(Collection<ProducerRecord<K, V>> records) {
+        Map<String, String> prefixedTopics = new HashMap<>();
+        return doSendBatch(kafkaTemplate, "kafkaTemplate", records,
+                record -> prefixedTopics.computeIfAbsent(record.topic(), this::addTopicPrefix), this::routedSend);
+    }
+
+    public CompletableFuture<BatchSendResult<K, V>> aaSendBatch(String topic, Collection<ProducerRecord<K, V>> records) {
+        return aaSendBatch(topic, namespace, records);
+    }
+
+    public CompletableFuture<BatchSendResult<K, V>> aaSendBatch(String topic, String namespace, Collection<ProducerRecord<K, V>> records) {
+        String prefixedTopic = addTopicPrefix(topic, namespace);
+        return doSendBatch(aaKafkaTemplate, "aaKafkaTemplate", records, record -> prefixedTopic,
+                record -> doSend(aaKafkaTemplate, "aaKafkaTemplate", record));
+    }
+
+    public CompletableFuture<BatchSendResult<K, V>> aaSendAll(Collection<ProducerRecord<K, V>> records) {
+        Map<String, String> prefixedTopics = new HashMap<>();
+        return doSendBatch(aaKafkaTemplate, "aaKafkaTemplate", records,
+                record -> prefixedTopics.computeIfAbsent(record.topic(), this::addTopicPrefix),
+                record -> doSend(aaKafkaTemplate, "aaKafkaTemplate", record));
     }
 
     /**
@@ -318,12 +648,671 @@ public final class KafkaService<K, V> {
         return Arrays.asList(send(topic, namespace, partition, timestamp, key, data), aaSend(topic, namespace, partition, timestamp, key, data));
     }
 
+    /**
+     * 同时发送到两个集群，按默认双活写入模式合并为一个结果
+     *
+     * @param topic 发送的主题
+     * @param data  发送的内容
+     * @return 合并后的发送结果，BOTH和SECONDARY_ASYNC模式下为主集群的结果
+     */
+    public CompletableFuture<SendResult<K, V>> bothSendAsync(String topic, V data) {
+        return bothSendAsync(writeMode, topic, namespace, null, null, null, data);
+    }
+
+    public CompletableFuture<SendResult<K, V>> bothSendAsync(String topic, K key, @Nullable V data) {
+        return bothSendAsync(writeMode, topic, namespace, null, null, key, data);
+    }
+
+    public CompletableFuture<SendResult<K, V>> bothSendAsync(ActiveActiveWriteMode mode, String topic, String namespace,
+                                                            @Nullable Integer partition, @Nullable Long timestamp,
+                                                            @Nullable K key, @Nullable V data) {
+        ProducerRecord<K, V> record = new ProducerRecord<>(addTopicPrefix(topic, namespace), partition, timestamp, key, data);
+        CompletableFuture<SendResult<K, V>> primary = doSend(kafkaTemplate, "kafkaTemplate", record);
+        if (Objects.isNull(aaKafkaTemplate)) {
+            return primary;
+        }
+        CompletableFuture<SendResult<K, V>> secondary = doSend(aaKafkaTemplate, "aaKafkaTemplate", record);
+        switch (mode) {
+            case FIRST:
+                return firstSuccess(primary, secondary);
+            case SECONDARY_ASYNC:
+                secondary.whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        logger.error("send message to aaKafkaTemplate error, topic:[{}]", record.topic(), ex);
+                    }
+                });
+                return primary;
+            case BOTH:
+            default:
+                return primary.thenCombine(secondary, (primaryResult, secondaryResult) -> primaryResult);
+        }
+    }
+
+    private static <T> CompletableFuture<T> firstSuccess(CompletableFuture<T> first, CompletableFuture<T> second) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        BiConsumer<T, Throwable> handler = (value, ex) -> {
+            if (ex == null) {
+                result.complete(value);
+            } else if (failures.incrementAndGet() == 2) {
+                result.completeExceptionally(ex);
+            }
+        };
+        first.whenComplete(handler);
+        second.whenComplete(handler);
+        return result;
+    }
+
+    /**
+     * 发往主集群的消息，开启路由时由ClusterRouter按集群健康状况选择集群
+     *
+     * @param record 已加好前缀的消息
+     * @return 发送结果
+     */
+    private CompletableFuture<SendResult<K, V>> routedSend(ProducerRecord<K, V> record) {
+        if (Objects.isNull(clusterRouter)) {
+            return doSend(kafkaTemplate, "kafkaTemplate", record);
+        }
+        ClusterRouter.Route route = clusterRouter.choose();
+        return sendOnRoute(route.getHealth(), route.getPermit(), record, true);
+    }
+
+    private CompletableFuture<SendResult<K, V>> sendOnRoute(ClusterHealth health, ClusterHealth.Permit permit,
+                                                           ProducerRecord<K, V> record, boolean failover) {
+        long start = System.nanoTime();
+        CompletableFuture<SendResult<K, V>> future = (health == clusterRouter.getAa()
+                ? doSend(aaKafkaTemplate, "aaKafkaTemplate", record)
+                : doSend(kafkaTemplate, "kafkaTemplate", record))
+                .whenComplete((result, ex) -> {
+                    // 背压拒绝与集群健康无关，不计入熔断统计，但要归还探测许可
+                    if (unwrap(ex) instanceof KafkaBackpressureException) {
+                        health.release(permit);
+                    } else {
+                        health.record(System.nanoTime() - start, ex == null, permit);
+                    }
+                });
+        if (!failover) {
+            return future;
+        }
+        // 回调在producer的I/O线程上，重发放到workers线程执行，避免在I/O线程上序列化、等待发送窗口
+        return future.handleAsync((result, ex) -> {
+            if (ex == null) {
+                return CompletableFuture.completedFuture(result);
+            }
+            ClusterHealth other = unwrap(ex) instanceof KafkaBackpressureException ? null : clusterRouter.failoverOf(health);
+            if (Objects.isNull(other)) {
+                return CompletableFuture.<SendResult<K, V>>failedFuture(ex);
+            }
+            logger.warn("send message to {} cluster error, failover to {} cluster, topic:[{}]",
+                    health.getCluster(), other.getCluster(), record.topic(), ex);
+            return sendOnRoute(other, ClusterHealth.Permit.NORMAL, record, false);
+        }, this::executeFailover).thenCompose(Function.identity());
+    }
+
+    /**
+     * 在workers线程上执行故障转移；workers拒绝时在当前线程执行，被DROP_OLDEST丢弃时在丢弃它的线程上执行，保证重发一定会完成
+     */
+    private void executeFailover(Runnable task) {
+        try {
+            workers.execute(new DroppableTask<Void>(Executors.callable(task, null), cause -> {
+                task.run();
+                return null;
+            }));
+        } catch (RuntimeException e) {
+            task.run();
+        }
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    /**
+     * 按分发模式发送消息，DIRECT模式下直接返回KafkaTemplate的future，EXECUTOR模式下先经过workers线程池
+     *
+     * @param template     使用的KafkaTemplate
+     * @param templateName bean名，用于错误提示
+     * @param record       已加好前缀的消息
+     * @return 发送结果
+     */
+    private CompletableFuture<SendResult<K, V>> doSend(KafkaTemplate<K, V> template, String templateName,
+                                                       ProducerRecord<K, V> record) {
+        if (Objects.isNull(template)) {
+            logger.error("Cannot find the bean {}, please check your configuration.", templateName);
+            return CompletableFuture.failedFuture(new IllegalStateException("Cannot find the bean " + templateName));
+        }
+        if (!accepting) {
+            return CompletableFuture.failedFuture(new IllegalStateException("KafkaService is shutting down, record to "
+                    + record.topic() + " is rejected"));
+        }
+        stamp(record);
+        inFlight.increment();
+        return observe(template, bulkheadOf(record.topic()), record).whenComplete((result, ex) -> completed());
+    }
+
+    /**
+     * 开启消息ID时为没有消息ID的消息加上header，已有ID(重试、failover或发往两个集群)时保持不变
+     */
+    private ProducerRecord<K, V> stamp(ProducerRecord<K, V> record) {
+        if (Objects.nonNull(messageIdGenerator) && Objects.isNull(record.headers().lastHeader(MESSAGE_ID_HEADER))) {
+            record.headers().add(MESSAGE_ID_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(messageIdGenerator.nextId()).array());
+        }
+        return record;
+    }
+
+    /**
+     * @param template 路由选中的集群，用于区分primary/aa
+     * @param bulkhead 消息所属隔离舱，为null时使用共享的发送窗口、workers和producer
+     */
+    private CompletableFuture<SendResult<K, V>> observe(KafkaTemplate<K, V> template, @Nullable Bulkhead<K, V> bulkhead,
+                                                       ProducerRecord<K, V> record) {
+        Executor executor = Objects.isNull(bulkhead) || Objects.isNull(bulkhead.getWorkers()) ? workers : bulkhead.getWorkers();
+        return observe(template, bulkhead, record, System.nanoTime(), executor);
+    }
+
+    /**
+     * @param start    计时起点
+     * @param executor EXECUTOR模式下发送的线程池，为null时在当前线程发送
+     */
+    private CompletableFuture<SendResult<K, V>> observe(KafkaTemplate<K, V> template, @Nullable Bulkhead<K, V> bulkhead,
+                                                       ProducerRecord<K, V> record, long start, @Nullable Executor executor) {
+        KafkaTemplate<K, V> target = targetTemplate(template, bulkhead);
+        SendWindow<K, V> window = Objects.isNull(bulkhead) ? sendWindow : bulkhead.getWindow();
+        KafkaSendObserver observer = this.sendObserver;
+        if (observer == KafkaSendObserver.NOOP) {
+            return Objects.isNull(window)
+                    ? dispatch(target, record, null, executor) : window.execute(record, r -> dispatch(target, r, null, executor));
+        }
+        String cluster = template == aaKafkaTemplate ? KafkaSendObserver.CLUSTER_AA : KafkaSendObserver.CLUSTER_PRIMARY;
+        SendTiming timing = new SendTiming(start);
+        observer.onSendStart(cluster, record.topic());
+        CompletableFuture<SendResult<K, V>> future = Objects.isNull(window)
+                ? dispatch(target, record, timing, executor) : window.execute(record, r -> dispatch(target, r, timing, executor));
+        return future.whenComplete((result, ex) -> {
+            long now = System.nanoTime();
+            long sent = timing.sent;
+            if (sent == 0L) {
+                observer.onSendComplete(cluster, record.topic(), now - timing.start, -1L, ex);
+            } else {
+                observer.onSendComplete(cluster, record.topic(), sent - timing.start, now - sent, ex);
+            }
+        });
+    }
+
+    private CompletableFuture<SendResult<K, V>> dispatch(KafkaTemplate<K, V> template, ProducerRecord<K, V> record,
+                                                        @Nullable SendTiming timing, @Nullable Executor executor) {
+        try {
+            if (dispatchMode == DispatchMode.EXECUTOR && Objects.nonNull(executor)) {
+                CompletableFuture<SendResult<K, V>> result = new CompletableFuture<>();
+                executor.execute(new DroppableTask<Void>(() -> {
+                    try {
+                        send(template, record, timing).whenComplete((value, ex) -> complete(result, value, ex));
+                    } catch (Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                    return null;
+                }, cause -> {
+                    result.completeExceptionally(cause);
+                    return null;
+                }));
+                return result;
+            }
+            return send(template, record, timing);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static <T> void complete(CompletableFuture<T> future, T value, @Nullable Throwable ex) {
+        if (ex == null) {
+            future.complete(value);
+        } else {
+            future.completeExceptionally(ex);
+        }
+    }
+
+    private CompletableFuture<SendResult<K, V>> send(KafkaTemplate<K, V> template, ProducerRecord<K, V> record,
+                                                    @Nullable SendTiming timing) {
+        if (Objects.nonNull(timing)) {
+            timing.sent = System.nanoTime();
+        }
+        return valueTemplate(template, record).send(record);
+    }
+
+    /**
+     * byte[]和ByteBuffer消息体在template的value-serializer不支持时改用对应的raw producer
+     * 重发的落盘消息key也是已序列化的byte[]，key-serializer不支持时同样改用raw producer
+     */
+    private KafkaTemplate<K, V> valueTemplate(KafkaTemplate<K, V> template, ProducerRecord<K, V> record) {
+        ProducerFactory<K, V> factory = template.getProducerFactory();
+        boolean rawValue = RawValueSerializer.isRaw(record.value()) && !RawValueSerializer.supports(factory, record.value());
+        boolean rawKey = RawValueSerializer.isRaw(record.key()) && !RawValueSerializer.supports(factory, record.key(), true);
+        if (!rawValue && !rawKey) {
+            return template;
+        }
+        return rawTemplates.computeIfAbsent(template, KafkaService::rawTemplate);
+    }
+
+    /**
+     * 复制template的producer配置，把value-serializer换成RawValueSerializer，key-serializer换成委托原序列化器的RawValueSerializer
+     */
+    private static <K, V> KafkaTemplate<K, V> rawTemplate(KafkaTemplate<K, V> shared) {
+        ProducerFactory<K, V> factory = shared.getProducerFactory();
+        Object clientId = factory.getConfigurationProperties().get(ProducerConfig.CLIENT_ID_CONFIG);
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put(ProducerConfig.CLIENT_ID_CONFIG, (Objects.isNull(clientId) ? "producer" : clientId) + "-raw");
+        overrides.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, RawValueSerializer.class);
+        ProducerFactory<K, V> rawFactory = factory.copyWithConfigurationOverride(overrides);
+        if (rawFactory instanceof DefaultKafkaProducerFactory) {
+            // 复制时会带上原来的serializer实例，实例优先于value-serializer配置
+            ((DefaultKafkaProducerFactory<K, V>) rawFactory).setValueSerializerSupplier(() -> (Serializer<V>) new RawValueSerializer());
+            ((DefaultKafkaProducerFactory<K, V>) rawFactory).setKeySerializerSupplier(
+                    () -> (Serializer<K>) new RawValueSerializer(RawValueSerializer.configured(factory, true)));
+        }
+        KafkaTemplate<K, V> template = new KafkaTemplate<>(rawFactory);
+        template.setDefaultTopic(shared.getDefaultTopic());
+        logger.info("[ProducerConfig] Raw value producer {} created", overrides.get(ProducerConfig.CLIENT_ID_CONFIG));
+        return template;
+    }
+
+    /**
+     * 旧版send方法：交给workers线程池执行，属于隔离舱的topic使用隔离舱的workers和producer
+     * 和sendAsync一样计入在途消息、经过发送窗口和KafkaSendObserver，计时从提交时开始，包含在workers队列中的等待时间
+     *
+     * @param template 共享的KafkaTemplate
+     * @param record   已加好前缀的消息
+     */
+    private Future<CompletableFuture<SendResult<K, V>>> submit(KafkaTemplate<K, V> template, ProducerRecord<K, V> record) {
+        if (!accepting) {
+            return CompletableFuture.completedFuture(CompletableFuture.failedFuture(new IllegalStateException(
+                    "KafkaService is shutting down, record to " + record.topic() + " is rejected")));
+        }
+        Bulkhead<K, V> bulkhead = bulkheadOf(record.topic());
+        ExecutorService executor = Objects.isNull(bulkhead) || Objects.isNull(bulkhead.getWorkers()) ? workers : bulkhead.getWorkers();
+        long submitted = System.nanoTime();
+        stamp(record);
+        inFlight.increment();
+        // 已经在workers线程上，不再按dispatch-mode二次提交；被DROP_OLDEST丢弃时返回失败的future并结束在途计数
+        DroppableTask<CompletableFuture<SendResult<K, V>>> task = new DroppableTask<>(
+                () -> observe(template, bulkhead, record, submitted, null).whenComplete((result, ex) -> completed()),
+                cause -> {
+                    completed();
+                    return CompletableFuture.failedFuture(cause);
+                });
+        try {
+            executor.execute(task);
+            return task;
+        } catch (RuntimeException e) {
+            completed();
+            throw e;
+        }
+    }
+
+    /**
+     * @param topic 已加前缀的topic
+     * @return topic所属的隔离舱，不属于任何隔离舱时为null
+     */
+    @Nullable
+    private Bulkhead<K, V> bulkheadOf(String topic) {
+        if (bulkheads.isEmpty()) {
+            return null;
+        }
+        Optional<Bulkhead<K, V>> bulkhead = topicBulkheads.get(topic);
+        if (Objects.isNull(bulkhead)) {
+            bulkhead = bulkheads.stream().filter(b -> b.matches(topic)).findFirst();
+            if (topicBulkheads.size() < TopicNameResolver.MAX_CACHED_TOPICS) {
+                topicBulkheads.put(topic, bulkhead);
+            }
+        }
+        return bulkhead.orElse(null);
+    }
+
+    private KafkaTemplate<K, V> targetTemplate(KafkaTemplate<K, V> template, @Nullable Bulkhead<K, V> bulkhead) {
+        if (Objects.isNull(bulkhead)) {
+            return template;
+        }
+        KafkaTemplate<K, V> dedicated = template == aaKafkaTemplate ? bulkhead.getAaKafkaTemplate() : bulkhead.getKafkaTemplate();
+        return Objects.isNull(dedicated) ? template : dedicated;
+    }
+
+    /**
+     * 单条消息的计时：调用sendAsync(旧版send为提交到workers)的时间和交给KafkaTemplate的时间
+     */
+    private static final class SendTiming {
+        private final long start;
+        private volatile long sent;
+
+        private SendTiming(long start) {
+            this.start = start;
+        }
+    }
+
+    /**
+     * 重发SPILL策略下落盘的消息，落盘的topic已带前缀，直接发送到kafkaTemplate
+     * 落盘消息的key、value是序列化后的byte[]，headers(包括消息ID)原样保留，经raw producer发出的字节与原消息相同
+     *
+     * @return 重发的消息
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public List<CompletableFuture<SendResult<K, V>>> replaySpilled() {
+        if (Objects.isNull(spillStore)) {
+            return Collections.emptyList();
+        }
+        List<CompletableFuture<SendResult<K, V>>> futures = new ArrayList<>();
+        spillStore.drain(record -> futures.add(routedSend((ProducerRecord) record)));
+        return futures;
+    }
+
+    private ClusterHealth clusterHealth(String cluster) {
+        return new ClusterHealth(cluster,
+                Double.parseDouble(env.getProperty(SPRING_KAFKA_PRODUCER_ROUTING_FAILURE_RATE_THRESHOLD, "0.5")),
+                Integer.parseInt(env.getProperty(SPRING_KAFKA_PRODUCER_ROUTING_MINIMUM_CALLS, "20")),
+                Long.parseLong(env.getProperty(SPRING_KAFKA_PRODUCER_ROUTING_WINDOW_MS, "10000")),
+                Long.parseLong(env.getProperty(SPRING_KAFKA_PRODUCER_ROUTING_OPEN_DURATION_MS, "30000")),
+                Long.parseLong(env.getProperty(SPRING_KAFKA_PRODUCER_ROUTING_SLOW_CALL_THRESHOLD_MS, "1000")));
+    }
+
+    /**
+     * workers线程池满时的处理，与发送窗口使用相同的策略；SPILL无法落盘任务，按REJECT处理
+     */
+    private static RejectedExecutionHandler rejectedHandler(OverflowPolicy policy, long blockTimeoutMs) {
+        RejectedExecutionHandler handler = policyHandler(policy, blockTimeoutMs);
+        return (task, executor) -> {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("kafka producer workers have been shut down");
+            }
+            handler.rejectedExecution(task, executor);
+        };
+    }
+
+    private static RejectedExecutionHandler policyHandler(OverflowPolicy policy, long blockTimeoutMs) {
+        switch (policy) {
+            case BLOCK:
+                return (task, executor) -> {
+                    try {
+                        if (!executor.getQueue().offer(task, blockTimeoutMs, TimeUnit.MILLISECONDS)) {
+                            throw new KafkaBackpressureException("kafka producer queue still full after " + blockTimeoutMs + "ms");
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new KafkaBackpressureException("interrupted while waiting for kafka producer queue", e);
+                    }
+                };
+            case DROP_OLDEST:
+                return (task, executor) -> {
+                    Runnable oldest = executor.getQueue().poll();
+                    if (oldest instanceof DroppableTask) {
+                        ((DroppableTask<?>) oldest).drop(new KafkaBackpressureException("kafka producer queue full, oldest record dropped"));
+                    } else if (oldest instanceof Future) {
+                        ((Future<?>) oldest).cancel(false);
+                    }
+                    executor.execute(task);
+                };
+            default:
+                return (task, executor) -> {
+                    throw new KafkaBackpressureException("kafka producer queue full");
+                };
+        }
+    }
+
+    public ActiveActiveWriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    public void setWriteMode(ActiveActiveWriteMode writeMode) {
+        this.writeMode = writeMode;
+    }
+
+    public KafkaSendObserver getSendObserver() {
+        return sendObserver;
+    }
+
+    public void setSendObserver(KafkaSendObserver sendObserver) {
+        this.sendObserver = Objects.isNull(sendObserver) ? KafkaSendObserver.NOOP : sendObserver;
+    }
+
+    public ClusterRouter getClusterRouter() {
+        return clusterRouter;
+    }
+
+    public SendWindow<K, V> getSendWindow() {
+        return sendWindow;
+    }
+
+    /**
+     * @return 已落盘待重发的消息条数
+     */
+    public long getSpilledCount() {
+        return Objects.isNull(spillStore) ? 0L : spillStore.size();
+    }
+
+    /**
+     * @return workers线程池中排队的任务数
+     */
+    public int getQueueDepth() {
+        return ((ThreadPoolExecutor) workers).getQueue().size();
+    }
+
+    public List<Bulkhead<K, V>> getBulkheads() {
+        return bulkheads;
+    }
+
+    /**
+     * @return 已接收尚未完成(broker确认或失败)的消息条数
+     */
+    public long getInFlightCount() {
+        return inFlight.sum();
+    }
+
+    /**
+     * @return sendPooled使用的缓冲区池
+     */
+    public ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * 在途消息完成，drain等待时最后一条完成后唤醒drain
+     */
+    private void completed() {
+        inFlight.decrement();
+        if (!accepting && inFlight.sum() == 0) {
+            synchronized (drainMonitor) {
+                drainMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * drain会关闭workers线程池和隔离舱的线程池、producer，之后不能再启动，需要新建KafkaService
+     */
+    @Override
+    public void start() {
+        if (drained) {
+            throw new IllegalStateException("KafkaService has been drained and cannot be restarted");
+        }
+        accepting = true;
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        drain(Long.parseLong(env.getProperty(SPRING_KAFKA_PRODUCER_SHUTDOWN_DRAIN_TIMEOUT_MS, "30000")));
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 在KafkaOutbox和监听容器之后停止，它们停止前仍可以发送消息
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 200;
+    }
+
+    /**
+     * 停止接收新消息，将workers中排队的和已交给KafkaTemplate的消息发送完
+     *
+     * 之后不能再通过start()恢复发送
+     *
+     * @param timeoutMs 最长等待时间
+     * @return 超时后仍未确认的消息条数(可能丢失)，包括旧版send提交后未开始执行的任务
+     */
+    public long drain(long timeoutMs) {
+        accepting = false;
+        drained = true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        logger.info("[KafkaService] draining, {} records in flight, {} tasks queued", inFlight.sum(), getQueueDepth());
+        workers.shutdown();
+        bulkheads.stream().map(Bulkhead::getWorkers).filter(Objects::nonNull).forEach(ExecutorService::shutdown);
+        try {
+            workers.awaitTermination(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+            for (Bulkhead<K, V> bulkhead : bulkheads) {
+                if (Objects.nonNull(bulkhead.getWorkers())) {
+                    bulkhead.getWorkers().awaitTermination(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+                }
+                flush(bulkhead.getKafkaTemplate());
+                flush(bulkhead.getAaKafkaTemplate());
+            }
+            flush(kafkaTemplate);
+            flush(aaKafkaTemplate);
+            rawTemplates.values().forEach(this::flush);
+            synchronized (drainMonitor) {
+                long remaining;
+                while (inFlight.sum() > 0 && (remaining = remainingNanos(deadline)) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(drainMonitor, remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int unstarted = workers.shutdownNow().size();
+        for (Bulkhead<K, V> bulkhead : bulkheads) {
+            if (Objects.nonNull(bulkhead.getWorkers())) {
+                unstarted += bulkhead.getWorkers().shutdownNow().size();
+            }
+            try {
+                bulkhead.close();
+            } catch (Exception e) {
+                logger.warn("[KafkaService] cannot close producer of bulkhead {}", bulkhead.getName(), e);
+            }
+        }
+        for (KafkaTemplate<K, V> template : rawTemplates.values()) {
+            if (template.getProducerFactory() instanceof DisposableBean) {
+                try {
+                    ((DisposableBean) template.getProducerFactory()).destroy();
+                } catch (Exception e) {
+                    logger.warn("[KafkaService] cannot close raw value producer", e);
+                }
+            }
+        }
+        // workers中的任务(EXECUTOR模式的发送和旧版send)提交前已计入inFlight，未开始执行的任务不再重复计数
+        long lost = inFlight.sum();
+        if (lost > 0) {
+            logger.error("[KafkaService] drain timed out after {}ms, {} records not confirmed ({} tasks never started)",
+                    timeoutMs, lost, unstarted);
+        } else {
+            logger.info("[KafkaService] drained, no records lost");
+        }
+        if (Objects.nonNull(spillStore)) {
+            spillStore.close();
+        }
+        if (getSpilledCount() > 0) {
+            logger.warn("[KafkaService] {} records remain spilled in {}", getSpilledCount(), spillStore.getFile());
+        }
+        return lost;
+    }
+
+    private static long remainingNanos(long deadline) {
+        return Math.max(0L, deadline - System.nanoTime());
+    }
+
+    private void flush(@Nullable KafkaTemplate<K, V> template) {
+        if (Objects.isNull(template)) {
+            return;
+        }
+        try {
+            template.flush();
+        } catch (Exception e) {
+            logger.warn("[KafkaService] flush failed while draining", e);
+        }
+    }
+
+    private CompletableFuture<BatchSendResult<K, V>> doSendBatch(KafkaTemplate<K, V> template, String templateName,
+                                                                 Collection<ProducerRecord<K, V>> records,
+                                                                 Function<ProducerRecord<K, V>, String> topicResolver,
+                                                                 Function<ProducerRecord<K, V>, CompletableFuture<SendResult<K, V>>> sender) {
+        if (Objects.isNull(template)) {
+            logger.error("Cannot find the bean {}, please check your configuration.", templateName);
+            return CompletableFuture.failedFuture(new IllegalStateException("Cannot find the bean " + templateName));
+        }
+        ProducerRecord<K, V>[] batch = records.toArray(new ProducerRecord[0]);
+        SendResult<K, V>[] results = new SendResult[batch.length];
+        Throwable[] errors = new Throwable[batch.length];
+        CompletableFuture<BatchSendResult<K, V>> aggregate = new CompletableFuture<>();
+        if (batch.length == 0) {
+            aggregate.complete(new BatchSendResult<>(results, errors));
+            return aggregate;
+        }
+        AtomicInteger remaining = new AtomicInteger(batch.length);
+        for (int index : partitionOrder(batch)) {
+            ProducerRecord<K, V> record = batch[index];
+            sender.apply(new ProducerRecord<>(topicResolver.apply(record), record.partition(),
+                    record.timestamp(), record.key(), record.value(), new RecordHeaders(record.headers().toArray())))
+                    .whenComplete((result, ex) -> {
+                        if (ex != null) {
+                            errors[index] = ex;
+                        } else {
+                            results[index] = result;
+                        }
+                        if (remaining.decrementAndGet() == 0) {
+                            aggregate.complete(new BatchSendResult<>(results, errors));
+                        }
+                    });
+        }
+        return aggregate;
+    }
+
+    /**
+     * 所有消息都指定了分区时按分区稳定排序后的下标，否则保持原顺序
+     * 未指定分区的消息实际分区由partitioner决定，与指定分区的消息混排会打乱同一分区内的顺序
+     */
+    private static int[] partitionOrder(ProducerRecord<?, ?>[] batch) {
+        for (ProducerRecord<?, ?> record : batch) {
+            if (record.partition() == null) {
+                return IntStream.range(0, batch.length).toArray();
+            }
+        }
+        return IntStream.range(0, batch.length).boxed()
+                .sorted(Comparator.comparing(index -> batch[index].partition()))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private ProducerRecord<K, V> withTopicPrefix(ProducerRecord<K, V> record) {
+        // 复制headers，stamp加消息ID时不修改调用方的消息
+        return new ProducerRecord<>(addTopicPrefix(record.topic()), record.partition(), record.timestamp(),
+                record.key(), record.value(), new RecordHeaders(record.headers().toArray()));
+    }
+
+    public DispatchMode getDispatchMode() {
+        return dispatchMode;
+    }
+
+    public void setDispatchMode(DispatchMode dispatchMode) {
+        this.dispatchMode = dispatchMode;
+    }
+
     private String addTopicPrefix(String topic) {
-        return "".equals(namespace) ? topic : namespace + DEFAULT_SEPARATOR + topic;
+        return TopicNameResolver.resolve(namespace, topic);
     }
 
     private String addTopicPrefix(String topic, String namespace) {
-        return "".equals(namespace) ? topic : namespace + DEFAULT_SEPARATOR + topic;
+        return TopicNameResolver.resolve(namespace, topic);
     }
 
     public String getNamespace() {
@@ -333,13 +1322,4 @@ public final class KafkaService<K, V> {
     public void setNamespace(String namespace) {
         this.namespace = namespace;
     }
-
-    private void setDefaultNamespace() {
-        String k8sEnabled = this.env.getProperty("spring.cloud.kubernetes.enabled", Boolean.TRUE + "");
-        if ((Boolean.TRUE + "").equalsIgnoreCase(k8sEnabled)) {
-            this.setNamespace(kubernetesClient.getNamespace() == null ? DEFAULT_SPRING_KAFKA_NAMESPACE : kubernetesClient.getNamespace());
-        } else {
-            this.setNamespace(this.env.getProperty(SPRING_KAFKA_PRODUCER_NAMESPACE_KEY, DEFAULT_SPRING_KAFKA_NAMESPACE));
-        }
-    }
 }
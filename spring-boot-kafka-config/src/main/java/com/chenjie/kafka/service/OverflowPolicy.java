@@ -0,0 +1,32 @@
+package com.chenjie.kafka.service;
+
+/**
+ * 发送窗口满时的处理策略
+ */
+public enum OverflowPolicy {
+    /**
+     * 阻塞调用线程直到窗口有空位，超时则失败
+     */
+    BLOCK,
+    /**
+     * 直接失败
+     */
+    REJECT,
+    /**
+     * 进入有界等待队列，队列满时丢弃最早的消息
+     */
+    DROP_OLDEST,
+    /**
+     * 写入本地磁盘，之后通过KafkaService.replaySpilled重发
+     */
+    SPILL;
+
+    public static OverflowPolicy of(String value) {
+        for (OverflowPolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(value) || policy.name().replace('_', '-').equalsIgnoreCase(value)) {
+                return policy;
+            }
+        }
+        return BLOCK;
+    }
+}
@@ -0,0 +1,330 @@
+package com.chenjie.kafka.service;
+
+import com.chenjie.kafka.exception.KafkaBackpressureException;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.lang.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 有界发送窗口，同时限制在途消息条数和字节数，窗口满时按OverflowPolicy处理
+ * 字节数按key、value估算：byte[]、ByteBuffer、字符串按实际长度，其它对象按objectBytes计
+ */
+public class SendWindow<K, V> {
+    private final int maxRecords;
+    private final long maxBytes;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutMs;
+    private final int pendingCapacity;
+    private final SpillStore spillStore;
+    private final long objectBytes;
+    private final Executor drainExecutor;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Deque<Pending<K, V>> pending = new ArrayDeque<>();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private volatile int inFlightRecords;
+    private volatile long inFlightBytes;
+
+    public SendWindow(int maxRecords, long maxBytes, OverflowPolicy policy, long blockTimeoutMs,
+                      int pendingCapacity, SpillStore spillStore) {
+        this(maxRecords, maxBytes, policy, blockTimeoutMs, pendingCapacity, spillStore, 1024L, null);
+    }
+
+    /**
+     * @param objectBytes   无法直接得到长度的key、value(序列化前的对象)按多少字节计入窗口
+     * @param drainExecutor drop-oldest策略下发送等待队列中消息的线程，为null时使用窗口自己的单线程
+     */
+    public SendWindow(int maxRecords, long maxBytes, OverflowPolicy policy, long blockTimeoutMs,
+                      int pendingCapacity, SpillStore spillStore, long objectBytes, @Nullable Executor drainExecutor) {
+        if (policy == OverflowPolicy.SPILL && spillStore == null) {
+            throw new IllegalArgumentException("spill policy requires a SpillStore");
+        }
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.pendingCapacity = pendingCapacity;
+        this.spillStore = spillStore;
+        this.objectBytes = objectBytes;
+        this.drainExecutor = drainExecutor != null || policy != OverflowPolicy.DROP_OLDEST ? drainExecutor : drainThread();
+    }
+
+    /**
+     * 同一时间最多只有一个排空任务，空闲时线程退出
+     */
+    private static Executor drainThread() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "kafka-send-window-drain");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 在窗口内发送消息
+     *
+     * @param record 已加好前缀的消息
+     * @param sender 实际发送逻辑
+     * @return 发送结果
+     */
+    public CompletableFuture<SendResult<K, V>> execute(ProducerRecord<K, V> record,
+                                                      Function<ProducerRecord<K, V>, CompletableFuture<SendResult<K, V>>> sender) {
+        long size = estimateSize(record);
+        if (tryAcquire(size)) {
+            return dispatch(record, size, sender);
+        }
+        switch (policy) {
+            case BLOCK:
+                if (acquire(size)) {
+                    return dispatch(record, size, sender);
+                }
+                rejected.incrementAndGet();
+                return CompletableFuture.failedFuture(new KafkaBackpressureException(
+                        "send window still full after " + blockTimeoutMs + "ms, topic: " + record.topic()));
+            case DROP_OLDEST:
+                return enqueue(record, size, sender);
+            case SPILL:
+                try {
+                    spillStore.append(record);
+                } catch (Exception e) {
+                    rejected.incrementAndGet();
+                    return CompletableFuture.failedFuture(e);
+                }
+                return CompletableFuture.failedFuture(new KafkaBackpressureException(
+                        "send window full, record spilled to " + spillStore.getFile() + ", topic: " + record.topic()));
+            case REJECT:
+            default:
+                rejected.incrementAndGet();
+                return CompletableFuture.failedFuture(new KafkaBackpressureException(
+                        "send window full, topic: " + record.topic()));
+        }
+    }
+
+    private CompletableFuture<SendResult<K, V>> dispatch(ProducerRecord<K, V> record, long size,
+                                                        Function<ProducerRecord<K, V>, CompletableFuture<SendResult<K, V>>> sender) {
+        CompletableFuture<SendResult<K, V>> future;
+        try {
+            future = sender.apply(record);
+        } catch (Exception e) {
+            release(size);
+            return CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((result, ex) -> release(size));
+        return future;
+    }
+
+    private CompletableFuture<SendResult<K, V>> enqueue(ProducerRecord<K, V> record, long size,
+                                                       Function<ProducerRecord<K, V>, CompletableFuture<SendResult<K, V>>> sender) {
+        Pending<K, V> entry = new Pending<>(record, size, sender);
+        Pending<K, V> evicted = null;
+        lock.lock();
+        try {
+            pending.offerLast(entry);
+            if (pending.size() > pendingCapacity) {
+                evicted = pending.pollFirst();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (evicted != null) {
+            dropped.incrementAndGet();
+            evicted.future.completeExceptionally(new KafkaBackpressureException(
+                    "send window full, dropped oldest pending record, topic: " + evicted.record.topic()));
+        }
+        // 入队期间窗口可能已经释放
+        drainPending(false);
+        return entry.future;
+    }
+
+    /**
+     * 用计数保证同一时间只有一个线程在排空，排空期间的新请求由该线程继续处理
+     * release在发送完成的回调中执行，通常是producer的I/O线程，这时交给drainExecutor，不能在I/O线程上继续发送
+     *
+     * @param async 是否交给drainExecutor
+     */
+    private void drainPending(boolean async) {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        if (async) {
+            drainExecutor.execute(this::drainLoop);
+        } else {
+            drainLoop();
+        }
+    }
+
+    private void drainLoop() {
+        do {
+            drainOnce();
+        } while (drainRequests.decrementAndGet() != 0);
+    }
+
+    private void drainOnce() {
+        while (true) {
+            Pending<K, V> next;
+            lock.lock();
+            try {
+                next = pending.peekFirst();
+                if (next == null || !fits(next.size)) {
+                    return;
+                }
+                pending.pollFirst();
+                inFlightRecords++;
+                inFlightBytes += next.size;
+            } finally {
+                lock.unlock();
+            }
+            Pending<K, V> entry = next;
+            dispatch(entry.record, entry.size, entry.sender).whenComplete((result, ex) -> {
+                if (ex != null) {
+                    entry.future.completeExceptionally(ex);
+                } else {
+                    entry.future.complete(result);
+                }
+            });
+        }
+    }
+
+    private boolean tryAcquire(long size) {
+        lock.lock();
+        try {
+            if (!pending.isEmpty() || !fits(size)) {
+                return false;
+            }
+            inFlightRecords++;
+            inFlightBytes += size;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean acquire(long size) {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+        lock.lock();
+        try {
+            while (!fits(size)) {
+                if (nanos <= 0L) {
+                    return false;
+                }
+                nanos = released.awaitNanos(nanos);
+            }
+            inFlightRecords++;
+            inFlightBytes += size;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long size) {
+        lock.lock();
+        try {
+            inFlightRecords--;
+            inFlightBytes -= size;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (policy == OverflowPolicy.DROP_OLDEST) {
+            drainPending(true);
+        }
+    }
+
+    /**
+     * 单条超过字节上限的消息在窗口为空时也允许发送，避免永远发不出去
+     */
+    private boolean fits(long size) {
+        if (inFlightRecords == 0) {
+            return true;
+        }
+        return inFlightRecords < maxRecords && inFlightBytes + size <= maxBytes;
+    }
+
+    private long estimateSize(ProducerRecord<?, ?> record) {
+        return sizeOf(record.key()) + sizeOf(record.value());
+    }
+
+    private long sizeOf(Object value) {
+        if (value == null) {
+            return 0L;
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof ByteBuffer) {
+            return ((ByteBuffer) value).remaining();
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length();
+        }
+        if (value instanceof Number) {
+            return Long.BYTES;
+        }
+        return objectBytes;
+    }
+
+    public int getInFlightRecords() {
+        return inFlightRecords;
+    }
+
+    public long getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    public int getPendingRecords() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    private static final class Pending<K, V> {
+        private final ProducerRecord<K, V> record;
+        private final long size;
+        private final Function<ProducerRecord<K, V>, CompletableFuture<SendResult<K, V>>> sender;
+        private final CompletableFuture<SendResult<K, V>> future = new CompletableFuture<>();
+
+        private Pending(ProducerRecord<K, V> record, long size,
+                        Function<ProducerRecord<K, V>, CompletableFuture<SendResult<K, V>>> sender) {
+            this.record = record;
+            this.size = size;
+            this.sender = sender;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.chenjie.kafka.service;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.chenjie.kafka.serializer.RawValueSerializer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.ProducerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 发送窗口溢出时的本地落盘存储，每条消息一行json
+ * key、value按producer的序列化器序列化后以base64保存(byte[]和ByteBuffer消息体保存原始字节)，headers一并保存，
+ * 重发时key、value都是byte[]，发出的字节与直接发送时相同
+ */
+public class SpillStore {
+    private static final Logger logger = LoggerFactory.getLogger(SpillStore.class);
+    private static final RawValueSerializer RAW = new RawValueSerializer();
+    private final Path file;
+    private final Path draining;
+    private final Serializer<Object> keySerializer;
+    private final Serializer<Object> valueSerializer;
+    private final Object drainLock = new Object();
+    private BufferedWriter writer;
+    private long spilled;
+
+    public SpillStore(Path dir, Serializer<Object> keySerializer, Serializer<Object> valueSerializer) {
+        this.file = dir.resolve("kafka-spill.log");
+        this.draining = dir.resolve("kafka-spill.log.draining");
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        try {
+            Files.createDirectories(dir);
+            this.spilled = countLines(draining) + countLines(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot open spill file: " + file, e);
+        }
+        if (spilled > 0) {
+            logger.warn("[SpillStore] found {} spilled records in {}, call KafkaService.replaySpilled() to resend them", spilled, dir);
+        }
+    }
+
+    /**
+     * 使用producer工厂配置的key、value序列化器
+     */
+    public static SpillStore of(Path dir, ProducerFactory<?, ?> factory) {
+        return new SpillStore(dir, RawValueSerializer.configured(factory, true), RawValueSerializer.configured(factory, false));
+    }
+
+    private static long countLines(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0L;
+        }
+        try (Stream<String> lines = Files.lines(path, StandardCharsets.UTF_8)) {
+            return lines.filter(line -> !line.isEmpty()).count();
+        }
+    }
+
+    /**
+     * 追加一条消息(topic需已加好前缀)，文件保持打开，每条消息写完后flush
+     *
+     * @param record 消息
+     */
+    public synchronized void append(ProducerRecord<?, ?> record) {
+        // 序列化器可能会添加header(如json类型信息)，在副本上序列化，不修改调用方的headers
+        RecordHeaders headers = new RecordHeaders(record.headers().toArray());
+        // 重发时再次溢出的消息key、value已经是序列化后的byte[]
+        byte[] key = serialize(keySerializer, record.topic(), headers, record.key());
+        byte[] value = serialize(valueSerializer, record.topic(), headers, record.value());
+        JSONObject line = new JSONObject();
+        line.put("topic", record.topic());
+        line.put("partition", record.partition());
+        line.put("timestamp", record.timestamp());
+        line.put("key", encode(key));
+        line.put("value", encode(value));
+        JSONArray headerArray = new JSONArray();
+        for (Header header : headers) {
+            JSONObject item = new JSONObject();
+            item.put("key", header.key());
+            item.put("value", encode(header.value()));
+            headerArray.add(item);
+        }
+        line.put("headers", headerArray);
+        try {
+            if (Objects.isNull(writer)) {
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(line.toJSONString());
+            writer.newLine();
+            writer.flush();
+            spilled++;
+        } catch (IOException e) {
+            closeWriter();
+            throw new UncheckedIOException("cannot spill record to " + file, e);
+        }
+    }
+
+    private static byte[] serialize(Serializer<Object> serializer, String topic, RecordHeaders headers, Object data) {
+        if (Objects.isNull(data)) {
+            return null;
+        }
+        return RawValueSerializer.isRaw(data) ? RAW.serialize(topic, data) : serializer.serialize(topic, headers, data);
+    }
+
+    private static String encode(byte[] bytes) {
+        return Objects.isNull(bytes) ? null : Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private static byte[] decode(String text) {
+        return Objects.isNull(text) ? null : Base64.getDecoder().decode(text);
+    }
+
+    /**
+     * 逐行读出并清空落盘的消息，不会一次性加载整个文件
+     * 开始时把当前文件改名为.draining，之后落盘的消息(包括重发时再次溢出的)写入新文件，留给下一次drain
+     * consumer抛出异常时.draining保留，下一次drain从头重新处理，已处理的消息会重复发送
+     *
+     * @param consumer 处理每条消息，key、value为序列化后的字节
+     * @return 处理的消息条数
+     */
+    public long drain(Consumer<ProducerRecord<byte[], byte[]>> consumer) {
+        synchronized (drainLock) {
+            long count = 0L;
+            try {
+                // 上次drain中断留下的文件先处理
+                count += drainFile(consumer);
+                synchronized (this) {
+                    closeWriter();
+                    if (Files.exists(file)) {
+                        Files.move(file, draining, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                }
+                count += drainFile(consumer);
+            } catch (IOException e) {
+                throw new UncheckedIOException("cannot read spill file " + draining, e);
+            }
+            if (count > 0) {
+                logger.info("[SpillStore] drained {} records from {}", count, file);
+            }
+            return count;
+        }
+    }
+
+    private long drainFile(Consumer<ProducerRecord<byte[], byte[]>> consumer) throws IOException {
+        if (!Files.exists(draining)) {
+            return 0L;
+        }
+        long count = 0L;
+        try (BufferedReader reader = Files.newBufferedReader(draining, StandardCharsets.UTF_8)) {
+            String json;
+            while ((json = reader.readLine()) != null) {
+                if (json.isEmpty()) {
+                    continue;
+                }
+                consumer.accept(parse(json));
+                count++;
+            }
+        }
+        Files.delete(draining);
+        synchronized (this) {
+            spilled -= count;
+        }
+        return count;
+    }
+
+    private static ProducerRecord<byte[], byte[]> parse(String json) {
+        JSONObject line = JSONObject.parseObject(json);
+        RecordHeaders headers = new RecordHeaders();
+        JSONArray headerArray = line.getJSONArray("headers");
+        if (Objects.nonNull(headerArray)) {
+            for (int i = 0; i < headerArray.size(); i++) {
+                JSONObject item = headerArray.getJSONObject(i);
+                headers.add(item.getString("key"), decode(item.getString("value")));
+            }
+        }
+        return new ProducerRecord<>(line.getString("topic"), line.getInteger("partition"), line.getLong("timestamp"),
+                decode(line.getString("key")), decode(line.getString("value")), headers);
+    }
+
+    /**
+     * 关闭写入的文件，之后的append会重新打开
+     */
+    public synchronized void close() {
+        closeWriter();
+    }
+
+    private void closeWriter() {
+        if (Objects.isNull(writer)) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.warn("[SpillStore] close spill file {} failed", file, e);
+        }
+        writer = null;
+    }
+
+    public synchronized long size() {
+        return spilled;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,82 @@
+package com.chenjie.kafka.streams;
+
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.state.RocksDBConfigSetter;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.Cache;
+import org.rocksdb.LRUCache;
+import org.rocksdb.Options;
+import org.rocksdb.WriteBufferManager;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 限制RocksDB状态存储的总内存：同一个streams应用的所有state store共用一个block cache，memtable也计入该cache
+ * 默认每个store各自分配block cache和memtable，store个数随分区数增长，内存不可控
+ * 由kafka streams按类名实例化，参数从streams配置中读取
+ */
+public class BoundedMemoryRocksDBConfig implements RocksDBConfigSetter {
+    /**
+     * 所有store共用的block cache大小(字节)
+     */
+    public static final String BLOCK_CACHE_SIZE_CONFIG = "rocksdb.block-cache-size";
+    /**
+     * 所有store的memtable总大小上限(字节)，计入block cache
+     */
+    public static final String WRITE_BUFFER_SIZE_CONFIG = "rocksdb.write-buffer-size";
+    /**
+     * 单个store的memtable大小(字节)，不配置时使用kafka streams默认值
+     */
+    public static final String MEMTABLE_SIZE_CONFIG = "rocksdb.memtable-size";
+    public static final long DEFAULT_BLOCK_CACHE_SIZE = 64L * 1024 * 1024;
+    public static final long DEFAULT_WRITE_BUFFER_SIZE = 16L * 1024 * 1024;
+
+    private static final ConcurrentMap<String, SharedMemory> SHARED = new ConcurrentHashMap<>();
+
+    @Override
+    public void setConfig(String storeName, Options options, Map<String, Object> configs) {
+        long blockCacheSize = longValue(configs.get(BLOCK_CACHE_SIZE_CONFIG), DEFAULT_BLOCK_CACHE_SIZE);
+        long writeBufferSize = Math.min(blockCacheSize, longValue(configs.get(WRITE_BUFFER_SIZE_CONFIG), DEFAULT_WRITE_BUFFER_SIZE));
+        SharedMemory shared = SHARED.computeIfAbsent(configs.get(StreamsConfig.APPLICATION_ID_CONFIG) + "@" + configs.get(StreamsConfig.STATE_DIR_CONFIG),
+                key -> new SharedMemory(blockCacheSize, writeBufferSize));
+        BlockBasedTableConfig tableConfig = (BlockBasedTableConfig) options.tableFormatConfig();
+        tableConfig.setBlockCache(shared.cache);
+        tableConfig.setCacheIndexAndFilterBlocks(true);
+        tableConfig.setCacheIndexAndFilterBlocksWithHighPriority(true);
+        tableConfig.setPinTopLevelIndexAndFilter(true);
+        options.setWriteBufferManager(shared.writeBufferManager);
+        options.setTableFormatConfig(tableConfig);
+        Object memtableSize = configs.get(MEMTABLE_SIZE_CONFIG);
+        if (Objects.nonNull(memtableSize)) {
+            options.setWriteBufferSize(longValue(memtableSize, 0L));
+        }
+    }
+
+    /**
+     * cache和WriteBufferManager由所有store共用，随进程释放，store关闭时不关闭
+     */
+    @Override
+    public void close(String storeName, Options options) {
+    }
+
+    private static long longValue(Object value, long defaultValue) {
+        if (Objects.isNull(value)) {
+            return defaultValue;
+        }
+        return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+    }
+
+    private static final class SharedMemory {
+        private final Cache cache;
+        private final WriteBufferManager writeBufferManager;
+
+        private SharedMemory(long blockCacheSize, long writeBufferSize) {
+            // 10%留给index和filter block
+            this.cache = new LRUCache(blockCacheSize, -1, false, 0.1);
+            this.writeBufferManager = new WriteBufferManager(writeBufferSize, cache);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.chenjie.kafka.streams;
+
+import com.chenjie.kafka.utils.TopicNameResolver;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.GlobalKTable;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.KTable;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+/**
+ * 为StreamsBuilder的输入、输出topic加上命名空间前缀，与@KafkaListener和KafkaService使用同样的前缀规则
+ * 写出时使用 {@code stream.to(builder.topic("out"), produced)}，内部topic和state store由带命名空间的application.id区分
+ */
+public class NamespacedStreamsBuilder {
+    private final StreamsBuilder builder;
+    private final String namespace;
+
+    public NamespacedStreamsBuilder(StreamsBuilder builder, String namespace) {
+        this.builder = builder;
+        this.namespace = namespace;
+    }
+
+    /**
+     * @param topic 原始topic
+     * @return 带命名空间前缀的topic
+     */
+    public String topic(String topic) {
+        return TopicNameResolver.resolve(namespace, topic);
+    }
+
+    public <K, V> KStream<K, V> stream(String topic) {
+        return builder.stream(topic(topic));
+    }
+
+    public <K, V> KStream<K, V> stream(String topic, Consumed<K, V> consumed) {
+        return builder.stream(topic(topic), consumed);
+    }
+
+    public <K, V> KStream<K, V> stream(Collection<String> topics, Consumed<K, V> consumed) {
+        return builder.stream(topics.stream().map(this::topic).collect(Collectors.toList()), consumed);
+    }
+
+    public <K, V> KTable<K, V> table(String topic, Consumed<K, V> consumed) {
+        return builder.table(topic(topic), consumed);
+    }
+
+    public <K, V> KTable<K, V> table(String topic, Consumed<K, V> consumed, Materialized<K, V, KeyValueStore<Bytes, byte[]>> materialized) {
+        return builder.table(topic(topic), consumed, materialized);
+    }
+
+    public <K, V> GlobalKTable<K, V> globalTable(String topic, Consumed<K, V> consumed) {
+        return builder.globalTable(topic(topic), consumed);
+    }
+
+    public <K, V> void to(KStream<K, V> stream, String topic, Produced<K, V> produced) {
+        stream.to(topic(topic), produced);
+    }
+
+    public StreamsBuilder getBuilder() {
+        return builder;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+}
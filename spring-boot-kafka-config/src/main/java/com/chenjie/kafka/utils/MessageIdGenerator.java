@@ -0,0 +1,141 @@
+package com.chenjie.kafka.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.lang.Nullable;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.*;
+
+/**
+ * 消息ID生成器，雪花算法：41位毫秒时间戳 + 5位datacenter id + 5位worker id + 12位序号
+ * 起始时间为2024-01-01，ID为正数，同一实例生成的ID递增；worker id和datacenter id相同的两个实例会生成相同的ID
+ */
+public class MessageIdGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(MessageIdGenerator.class);
+    private static final long EPOCH = 1704067200000L;
+    private static final Pattern POD_ORDINAL = Pattern.compile(".+-(\\d+)");
+    private static final String HOSTNAME_ENV = "HOSTNAME";
+    private static final long WORKER_ID_BITS = 5L;
+    private static final long DATACENTER_ID_BITS = 5L;
+    private static final long SEQUENCE_BITS = 12L;
+    private static final long MAX_WORKER_ID = ~(-1L << WORKER_ID_BITS);
+    private static final long MAX_DATACENTER_ID = ~(-1L << DATACENTER_ID_BITS);
+    private static final long WORKER_ID_SHIFT = SEQUENCE_BITS;
+    private static final long DATACENTER_ID_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
+    private static final long TIMESTAMP_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS + DATACENTER_ID_BITS;
+    private static final long SEQUENCE_MASK = ~(-1L << SEQUENCE_BITS);
+
+    private final long workerId;
+    private final long datacenterId;
+    private long sequence;
+    private long lastTimestamp = -1L;
+
+    /**
+     * @param workerId     0-31
+     * @param datacenterId 0-31
+     */
+    public MessageIdGenerator(long workerId, long datacenterId) {
+        if (workerId > MAX_WORKER_ID || workerId < 0) {
+            throw new IllegalArgumentException(String.format("worker id must be between 0 and %d", MAX_WORKER_ID));
+        }
+        if (datacenterId > MAX_DATACENTER_ID || datacenterId < 0) {
+            throw new IllegalArgumentException(String.format("datacenter id must be between 0 and %d", MAX_DATACENTER_ID));
+        }
+        this.workerId = workerId;
+        this.datacenterId = datacenterId;
+    }
+
+    /**
+     * 按配置创建：worker-id和datacenter-id都配置时直接使用；都没配置时取StatefulSet pod名末尾的序号(0-1023)拆成两部分；
+     * 否则未配置的部分随机取值，只有1024种组合，多实例时可能生成相同的ID，开启了消费端去重时启动失败
+     *
+     * @param env 配置
+     * @return 生成器
+     */
+    public static MessageIdGenerator of(Environment env) {
+        Long workerId = env.getProperty(SPRING_KAFKA_PRODUCER_MESSAGE_ID_WORKER_ID, Long.class);
+        Long datacenterId = env.getProperty(SPRING_KAFKA_PRODUCER_MESSAGE_ID_DATACENTER_ID, Long.class);
+        if (Objects.nonNull(workerId) && Objects.nonNull(datacenterId)) {
+            return new MessageIdGenerator(workerId, datacenterId);
+        }
+        String hostname = env.getProperty(HOSTNAME_ENV);
+        Integer ordinal = podOrdinal(hostname);
+        if (Objects.isNull(workerId) && Objects.isNull(datacenterId) && Objects.nonNull(ordinal)) {
+            logger.info("[MessageIdGenerator] worker id and datacenter id derived from pod ordinal of {}", hostname);
+            return new MessageIdGenerator(ordinal & MAX_WORKER_ID, ordinal >>> WORKER_ID_BITS);
+        }
+        if (env.getProperty(SPRING_KAFKA_CONSUMER_DEDUP_ENABLED, Boolean.class, Boolean.FALSE)) {
+            // 两个实例的ID相同时去重会把正常消息当作重复消息丢弃
+            throw new IllegalStateException("message id dedup is enabled, please set " + SPRING_KAFKA_PRODUCER_MESSAGE_ID_WORKER_ID
+                    + " and " + SPRING_KAFKA_PRODUCER_MESSAGE_ID_DATACENTER_ID + " to a pair unique among producer instances");
+        }
+        MessageIdGenerator generator = new MessageIdGenerator(
+                Objects.nonNull(workerId) ? workerId : ThreadLocalRandom.current().nextInt((int) MAX_WORKER_ID + 1),
+                Objects.nonNull(datacenterId) ? datacenterId : ThreadLocalRandom.current().nextInt((int) MAX_DATACENTER_ID + 1));
+        logger.warn("[MessageIdGenerator] {} or {} not set, using random worker id {} and datacenter id {}; "
+                        + "instances picking the same pair generate duplicate message ids",
+                SPRING_KAFKA_PRODUCER_MESSAGE_ID_WORKER_ID, SPRING_KAFKA_PRODUCER_MESSAGE_ID_DATACENTER_ID,
+                generator.getWorkerId(), generator.getDatacenterId());
+        return generator;
+    }
+
+    /**
+     * @return StatefulSet pod名(name-序号)中的序号，不是pod名或序号超过1023时为null
+     */
+    @Nullable
+    static Integer podOrdinal(@Nullable String hostname) {
+        if (Objects.isNull(hostname)) {
+            return null;
+        }
+        Matcher matcher = POD_ORDINAL.matcher(hostname);
+        if (!matcher.matches() || matcher.group(1).length() > 4) {
+            return null;
+        }
+        int ordinal = Integer.parseInt(matcher.group(1));
+        return ordinal <= (MAX_WORKER_ID + 1) * (MAX_DATACENTER_ID + 1) - 1 ? ordinal : null;
+    }
+
+    /**
+     * 同一毫秒内最多4096个，用完后等到下一毫秒；时钟回拨时抛异常
+     */
+    public synchronized long nextId() {
+        long timestamp = System.currentTimeMillis();
+        if (timestamp < lastTimestamp) {
+            throw new IllegalStateException(String.format(
+                    "clock moved backwards, refusing to generate id for %d milliseconds", lastTimestamp - timestamp));
+        }
+        if (timestamp == lastTimestamp) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                timestamp = tilNextMillis(lastTimestamp);
+            }
+        } else {
+            sequence = 0;
+        }
+        lastTimestamp = timestamp;
+        return ((timestamp - EPOCH) << TIMESTAMP_SHIFT) | (datacenterId << DATACENTER_ID_SHIFT)
+                | (workerId << WORKER_ID_SHIFT) | sequence;
+    }
+
+    private static long tilNextMillis(long lastTimestamp) {
+        long timestamp = System.currentTimeMillis();
+        while (timestamp <= lastTimestamp) {
+            timestamp = System.currentTimeMillis();
+        }
+        return timestamp;
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    public long getDatacenterId() {
+        return datacenterId;
+    }
+}
@@ -0,0 +1,96 @@
+package com.chenjie.kafka.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.DEFAULT_SPRING_KAFKA_NAMESPACE;
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.SPRING_KAFKA_CONSUMER_NAMESPACE_KEY;
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.SPRING_KAFKA_PRODUCER_NAMESPACE_KEY;
+
+/**
+ * 生产者、消费者命名空间解析
+ * 未配置spring.kafka.producer/consumer.namespace时使用所在k8s命名空间，依次读取环境变量KUBERNETES_NAMESPACE、POD_NAMESPACE
+ * 和service account挂载的namespace文件，首次使用时解析并在进程内缓存，不依赖KubernetesClient，不访问k8s API
+ * 不在k8s中运行时为空字符串
+ */
+public final class NamespaceResolver {
+    public static final String KUBERNETES_NAMESPACE_ENV = "KUBERNETES_NAMESPACE";
+    public static final String POD_NAMESPACE_ENV = "POD_NAMESPACE";
+    public static final Path SERVICE_ACCOUNT_NAMESPACE_FILE = Paths.get("/var/run/secrets/kubernetes.io/serviceaccount/namespace");
+    private static final String KUBERNETES_ENABLED_KEY = "spring.cloud.kubernetes.enabled";
+    private static final Logger logger = LoggerFactory.getLogger(NamespaceResolver.class);
+
+    private NamespaceResolver() {
+    }
+
+    /**
+     * 生产者命名空间，未关闭spring.cloud.kubernetes.enabled时默认使用k8s命名空间
+     *
+     * @param env
+     * @return
+     */
+    public static String producerNamespace(Environment env) {
+        String namespace = env.getProperty(SPRING_KAFKA_PRODUCER_NAMESPACE_KEY);
+        if (Objects.nonNull(namespace)) {
+            return namespace;
+        }
+        return env.getProperty(KUBERNETES_ENABLED_KEY, Boolean.class, Boolean.TRUE) ? kubernetesNamespace() : DEFAULT_SPRING_KAFKA_NAMESPACE;
+    }
+
+    /**
+     * 消费者命名空间，spring.cloud.kubernetes.enabled=true时默认使用k8s命名空间
+     *
+     * @param env
+     * @return
+     */
+    public static String consumerNamespace(Environment env) {
+        String namespace = env.getProperty(SPRING_KAFKA_CONSUMER_NAMESPACE_KEY);
+        if (Objects.nonNull(namespace)) {
+            return namespace;
+        }
+        return env.getProperty(KUBERNETES_ENABLED_KEY, Boolean.class, Boolean.FALSE) ? kubernetesNamespace() : DEFAULT_SPRING_KAFKA_NAMESPACE;
+    }
+
+    /**
+     * @return 所在k8s命名空间，不在k8s中运行时为空字符串
+     */
+    public static String kubernetesNamespace() {
+        return Holder.NAMESPACE;
+    }
+
+    private static String resolve() {
+        for (String name : new String[]{KUBERNETES_NAMESPACE_ENV, POD_NAMESPACE_ENV}) {
+            String value = System.getenv(name);
+            if (StringUtils.hasText(value)) {
+                return value.trim();
+            }
+        }
+        if (Files.isReadable(SERVICE_ACCOUNT_NAMESPACE_FILE)) {
+            try {
+                String value = new String(Files.readAllBytes(SERVICE_ACCOUNT_NAMESPACE_FILE), StandardCharsets.UTF_8).trim();
+                if (!value.isEmpty()) {
+                    return value;
+                }
+            } catch (IOException e) {
+                logger.warn("failed to read kubernetes namespace from {}", SERVICE_ACCOUNT_NAMESPACE_FILE, e);
+            }
+        }
+        return DEFAULT_SPRING_KAFKA_NAMESPACE;
+    }
+
+    /**
+     * 首次访问时才解析
+     */
+    private static final class Holder {
+        private static final String NAMESPACE = resolve();
+    }
+}
@@ -0,0 +1,45 @@
+package com.chenjie.kafka.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * kafka各线程池的线程工厂
+ * spring.threads.virtual.enabled=true且运行在JDK 21+时使用虚拟线程，否则使用普通线程
+ * 线程池的队列、上限和拒绝策略不变，虚拟线程下可以调大线程数以容纳更多阻塞中的发送
+ */
+public final class ThreadFactories {
+    private static final Logger logger = LoggerFactory.getLogger(ThreadFactories.class);
+
+    private ThreadFactories() {
+    }
+
+    /**
+     * @param env              用于判断是否开启虚拟线程
+     * @param threadNamePrefix 线程名前缀
+     * @return 线程工厂
+     */
+    public static ThreadFactory create(Environment env, String threadNamePrefix) {
+        if (Threading.VIRTUAL.isActive(env)) {
+            logger.info("[ThreadFactories] {} uses virtual threads", threadNamePrefix);
+            return new VirtualThreadTaskExecutor(threadNamePrefix).getVirtualThreadFactory();
+        }
+        if (Boolean.parseBoolean(env.getProperty("spring.threads.virtual.enabled"))) {
+            logger.warn("[ThreadFactories] virtual threads require JDK 21+, {} falls back to platform threads", threadNamePrefix);
+        }
+        return new CustomizableThreadFactory(threadNamePrefix);
+    }
+
+    /**
+     * @return 当前是否使用虚拟线程
+     */
+    public static boolean isVirtual(Environment env) {
+        return Threading.VIRTUAL.isActive(env);
+    }
+}
@@ -0,0 +1,112 @@
+package com.chenjie.kafka.utils;
+
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.PUBLIC_NAMESPACE_PREFIX;
+
+/**
+ * topic名解析，缓存 namespace × topic 到最终topic名的映射，避免每条消息都拼接字符串
+ * 缓存条数有上限，超过后不再缓存，直接拼接返回；缓存的topic同时记录所属命名空间，供按命名空间精确匹配
+ */
+public final class TopicNameResolver {
+    public static final String DEFAULT_SEPARATOR = "_";
+    public static final int MAX_CACHED_TOPICS = 4096;
+    private static final ConcurrentMap<String, ConcurrentMap<String, String>> NAMESPACED_TOPICS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<List<String>, ConcurrentMap<String, String>> PUBLIC_TOPICS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, String> NAMESPACES = new ConcurrentHashMap<>();
+    private static final AtomicInteger CACHED = new AtomicInteger();
+
+    private TopicNameResolver() {
+    }
+
+    /**
+     * 为topic加上命名空间前缀，namespace为空时返回原topic
+     * e.g. namespace = ns, topic = myTopic, then the result is {@code ns_myTopic}
+     *
+     * @param namespace 命名空间
+     * @param topic     原始topic
+     * @return prefixedTopic
+     */
+    public static String resolve(@Nullable String namespace, String topic) {
+        if (Objects.isNull(namespace) || namespace.isEmpty()) {
+            return topic;
+        }
+        ConcurrentMap<String, String> topics = NAMESPACED_TOPICS.get(namespace);
+        if (Objects.nonNull(topics)) {
+            String cached = topics.get(topic);
+            if (Objects.nonNull(cached)) {
+                return cached;
+            }
+        }
+        String resolved = namespace + DEFAULT_SEPARATOR + topic;
+        if (CACHED.get() >= MAX_CACHED_TOPICS) {
+            return resolved;
+        }
+        String cached = cache(NAMESPACED_TOPICS.computeIfAbsent(namespace, key -> new ConcurrentHashMap<>()), topic, resolved);
+        NAMESPACES.putIfAbsent(cached, namespace);
+        return cached;
+    }
+
+    /**
+     * 由resolve生成并缓存的topic所属的命名空间，如namespace为a_b时a_b_orders属于a_b而不是a
+     *
+     * @param resolved 已加前缀的topic
+     * @return 命名空间，不是resolve生成的或超过缓存上限未记录时为null
+     */
+    @Nullable
+    public static String namespaceOf(String resolved) {
+        return NAMESPACES.get(resolved);
+    }
+
+    /**
+     * 为topic加上公共命名空间及前缀组，结果与KafkaService.getCustomPublicNamespaceKey一致
+     *
+     * @param topic  原始topic
+     * @param groups 前缀组
+     * @return prefixedTopic
+     */
+    public static String resolvePublic(String topic, @Nullable List<String> groups) {
+        if (Objects.isNull(groups)) {
+            return resolve(PUBLIC_NAMESPACE_PREFIX, topic);
+        }
+        ConcurrentMap<String, String> topics = PUBLIC_TOPICS.get(groups);
+        if (Objects.nonNull(topics)) {
+            String cached = topics.get(topic);
+            if (Objects.nonNull(cached)) {
+                return cached;
+            }
+        }
+        StringBuilder stringBuilder = new StringBuilder(PUBLIC_NAMESPACE_PREFIX).append(DEFAULT_SEPARATOR);
+        groups.forEach(e -> stringBuilder.append(e).append(DEFAULT_SEPARATOR));
+        stringBuilder.append(topic).append(DEFAULT_SEPARATOR);
+        String resolved = stringBuilder.toString();
+        if (CACHED.get() >= MAX_CACHED_TOPICS) {
+            return resolved;
+        }
+        return cache(PUBLIC_TOPICS.computeIfAbsent(new ArrayList<>(groups), k -> new ConcurrentHashMap<>()), topic, resolved);
+    }
+
+    private static String cache(ConcurrentMap<String, String> topics, String topic, String resolved) {
+        String interned = resolved.intern();
+        String previous = topics.putIfAbsent(topic, interned);
+        if (Objects.nonNull(previous)) {
+            return previous;
+        }
+        CACHED.incrementAndGet();
+        return interned;
+    }
+
+    /**
+     * @return 当前缓存的topic名条数
+     */
+    public static int cachedSize() {
+        return CACHED.get();
+    }
+}
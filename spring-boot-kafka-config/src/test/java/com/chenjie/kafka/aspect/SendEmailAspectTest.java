@@ -0,0 +1,79 @@
+package com.chenjie.kafka.aspect;
+
+import com.chenjie.kafka.annotation.SendMessage;
+import com.chenjie.kafka.serializer.FastJsonMessageSerializer;
+import com.chenjie.kafka.service.KafkaService;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * SendMessage切面的key求值线程和计数
+ */
+class SendEmailAspectTest {
+
+    @SendMessage(value = "topic", key = "T(java.lang.Thread).currentThread().getName()", async = true)
+    public String threadKey() {
+        return "value";
+    }
+
+    @SendMessage(value = "topic", key = "#p0.length()")
+    public String badKey(String arg) {
+        return "value";
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void keyEvaluatedOnAsyncThread() throws Exception {
+        KafkaService kafkaService = mock(KafkaService.class);
+        when(kafkaService.sendAsync(anyString(), any(), isNull(), isNull(), any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "send-message-test"));
+        try {
+            SendEmailAspect aspect = new SendEmailAspect(kafkaService, new FastJsonMessageSerializer(), executor, false);
+            aspect.sendEmailSendHandler(joinPoint("threadKey"), "value");
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            verify(kafkaService).sendAsync(eq("topic"), any(), isNull(), isNull(), eq("send-message-test"), any());
+            assertEquals(1, aspect.getSentCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    void keyErrorCountedAsFailure() throws Exception {
+        KafkaService kafkaService = mock(KafkaService.class);
+        SendEmailAspect aspect = new SendEmailAspect(kafkaService);
+        JoinPoint joinPoint = joinPoint("badKey", String.class);
+        when(joinPoint.getArgs()).thenReturn(new Object[]{null});
+        aspect.sendEmailSendHandler(joinPoint, "value");
+        assertEquals(0, aspect.getSentCount());
+        assertEquals(1, aspect.getFailedCount());
+        verifyNoInteractions(kafkaService);
+    }
+
+    private JoinPoint joinPoint(String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+        Method method = SendEmailAspectTest.class.getMethod(name, parameterTypes);
+        MethodSignature signature = mock(MethodSignature.class);
+        when(signature.getMethod()).thenReturn(method);
+        JoinPoint joinPoint = mock(JoinPoint.class);
+        when(joinPoint.getSignature()).thenReturn(signature);
+        when(joinPoint.getArgs()).thenReturn(new Object[0]);
+        return joinPoint;
+    }
+}
@@ -0,0 +1,97 @@
+package com.chenjie.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.MESSAGE_ID_HEADER;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 消息ID去重：LRU窗口内丢弃、窗口外只计数、分段后并发去重
+ */
+class DeduplicatingRecordFilterStrategyTest {
+
+    @Test
+    void dropsDuplicateWithinWindow() {
+        DeduplicatingRecordFilterStrategy<String, String> strategy = new DeduplicatingRecordFilterStrategy<>(100, 0.01);
+        assertFalse(strategy.filter(record(1L)));
+        assertFalse(strategy.filter(record(2L)));
+        assertTrue(strategy.filter(record(1L)));
+        assertEquals(1, strategy.getDuplicateCount());
+        assertEquals(0, strategy.getProbableReplayCount());
+    }
+
+    @Test
+    void passesRecordsWithoutMessageId() {
+        DeduplicatingRecordFilterStrategy<String, String> strategy = new DeduplicatingRecordFilterStrategy<>(100, 0.01);
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("topic", 0, 0L, "k", "v");
+        assertFalse(strategy.filter(record));
+        assertFalse(strategy.filter(record));
+        record.headers().add(MESSAGE_ID_HEADER, new byte[]{1, 2});
+        assertFalse(strategy.filter(record));
+        assertEquals(0, strategy.getDuplicateCount());
+    }
+
+    @Test
+    void countsReplayBeyondWindowWithoutDropping() {
+        DeduplicatingRecordFilterStrategy<String, String> strategy = new DeduplicatingRecordFilterStrategy<>(10, 0.001, 1);
+        for (long id = 0; id < 15; id++) {
+            assertFalse(strategy.filter(record(id)));
+        }
+        // 0已被挤出LRU，但仍在布隆过滤器的上一代中
+        assertFalse(strategy.filter(record(0L)));
+        assertEquals(0, strategy.getDuplicateCount());
+        assertEquals(1, strategy.getProbableReplayCount());
+    }
+
+    @Test
+    void segmentsSplitWindow() {
+        assertEquals(1, new DeduplicatingRecordFilterStrategy<>(1000, 0.01, 16).getSegmentCount());
+        assertEquals(8, new DeduplicatingRecordFilterStrategy<>(100_000, 0.01, 10).getSegmentCount());
+        assertEquals(64, new DeduplicatingRecordFilterStrategy<>(1_000_000, 0.01, 1000).getSegmentCount());
+    }
+
+    @Test
+    void concurrentListenersDropEachDuplicateOnce() throws Exception {
+        DeduplicatingRecordFilterStrategy<String, String> strategy = new DeduplicatingRecordFilterStrategy<>(100_000, 0.01, 16);
+        int threads = 8;
+        int ids = 20_000;
+        AtomicInteger dropped = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                // 每个ID被两个线程各消费一次
+                int offset = t % 2;
+                futures.add(CompletableFuture.runAsync(() -> {
+                    for (long id = offset; id < ids; id += 2) {
+                        if (strategy.filter(record(id))) {
+                            dropped.incrementAndGet();
+                        }
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        // threads/2个线程消费同一批ID，每个ID只放行一次
+        assertEquals(ids * (threads / 2 - 1), dropped.get());
+        assertEquals(dropped.get(), strategy.getDuplicateCount());
+    }
+
+    private static ConsumerRecord<String, String> record(long id) {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("topic", 0, id, "k", "v");
+        record.headers().add(MESSAGE_ID_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(id).array());
+        return record;
+    }
+}
@@ -0,0 +1,140 @@
+package com.chenjie.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 按key并行处理：同key保序、不同key并行、失败后同key跳过并从第一条失败处nack
+ */
+class KeyOrderedProcessorTest {
+    private static final Duration NACK_SLEEP = Duration.ofMillis(100);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final KeyOrderedProcessor processor = new KeyOrderedProcessor(executor, NACK_SLEEP);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void keepsOrderPerKey() {
+        List<ConsumerRecord<String, Integer>> records = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            records.add(new ConsumerRecord<>("topic", 0, i, "key-" + (i % 4), i));
+        }
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        Acknowledgment ack = mock(Acknowledgment.class);
+        int processed = processor.process(records, ack, record -> {
+            TimeUnit.MICROSECONDS.sleep(100);
+            seen.computeIfAbsent(record.key(), k -> new CopyOnWriteArrayList<>()).add(record.value());
+        });
+        assertEquals(200, processed);
+        verify(ack).acknowledge();
+        seen.forEach((key, values) -> {
+            assertEquals(50, values.size());
+            for (int i = 1; i < values.size(); i++) {
+                assertTrue(values.get(i - 1) < values.get(i), key + " out of order: " + values);
+            }
+        });
+    }
+
+    @Test
+    void processesDifferentKeysInParallel() {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        List<ConsumerRecord<String, String>> records = List.of(
+                new ConsumerRecord<>("topic", 0, 0L, "a", "a"),
+                new ConsumerRecord<>("topic", 0, 1L, "b", "b"));
+        // 两条消息串行处理时await会超时失败
+        int processed = processor.process(records, null, record -> {
+            bothStarted.countDown();
+            if (!bothStarted.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("records with different keys did not run in parallel");
+            }
+        });
+        assertEquals(2, processed);
+    }
+
+    @Test
+    void skipsSameKeyAfterFailureAndNacksFirstFailed() {
+        List<ConsumerRecord<byte[], String>> records = List.of(
+                new ConsumerRecord<>("topic", 0, 0L, new byte[]{1}, "ok"),
+                new ConsumerRecord<>("topic", 0, 1L, new byte[]{2}, "fail"),
+                new ConsumerRecord<>("topic", 0, 2L, new byte[]{3}, "other"),
+                new ConsumerRecord<>("topic", 0, 3L, new byte[]{2}, "after-fail"));
+        Set<String> handled = ConcurrentHashMap.newKeySet();
+        Acknowledgment ack = mock(Acknowledgment.class);
+        int processed = processor.process(records, ack, record -> {
+            if ("fail".equals(record.value())) {
+                throw new IllegalStateException("boom");
+            }
+            handled.add(record.value());
+        });
+        assertEquals(1, processed);
+        // byte[] key按内容比较，与失败消息同key的后续消息不处理
+        assertEquals(Set.of("ok", "other"), handled);
+        verify(ack).nack(1, NACK_SLEEP);
+        verify(ack, never()).acknowledge();
+    }
+
+    @Test
+    void nacksLowestFailedIndexAcrossPartitions() {
+        List<ConsumerRecord<String, String>> records = List.of(
+                new ConsumerRecord<>("topic", 0, 10L, "a", "ok"),
+                new ConsumerRecord<>("topic", 1, 20L, "b", "fail"),
+                new ConsumerRecord<>("topic", 0, 11L, "c", "other-partition"),
+                new ConsumerRecord<>("topic", 2, 30L, "d", "fail"));
+        Set<String> handled = ConcurrentHashMap.newKeySet();
+        Acknowledgment ack = mock(Acknowledgment.class);
+        int processed = processor.process(records, ack, record -> {
+            if ("fail".equals(record.value())) {
+                throw new IllegalStateException("boom");
+            }
+            handled.add(record.value());
+        });
+        assertEquals(1, processed);
+        // nack按整批下标生效，分区0中已处理成功的offset 11也会重新投递
+        assertEquals(Set.of("ok", "other-partition"), handled);
+        verify(ack).nack(1, NACK_SLEEP);
+    }
+
+    @Test
+    void throwsBatchListenerFailedWithoutAck() {
+        List<ConsumerRecord<String, String>> records = List.of(
+                new ConsumerRecord<>("topic", 0, 0L, null, "ok"),
+                new ConsumerRecord<>("topic", 0, 1L, null, "fail"));
+        BatchListenerFailedException e = assertThrows(BatchListenerFailedException.class,
+                () -> processor.process(records, null, record -> {
+                    if ("fail".equals(record.value())) {
+                        throw new IllegalStateException("boom");
+                    }
+                }));
+        assertEquals(1, e.getIndex());
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    @Test
+    void emptyBatchDoesNothing() {
+        Acknowledgment ack = mock(Acknowledgment.class);
+        assertEquals(0, processor.process(List.<ConsumerRecord<String, String>>of(), ack, record -> fail("no records")));
+        verifyNoInteractions(ack);
+    }
+}
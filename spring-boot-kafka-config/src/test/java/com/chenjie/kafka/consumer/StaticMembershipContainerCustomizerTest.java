@@ -0,0 +1,70 @@
+package com.chenjie.kafka.consumer;
+
+import com.chenjie.kafka.autoconfigure.ConsumerPlacement;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 静态成员id只按监听容器设置，不进入共享的consumer工厂配置
+ */
+class StaticMembershipContainerCustomizerTest {
+
+    private static DefaultKafkaConsumerFactory<Object, Object> factory() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+        new ConsumerPlacement(null, true, "pod-0").applyTo(properties);
+        return new DefaultKafkaConsumerFactory<>(properties);
+    }
+
+    private static ConcurrentMessageListenerContainer<Object, Object> container(DefaultKafkaConsumerFactory<Object, Object> factory,
+                                                                              String id) {
+        ConcurrentMessageListenerContainer<Object, Object> container =
+                new ConcurrentMessageListenerContainer<>(factory, new ContainerProperties("topic"));
+        container.setBeanName(id);
+        return container;
+    }
+
+    private static String instanceId(ConcurrentMessageListenerContainer<Object, Object> container) {
+        return container.getContainerProperties().getKafkaConsumerProperties().getProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG);
+    }
+
+    @Test
+    void factoryConfigHasNoInstanceId() {
+        assertFalse(factory().getConfigurationProperties().containsKey(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG));
+    }
+
+    @Test
+    void eachContainerGetsOwnId() {
+        DefaultKafkaConsumerFactory<Object, Object> factory = factory();
+        StaticMembershipContainerCustomizer customizer = new StaticMembershipContainerCustomizer().register(factory, "pod-0");
+        ConcurrentMessageListenerContainer<Object, Object> orders = container(factory, "orders");
+        ConcurrentMessageListenerContainer<Object, Object> payments = container(factory, "payments");
+        customizer.configure(orders);
+        customizer.configure(payments);
+        assertEquals("pod-0-orders", instanceId(orders));
+        assertEquals("pod-0-payments", instanceId(payments));
+        assertFalse(factory.getConfigurationProperties().containsKey(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG));
+    }
+
+    @Test
+    void unregisteredFactoryAndExplicitIdUnchanged() {
+        DefaultKafkaConsumerFactory<Object, Object> registered = factory();
+        StaticMembershipContainerCustomizer customizer = new StaticMembershipContainerCustomizer().register(registered, "pod-0");
+        ConcurrentMessageListenerContainer<Object, Object> other = container(factory(), "other");
+        customizer.configure(other);
+        assertNull(instanceId(other));
+
+        ConcurrentMessageListenerContainer<Object, Object> explicit = container(registered, "explicit");
+        explicit.getContainerProperties().getKafkaConsumerProperties().setProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG, "fixed");
+        customizer.configure(explicit);
+        assertEquals("fixed", instanceId(explicit));
+    }
+}
@@ -0,0 +1,58 @@
+package com.chenjie.kafka.outbox;
+
+import com.chenjie.kafka.service.BatchSendResult;
+import com.chenjie.kafka.service.KafkaService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/**
+ * KafkaOutbox的relay发送和停止后的行为
+ */
+class KafkaOutboxTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void relaysAppendedMessages() throws Exception {
+        KafkaService kafkaService = mock(KafkaService.class);
+        BatchSendResult result = mock(BatchSendResult.class);
+        when(result.isAllSucceeded()).thenReturn(true);
+        when(kafkaService.sendAll(anyCollection())).thenReturn(CompletableFuture.completedFuture(result));
+        KafkaOutbox outbox = new KafkaOutbox(new SegmentLog(dir, 4096), kafkaService, 100, 10, 1000, 1000);
+        outbox.start();
+        try {
+            outbox.append("topic", "k", "a");
+            outbox.append("topic", null, new byte[]{1, 2});
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (outbox.getDeliveredCount() < 2 && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            assertEquals(2, outbox.getDeliveredCount());
+            assertEquals(0, outbox.getBacklog());
+            verify(kafkaService, atLeastOnce()).sendAll((Collection) anyCollection());
+        } finally {
+            outbox.stop();
+        }
+    }
+
+    @Test
+    void rejectsAppendAfterStop() throws Exception {
+        KafkaOutbox outbox = new KafkaOutbox(new SegmentLog(dir, 4096), mock(KafkaService.class), 100, 10, 1000, 1000);
+        outbox.start();
+        outbox.stop();
+        assertFalse(outbox.isRunning());
+        assertThrows(IllegalStateException.class, () -> outbox.append("topic", null, "a"));
+        assertThrows(IllegalStateException.class, outbox::start);
+    }
+}
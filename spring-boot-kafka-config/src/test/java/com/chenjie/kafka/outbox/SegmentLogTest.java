@@ -0,0 +1,163 @@
+package com.chenjie.kafka.outbox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SegmentLog的写入读取、跨segment、重启恢复和损坏记录处理
+ */
+class SegmentLogTest {
+    private static final int SEGMENT_BYTES = 256;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripAcrossSegments() throws IOException {
+        try (SegmentLog log = new SegmentLog(dir, SEGMENT_BYTES)) {
+            for (int i = 0; i < 20; i++) {
+                log.append(payload(i));
+            }
+            assertEquals(20, log.getBacklog());
+            assertTrue(segments().size() > 1);
+
+            List<SegmentLog.Entry> entries = log.read(log.getCommitted(), 100);
+            assertEquals(20, entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                assertEquals("record-" + i, text(entries.get(i)));
+                assertFalse(entries.get(i).isCorrupt());
+            }
+
+            log.commit(entries.get(9).getNext(), 10);
+            assertEquals(10, log.getBacklog());
+            assertEquals("record-10", text(log.read(log.getCommitted(), 1).get(0)));
+            log.commit(entries.get(19).getNext(), 10);
+            assertEquals(0, log.getBacklog());
+            assertTrue(log.read(log.getCommitted(), 100).isEmpty());
+            // 已消费完的segment被删除，只剩当前segment
+            assertEquals(1, segments().size());
+        }
+    }
+
+    @Test
+    void readsWhileAppending() throws Exception {
+        int total = 2000;
+        try (SegmentLog log = new SegmentLog(dir, SEGMENT_BYTES)) {
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < total; i++) {
+                        log.append(payload(i));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.start();
+            // 读取不持有append的锁，读到的记录完整且按顺序
+            SegmentLog.Position position = log.getCommitted();
+            int read = 0;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (read < total && System.nanoTime() < deadline) {
+                for (SegmentLog.Entry entry : log.read(position, 64)) {
+                    assertFalse(entry.isCorrupt());
+                    assertEquals("record-" + read++, text(entry));
+                    position = entry.getNext();
+                }
+            }
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+            assertEquals(total, read);
+            assertEquals(0, log.getCorruptCount());
+        }
+    }
+
+    @Test
+    void recoversUncommittedRecordsAfterRestart() throws IOException {
+        try (SegmentLog log = new SegmentLog(dir, SEGMENT_BYTES)) {
+            for (int i = 0; i < 12; i++) {
+                log.append(payload(i));
+            }
+            List<SegmentLog.Entry> entries = log.read(log.getCommitted(), 5);
+            log.commit(entries.get(4).getNext(), 5);
+        }
+        try (SegmentLog log = new SegmentLog(dir, SEGMENT_BYTES)) {
+            assertEquals(7, log.getBacklog());
+            log.append(payload(12));
+            List<String> texts = log.read(log.getCommitted(), 100).stream().map(SegmentLogTest::text).collect(Collectors.toList());
+            assertEquals(8, texts.size());
+            assertEquals("record-5", texts.get(0));
+            assertEquals("record-12", texts.get(7));
+        }
+    }
+
+    @Test
+    void skipsCorruptRecordInActiveSegment() throws IOException {
+        try (SegmentLog log = new SegmentLog(dir, SEGMENT_BYTES)) {
+            for (int i = 0; i < 3; i++) {
+                log.append(payload(i));
+            }
+        }
+        // 改坏第二条记录的payload，长度不变
+        Path segment = segments().get(0);
+        int second = 8 + payload(0).length;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), second + 8);
+        }
+        try (SegmentLog log = new SegmentLog(dir, SEGMENT_BYTES)) {
+            assertEquals(3, log.getBacklog());
+            assertEquals(1, log.getCorruptCount());
+            List<SegmentLog.Entry> entries = log.read(log.getCommitted(), 100);
+            assertEquals(3, entries.size());
+            assertFalse(entries.get(0).isCorrupt());
+            assertTrue(entries.get(1).isCorrupt());
+            assertEquals("record-2", text(entries.get(2)));
+            // 重复读取不重复计数
+            assertEquals(1, log.getCorruptCount());
+
+            log.commit(entries.get(1).getNext(), 2);
+            assertEquals("record-2", text(log.read(log.getCommitted(), 100).get(0)));
+        }
+        try (Stream<Path> files = Files.list(dir.resolve("quarantine"))) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void rejectsAppendAndReadAfterClose() throws IOException {
+        SegmentLog log = new SegmentLog(dir, SEGMENT_BYTES);
+        log.append(payload(0));
+        log.close();
+        log.close();
+        assertThrows(IllegalStateException.class, () -> log.append(payload(1)));
+        assertThrows(IllegalStateException.class, () -> log.read(log.getCommitted(), 1));
+        assertThrows(IllegalStateException.class, log::flush);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".seg")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] payload(int i) {
+        return String.format("record-%d", i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(SegmentLog.Entry entry) {
+        return new String(entry.getPayload(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,104 @@
+package com.chenjie.kafka.service;
+
+import com.chenjie.kafka.autoconfigure.ProducerProfile;
+import com.chenjie.kafka.exception.KafkaBackpressureException;
+import com.chenjie.kafka.utils.TopicNameResolver;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.SPRING_KAFKA_PRODUCER_NAMESPACE_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+/**
+ * 隔离舱的topic匹配、独立producer配置，以及窗口满时不影响其它命名空间
+ */
+class BulkheadTest {
+
+    @Test
+    void matchesNamespacesAndTopics() {
+        Bulkhead.Properties properties = new Bulkhead.Properties();
+        properties.setNamespaces(List.of("tenant"));
+        properties.setTopics(List.of("shared_orders"));
+        Bulkhead<String, String> bulkhead = new Bulkhead<>("tenant", properties, null, null, null, null);
+        assertTrue(bulkhead.matches("tenant_orders"));
+        assertTrue(bulkhead.matches("shared_orders"));
+        assertFalse(bulkhead.matches("shared_payments"));
+        assertFalse(bulkhead.matches("tenant2_orders"));
+    }
+
+    @Test
+    void namespaceDoesNotMatchLongerNamespaceWithSamePrefix() {
+        Bulkhead.Properties properties = new Bulkhead.Properties();
+        properties.setNamespaces(List.of("bulk"));
+        Bulkhead<String, String> bulkhead = new Bulkhead<>("bulk", properties, null, null, null, null);
+        assertTrue(bulkhead.matches(TopicNameResolver.resolve("bulk", "orders")));
+        assertFalse(bulkhead.matches(TopicNameResolver.resolve("bulk_b", "orders")));
+        // 没有记录命名空间的topic按前缀匹配
+        assertTrue(bulkhead.matches("bulk_refunds"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void dedicatedTemplateOverridesClientIdAndProfile() {
+        assertNull(Bulkhead.dedicatedTemplate("tenant", null, null));
+        ProducerFactory<String, String> factory = mock(ProducerFactory.class);
+        ProducerFactory<String, String> copy = mock(ProducerFactory.class);
+        when(factory.getConfigurationProperties()).thenReturn(Map.of(ProducerConfig.CLIENT_ID_CONFIG, "app"));
+        when(factory.copyWithConfigurationOverride(anyMap())).thenReturn(copy);
+        KafkaTemplate<String, String> shared = new KafkaTemplate<>(factory);
+
+        KafkaTemplate<String, String> dedicated = Bulkhead.dedicatedTemplate("tenant", shared, ProducerProfile.LOW_LATENCY);
+        assertSame(copy, dedicated.getProducerFactory());
+        verify(factory).copyWithConfigurationOverride(argThat(overrides ->
+                "app-tenant".equals(overrides.get(ProducerConfig.CLIENT_ID_CONFIG))
+                        && overrides.entrySet().containsAll(ProducerProfile.LOW_LATENCY.getSettings().entrySet())));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void fullBulkheadDoesNotBlockOtherNamespaces() throws Exception {
+        KafkaTemplate<String, String> template = mock(KafkaTemplate.class);
+        CompletableFuture<SendResult<String, String>> pending = new CompletableFuture<>();
+        when(template.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            ProducerRecord<String, String> record = invocation.getArgument(0);
+            return record.topic().startsWith("tenant_") ? pending
+                    : CompletableFuture.completedFuture(new SendResult<>(record, null));
+        });
+        MockEnvironment env = new MockEnvironment()
+                .withProperty(SPRING_KAFKA_PRODUCER_NAMESPACE_KEY, "test")
+                .withProperty("spring.cloud.kubernetes.enabled", "false")
+                .withProperty("spring.kafka.producer.bulkheads.tenant.namespaces", "tenant")
+                .withProperty("spring.kafka.producer.bulkheads.tenant.max-records", "1")
+                .withProperty("spring.kafka.producer.bulkheads.tenant.overflow-policy", "reject");
+        KafkaService<String, String> kafkaService = new KafkaService<>(template, env);
+        kafkaService.start();
+        try {
+            assertEquals(1, kafkaService.getBulkheads().size());
+            kafkaService.sendAsync("orders", "tenant", null, null, null, "a");
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> kafkaService.sendAsync("orders", "tenant", null, null, null, "b").get(5, TimeUnit.SECONDS));
+            assertInstanceOf(KafkaBackpressureException.class, e.getCause());
+            assertEquals(1, kafkaService.getBulkheads().get(0).getWindow().getInFlightRecords());
+
+            kafkaService.sendAsync("orders", "test", null, null, null, "c").get(5, TimeUnit.SECONDS);
+            assertEquals(0, kafkaService.getSendWindow().getInFlightRecords());
+        } finally {
+            pending.complete(null);
+            kafkaService.drain(1000);
+        }
+    }
+}
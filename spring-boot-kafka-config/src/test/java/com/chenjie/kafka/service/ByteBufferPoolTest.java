@@ -0,0 +1,99 @@
+package com.chenjie.kafka.service;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteBufferSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.SPRING_KAFKA_PRODUCER_NAMESPACE_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 缓冲区池的复用、上限，以及sendPooled在发送完成或失败后归还缓冲区
+ */
+class ByteBufferPoolTest {
+
+    @Test
+    void reusesReleasedBuffers() {
+        ByteBufferPool pool = new ByteBufferPool(64, 2);
+        ByteBuffer first = pool.acquire();
+        first.putInt(42);
+        pool.release(first);
+        assertEquals(1, pool.getPooled());
+
+        ByteBuffer second = pool.acquire();
+        assertSame(first, second);
+        assertEquals(0, second.position());
+        assertEquals(64, second.remaining());
+        assertEquals(1, pool.getAllocated());
+    }
+
+    @Test
+    void doesNotPoolForeignOrOversizedBuffers() {
+        ByteBufferPool pool = new ByteBufferPool(64, 1);
+        ByteBuffer large = pool.acquire(128);
+        assertEquals(128, large.capacity());
+        pool.release(large);
+        pool.release(ByteBuffer.allocate(64).asReadOnlyBuffer());
+        pool.release(null);
+        assertEquals(0, pool.getPooled());
+
+        // 池满后归还的缓冲区直接丢弃
+        pool.release(pool.acquire());
+        pool.release(ByteBuffer.allocate(64));
+        assertEquals(1, pool.getPooled());
+        assertEquals(2, pool.getAllocated());
+    }
+
+    @Test
+    void rejectsInvalidSizes() {
+        assertThrows(IllegalArgumentException.class, () -> new ByteBufferPool(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ByteBufferPool(1, 0));
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void sendPooledReleasesBufferWhenDone() throws Exception {
+        ProducerFactory factory = mock(ProducerFactory.class);
+        when(factory.getConfigurationProperties()).thenReturn(Map.of(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteBufferSerializer.class));
+        KafkaTemplate template = mock(KafkaTemplate.class);
+        when(template.getProducerFactory()).thenReturn(factory);
+        CompletableFuture<SendResult> pending = new CompletableFuture<>();
+        when(template.send(any(ProducerRecord.class))).thenReturn(pending);
+        MockEnvironment env = new MockEnvironment()
+                .withProperty(SPRING_KAFKA_PRODUCER_NAMESPACE_KEY, "test")
+                .withProperty("spring.cloud.kubernetes.enabled", "false");
+        KafkaService<String, Object> kafkaService = new KafkaService<>(template, env);
+        kafkaService.start();
+        try {
+            ByteBufferPool pool = kafkaService.getBufferPool();
+            CompletableFuture<SendResult<String, ByteBuffer>> future = kafkaService.sendPooled("topic", null, buffer -> buffer.put((byte) 1));
+            assertEquals(0, pool.getPooled());
+            pending.complete(null);
+            future.get(5, TimeUnit.SECONDS);
+            assertEquals(1, pool.getPooled());
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> kafkaService.sendPooled("topic", null, buffer -> {
+                throw new IllegalStateException("writer failed");
+            }).get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+            assertEquals(1, pool.getPooled());
+            assertEquals(1, pool.getAllocated());
+        } finally {
+            kafkaService.drain(1000);
+        }
+    }
+}
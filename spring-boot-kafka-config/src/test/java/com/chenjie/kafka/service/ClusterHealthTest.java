@@ -0,0 +1,90 @@
+package com.chenjie.kafka.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ClusterHealth熔断状态迁移，时间由测试推进
+ */
+class ClusterHealthTest {
+    private final AtomicLong now = new AtomicLong(1);
+    private final ClusterHealth health = new ClusterHealth("primary", 0.5, 4, 10_000, 1_000, 100, now::get);
+
+    private void advanceMs(long ms) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(ms));
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            health.record(1, false, health.acquire());
+        }
+    }
+
+    @Test
+    void closedToOpenToHalfOpenToClosed() {
+        assertEquals(ClusterHealth.State.CLOSED, health.getState());
+        fail(3);
+        assertEquals(ClusterHealth.State.CLOSED, health.getState(), "minimumCalls not reached");
+        fail(1);
+        assertEquals(ClusterHealth.State.OPEN, health.getState());
+        assertEquals(ClusterHealth.Permit.DENIED, health.acquire());
+
+        advanceMs(999);
+        assertEquals(ClusterHealth.State.OPEN, health.getState());
+        advanceMs(1);
+        // 不申请许可，只按时间推进
+        assertEquals(ClusterHealth.State.HALF_OPEN, health.getState());
+
+        assertEquals(ClusterHealth.Permit.PROBE, health.acquire());
+        assertEquals(ClusterHealth.Permit.DENIED, health.acquire(), "only one probe at a time");
+        health.record(1, true, ClusterHealth.Permit.PROBE);
+        assertEquals(ClusterHealth.State.CLOSED, health.getState());
+        assertEquals(ClusterHealth.Permit.NORMAL, health.acquire());
+    }
+
+    @Test
+    void failedProbeReopens() {
+        fail(4);
+        advanceMs(1_000);
+        assertEquals(ClusterHealth.Permit.PROBE, health.acquire());
+        health.record(1, false, ClusterHealth.Permit.PROBE);
+        assertEquals(ClusterHealth.State.OPEN, health.getState());
+        assertEquals(ClusterHealth.Permit.DENIED, health.acquire());
+        advanceMs(1_000);
+        assertEquals(ClusterHealth.Permit.PROBE, health.acquire());
+    }
+
+    @Test
+    void releasedProbeAllowsNextProbe() {
+        fail(4);
+        advanceMs(1_000);
+        assertEquals(ClusterHealth.Permit.PROBE, health.acquire());
+        // 探测消息被背压拒绝，没有到达集群
+        health.release(ClusterHealth.Permit.PROBE);
+        assertEquals(ClusterHealth.State.HALF_OPEN, health.getState());
+        assertEquals(ClusterHealth.Permit.PROBE, health.acquire());
+    }
+
+    @Test
+    void failuresOutsideWindowAreForgotten() {
+        fail(3);
+        advanceMs(10_000);
+        fail(1);
+        assertEquals(ClusterHealth.State.CLOSED, health.getState());
+    }
+
+    @Test
+    void p99ReflectsSlowCalls() {
+        for (int i = 0; i < 100; i++) {
+            health.record(TimeUnit.MILLISECONDS.toNanos(i < 98 ? 1 : 500), true, ClusterHealth.Permit.NORMAL);
+        }
+        // p99最多每秒重新计算一次
+        advanceMs(1_000);
+        assertTrue(health.isSlow());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), health.getP99Nanos());
+    }
+}
@@ -0,0 +1,86 @@
+package com.chenjie.kafka.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ClusterRouter的路由选择和双活集群的恢复
+ */
+class ClusterRouterTest {
+    private final AtomicLong now = new AtomicLong(1);
+    private final ClusterHealth primary = new ClusterHealth("primary", 0.5, 2, 10_000, 1_000, 100, now::get);
+    private final ClusterHealth aa = new ClusterHealth("aa", 0.5, 2, 10_000, 1_000, 100, now::get);
+    private final ClusterRouter router = new ClusterRouter(primary, aa, true);
+
+    private static void trip(ClusterHealth health) {
+        health.record(1, false, ClusterHealth.Permit.NORMAL);
+        health.record(1, false, ClusterHealth.Permit.NORMAL);
+        assertEquals(ClusterHealth.State.OPEN, health.getState());
+    }
+
+    private void advanceMs(long ms) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(ms));
+    }
+
+    @Test
+    void primaryByDefault() {
+        ClusterRouter.Route route = router.choose();
+        assertSame(primary, route.getHealth());
+        assertEquals(ClusterHealth.Permit.NORMAL, route.getPermit());
+    }
+
+    @Test
+    void openPrimaryRoutesToAa() {
+        trip(primary);
+        ClusterRouter.Route route = router.choose();
+        assertSame(aa, route.getHealth());
+        assertSame(aa, router.failoverOf(primary));
+        assertNull(router.failoverOf(aa));
+    }
+
+    @Test
+    void openAaRecoversWhilePrimaryHealthy() {
+        trip(aa);
+        assertNull(router.failoverOf(primary));
+        assertSame(primary, router.choose().getHealth());
+
+        advanceMs(1_000);
+        ClusterRouter.Route probe = router.choose();
+        assertSame(aa, probe.getHealth());
+        assertEquals(ClusterHealth.Permit.PROBE, probe.getPermit());
+        // 探测进行中，其它消息仍然发往主集群
+        assertSame(primary, router.choose().getHealth());
+
+        aa.record(1, true, probe.getPermit());
+        assertEquals(ClusterHealth.State.CLOSED, aa.getState());
+        assertSame(aa, router.failoverOf(primary));
+    }
+
+    @Test
+    void probeRejectedByBackpressureIsRetried() {
+        trip(primary);
+        trip(aa);
+        advanceMs(1_000);
+        ClusterRouter.Route probe = router.choose();
+        assertSame(primary, probe.getHealth());
+        assertEquals(ClusterHealth.Permit.PROBE, probe.getPermit());
+
+        probe.getHealth().release(probe.getPermit());
+        ClusterRouter.Route retry = router.choose();
+        assertSame(primary, retry.getHealth());
+        assertEquals(ClusterHealth.Permit.PROBE, retry.getPermit());
+    }
+
+    @Test
+    void bothOpenFallsBackToPrimary() {
+        trip(primary);
+        trip(aa);
+        ClusterRouter.Route route = router.choose();
+        assertSame(primary, route.getHealth());
+        assertEquals(ClusterHealth.Permit.NORMAL, route.getPermit());
+    }
+}
@@ -0,0 +1,80 @@
+package com.chenjie.kafka.service;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.SPRING_KAFKA_PRODUCER_NAMESPACE_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * sendBatch的发送顺序和headers，KafkaTemplate直接返回完成的future
+ */
+class KafkaServiceBatchTest {
+    private final List<ProducerRecord<String, String>> sent = new CopyOnWriteArrayList<>();
+    private KafkaService<String, String> kafkaService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        KafkaTemplate<String, String> template = mock(KafkaTemplate.class);
+        when(template.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            ProducerRecord<String, String> record = invocation.getArgument(0);
+            sent.add(record);
+            return CompletableFuture.completedFuture(new SendResult<>(record, null));
+        });
+        MockEnvironment env = new MockEnvironment()
+                .withProperty(SPRING_KAFKA_PRODUCER_NAMESPACE_KEY, "test")
+                .withProperty("spring.cloud.kubernetes.enabled", "false");
+        kafkaService = new KafkaService<>(template, env);
+        kafkaService.start();
+    }
+
+    @Test
+    void groupsByPartitionWhenAllPartitioned() throws Exception {
+        kafkaService.sendBatch("topic", List.of(
+                new ProducerRecord<>("ignored", 1, "k", "a"),
+                new ProducerRecord<>("ignored", 0, "k", "b"),
+                new ProducerRecord<>("ignored", 1, "k", "c"))).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("b", "a", "c"), values());
+    }
+
+    @Test
+    void keepsInputOrderWhenAnyUnpartitioned() throws Exception {
+        kafkaService.sendBatch("topic", List.of(
+                new ProducerRecord<>("ignored", "k", "a"),
+                new ProducerRecord<>("ignored", 0, "k", "b"),
+                new ProducerRecord<>("ignored", "k", "c"))).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("a", "b", "c"), values());
+    }
+
+    @Test
+    void doesNotMutateCallerHeaders() throws Exception {
+        ProducerRecord<String, String> record = new ProducerRecord<>("topic", "k", "a");
+        record.headers().add("trace", new byte[]{1});
+        kafkaService.sendBatch("topic", List.of(record)).get(5, TimeUnit.SECONDS);
+        kafkaService.sendAsync(record).get(5, TimeUnit.SECONDS);
+        assertEquals(1, record.headers().toArray().length);
+        assertEquals(2, sent.size());
+        sent.forEach(s -> {
+            assertNotSame(record.headers(), s.headers());
+            assertNotNull(s.headers().lastHeader("trace"));
+        });
+    }
+
+    private List<String> values() {
+        return sent.stream().map(ProducerRecord::value).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,110 @@
+package com.chenjie.kafka.service;
+
+import com.chenjie.kafka.exception.KafkaBackpressureException;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * workers队列满时DROP_OLDEST丢弃的消息：调用方的future以背压异常结束，发送窗口和在途计数归零
+ */
+class KafkaServiceDropOldestTest {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private KafkaService<String, String> kafkaService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        KafkaTemplate<String, String> template = mock(KafkaTemplate.class);
+        when(template.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            ProducerRecord<String, String> record = invocation.getArgument(0);
+            if ("blocking".equals(record.value())) {
+                // 占住唯一的worker线程
+                started.countDown();
+                release.await(10, TimeUnit.SECONDS);
+            }
+            return CompletableFuture.completedFuture(new SendResult<>(record, null));
+        });
+        MockEnvironment env = new MockEnvironment()
+                .withProperty(SPRING_KAFKA_PRODUCER_NAMESPACE_KEY, "test")
+                .withProperty("spring.cloud.kubernetes.enabled", "false")
+                .withProperty(SPRING_KAFKA_PRODUCER_DISPATCH_MODE, "executor")
+                .withProperty(SPRING_KAFKA_PRODUCER_THREADS_SIZE, "1")
+                .withProperty(SPRING_KAFKA_PRODUCER_THREADS_QUEUE_CAPACITY, "1")
+                .withProperty(SPRING_KAFKA_PRODUCER_WINDOW_OVERFLOW_POLICY, "drop_oldest");
+        kafkaService = new KafkaService<>(template, env);
+        kafkaService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        kafkaService.drain(1000);
+    }
+
+    @Test
+    void droppedSendAsyncFailsAndReleasesWindow() throws Exception {
+        CompletableFuture<SendResult<String, String>> blocking = kafkaService.sendAsync("topic", "blocking");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<SendResult<String, String>> dropped = kafkaService.sendAsync("topic", "dropped");
+        CompletableFuture<SendResult<String, String>> queued = kafkaService.sendAsync("topic", "queued");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> dropped.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(KafkaBackpressureException.class, e.getCause());
+        assertEventually(() -> kafkaService.getSendWindow().getInFlightRecords() == 2);
+
+        release.countDown();
+        blocking.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+        assertEventually(() -> kafkaService.getSendWindow().getInFlightRecords() == 0);
+        assertEventually(() -> kafkaService.getSendWindow().getInFlightBytes() == 0);
+        assertEventually(() -> kafkaService.getInFlightCount() == 0);
+    }
+
+    @Test
+    void droppedLegacySendCompletesInFlight() throws Exception {
+        Future<CompletableFuture<SendResult<String, String>>> blocking = kafkaService.send("topic", "blocking");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<CompletableFuture<SendResult<String, String>>> dropped = kafkaService.send("topic", "dropped");
+        Future<CompletableFuture<SendResult<String, String>>> queued = kafkaService.send("topic", "queued");
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> dropped.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(KafkaBackpressureException.class, e.getCause());
+
+        release.countDown();
+        blocking.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+        assertEventually(() -> kafkaService.getSendWindow().getInFlightRecords() == 0);
+        assertEquals(0L, kafkaService.drain(1000));
+    }
+
+    /**
+     * 发送窗口和在途计数在future完成后的回调中释放，可能晚于调用方的get返回
+     */
+    private static void assertEventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
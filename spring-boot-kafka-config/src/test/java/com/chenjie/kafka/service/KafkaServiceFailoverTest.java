@@ -0,0 +1,70 @@
+package com.chenjie.kafka.service;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 主集群发送失败后的故障转移重发在workers线程上执行，不占用producer的I/O线程
+ */
+class KafkaServiceFailoverTest {
+    private static final String IO_THREAD = "kafka-producer-network-thread | test";
+
+    private final ExecutorService ioThread = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, IO_THREAD));
+    private final AtomicReference<String> resendThread = new AtomicReference<>();
+    private KafkaService<String, String> kafkaService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        KafkaTemplate<String, String> primary = mock(KafkaTemplate.class);
+        when(primary.send(any(ProducerRecord.class))).thenAnswer(invocation ->
+                CompletableFuture.supplyAsync(() -> {
+                    throw new TimeoutException("primary unavailable");
+                }, ioThread));
+        KafkaTemplate<String, String> aa = mock(KafkaTemplate.class);
+        when(aa.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            resendThread.set(Thread.currentThread().getName());
+            return CompletableFuture.completedFuture(new SendResult<>(invocation.getArgument(0), null));
+        });
+        MockEnvironment env = new MockEnvironment()
+                .withProperty(SPRING_KAFKA_PRODUCER_NAMESPACE_KEY, "test")
+                .withProperty("spring.cloud.kubernetes.enabled", "false")
+                .withProperty(SPRING_KAFKA_PRODUCER_ROUTING_ENABLED, "true");
+        kafkaService = new KafkaService<>(primary, aa, env);
+        kafkaService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        kafkaService.drain(1000);
+        ioThread.shutdownNow();
+    }
+
+    @Test
+    void failoverResendRunsOnWorkers() throws Exception {
+        SendResult<String, String> result = kafkaService.sendAsync("topic", "value").get(5, TimeUnit.SECONDS);
+
+        assertEquals("test_topic", result.getProducerRecord().topic());
+        assertNotNull(resendThread.get());
+        assertNotEquals(IO_THREAD, resendThread.get());
+        assertEquals(0, kafkaService.getInFlightCount());
+    }
+}
@@ -0,0 +1,78 @@
+package com.chenjie.kafka.service;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.SPRING_KAFKA_PRODUCER_NAMESPACE_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * KafkaService的drain和停止后的行为，KafkaTemplate返回的future由测试手动完成
+ */
+class KafkaServiceLifecycleTest {
+    private final List<CompletableFuture<SendResult<String, String>>> sent = new CopyOnWriteArrayList<>();
+    private KafkaService<String, String> kafkaService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        KafkaTemplate<String, String> template = mock(KafkaTemplate.class);
+        when(template.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            CompletableFuture<SendResult<String, String>> future = new CompletableFuture<>();
+            sent.add(future);
+            return future;
+        });
+        MockEnvironment env = new MockEnvironment()
+                .withProperty(SPRING_KAFKA_PRODUCER_NAMESPACE_KEY, "test")
+                .withProperty("spring.cloud.kubernetes.enabled", "false");
+        kafkaService = new KafkaService<>(template, env);
+        kafkaService.start();
+    }
+
+    @Test
+    void drainWaitsForInFlightRecords() throws Exception {
+        kafkaService.sendAsync("topic", "a");
+        assertEquals(1, kafkaService.getInFlightCount());
+        CompletableFuture<Long> drain = CompletableFuture.supplyAsync(() -> kafkaService.drain(10_000));
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertFalse(drain.isDone());
+        long completedAt = System.nanoTime();
+        sent.get(0).complete(null);
+        assertEquals(0L, drain.get(5, TimeUnit.SECONDS));
+        // 被唤醒而不是等到超时
+        assertTrue(System.nanoTime() - completedAt < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    void legacySendsCountedAsLost() throws Exception {
+        kafkaService.send("topic", "a").get(5, TimeUnit.SECONDS);
+        kafkaService.sendAsync("topic", "b");
+        assertEquals(2, kafkaService.getInFlightCount());
+        assertEquals(2L, kafkaService.drain(50));
+    }
+
+    @Test
+    void rejectsAfterDrain() throws Exception {
+        assertEquals(0L, kafkaService.drain(100));
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> kafkaService.sendAsync("topic", "a").get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        e = assertThrows(ExecutionException.class,
+                () -> kafkaService.send("topic", "a").get(1, TimeUnit.SECONDS).get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertThrows(IllegalStateException.class, kafkaService::start);
+    }
+}
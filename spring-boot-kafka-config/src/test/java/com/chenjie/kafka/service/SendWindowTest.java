@@ -0,0 +1,185 @@
+package com.chenjie.kafka.service;
+
+import com.chenjie.kafka.exception.KafkaBackpressureException;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.support.SendResult;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SendWindow的条数/字节数上限和各溢出策略
+ */
+class SendWindowTest {
+    /**
+     * 记录交给sender的消息，future由测试手动完成
+     */
+    private final List<ProducerRecord<Object, Object>> sent = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<SendResult<Object, Object>>> inFlight = new CopyOnWriteArrayList<>();
+    private final List<String> sendThreads = new CopyOnWriteArrayList<>();
+    private final Function<ProducerRecord<Object, Object>, CompletableFuture<SendResult<Object, Object>>> sender = record -> {
+        CompletableFuture<SendResult<Object, Object>> future = new CompletableFuture<>();
+        sent.add(record);
+        inFlight.add(future);
+        sendThreads.add(Thread.currentThread().getName());
+        return future;
+    };
+
+    private static ProducerRecord<Object, Object> record(Object value) {
+        return new ProducerRecord<>("topic", value);
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+        return e.getCause();
+    }
+
+    private void complete(int index) {
+        inFlight.get(index).complete(null);
+    }
+
+    @Test
+    void rejectsWhenRecordLimitReached() {
+        SendWindow<Object, Object> window = new SendWindow<>(2, 1024, OverflowPolicy.REJECT, 0, 0, null);
+        window.execute(record("a"), sender);
+        window.execute(record("b"), sender);
+        assertEquals(2, window.getInFlightRecords());
+        assertEquals(2, window.getInFlightBytes());
+
+        CompletableFuture<SendResult<Object, Object>> rejected = window.execute(record("c"), sender);
+        assertInstanceOf(KafkaBackpressureException.class, failure(rejected));
+        assertEquals(1, window.getRejectedCount());
+
+        complete(0);
+        assertEquals(1, window.getInFlightRecords());
+        window.execute(record("d"), sender);
+        assertEquals(3, sent.size());
+    }
+
+    @Test
+    void byteLimitAndOversizedRecord() {
+        SendWindow<Object, Object> window = new SendWindow<>(100, 10, OverflowPolicy.REJECT, 0, 0, null);
+        // 窗口为空时超过字节上限的消息也允许发送
+        window.execute(record(new byte[64]), sender);
+        assertEquals(64, window.getInFlightBytes());
+        assertInstanceOf(KafkaBackpressureException.class, failure(window.execute(record(new byte[1]), sender)));
+        complete(0);
+        assertEquals(0, window.getInFlightBytes());
+        window.execute(record(new byte[6]), sender);
+        window.execute(record("abcd"), sender);
+        assertEquals(10, window.getInFlightBytes());
+        assertInstanceOf(KafkaBackpressureException.class, failure(window.execute(record("x"), sender)));
+    }
+
+    @Test
+    void objectsCountedAsObjectBytes() {
+        SendWindow<Object, Object> window = new SendWindow<>(100, 1000, OverflowPolicy.REJECT, 0, 0, null, 300, null);
+        window.execute(new ProducerRecord<>("topic", 1L, new Object()), sender);
+        assertEquals(Long.BYTES + 300, window.getInFlightBytes());
+        window.execute(record(new Object()), sender);
+        window.execute(record(new Object()), sender);
+        assertInstanceOf(KafkaBackpressureException.class, failure(window.execute(record(new Object()), sender)));
+    }
+
+    @Test
+    void failedSendReleasesWindow() {
+        SendWindow<Object, Object> window = new SendWindow<>(1, 1024, OverflowPolicy.REJECT, 0, 0, null);
+        CompletableFuture<SendResult<Object, Object>> future = window.execute(record("a"), r -> {
+            throw new IllegalStateException("boom");
+        });
+        assertInstanceOf(IllegalStateException.class, failure(future));
+        assertEquals(0, window.getInFlightRecords());
+        window.execute(record("b"), sender);
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    void blockWaitsForRelease() throws Exception {
+        SendWindow<Object, Object> window = new SendWindow<>(1, 1024, OverflowPolicy.BLOCK, 5_000, 0, null);
+        window.execute(record("a"), sender);
+        CompletableFuture<CompletableFuture<SendResult<Object, Object>>> blocked =
+                CompletableFuture.supplyAsync(() -> window.execute(record("b"), sender));
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertFalse(blocked.isDone());
+        complete(0);
+        blocked.get(1, TimeUnit.SECONDS);
+        assertEquals(2, sent.size());
+        assertEquals("b", sent.get(1).value());
+    }
+
+    @Test
+    void blockTimesOut() {
+        SendWindow<Object, Object> window = new SendWindow<>(1, 1024, OverflowPolicy.BLOCK, 50, 0, null);
+        window.execute(record("a"), sender);
+        assertInstanceOf(KafkaBackpressureException.class, failure(window.execute(record("b"), sender)));
+        assertEquals(1, window.getRejectedCount());
+    }
+
+    @Test
+    void dropOldestKeepsOrderAndDrainsOffCompletingThread() throws Exception {
+        SendWindow<Object, Object> window = new SendWindow<>(1, 1024, OverflowPolicy.DROP_OLDEST, 0, 2, null);
+        window.execute(record("a"), sender);
+        CompletableFuture<SendResult<Object, Object>> b = window.execute(record("b"), sender);
+        CompletableFuture<SendResult<Object, Object>> c = window.execute(record("c"), sender);
+        CompletableFuture<SendResult<Object, Object>> d = window.execute(record("d"), sender);
+        assertEquals(2, window.getPendingRecords());
+        assertInstanceOf(KafkaBackpressureException.class, failure(b));
+        assertEquals(1, window.getDroppedCount());
+
+        // 模拟producer I/O线程完成发送
+        Thread io = new Thread(() -> complete(0), "kafka-producer-network-thread");
+        io.start();
+        io.join();
+        waitFor(() -> sent.size() == 2);
+        assertEquals("c", sent.get(1).value());
+        assertNotEquals("kafka-producer-network-thread", sendThreads.get(1));
+
+        complete(1);
+        waitFor(() -> sent.size() == 3);
+        assertEquals("d", sent.get(2).value());
+        assertTrue(c.isDone());
+        complete(2);
+        d.get(1, TimeUnit.SECONDS);
+        assertEquals(0, window.getPendingRecords());
+        assertEquals(0, window.getInFlightRecords());
+    }
+
+    @Test
+    void spillWritesToStore(@TempDir Path dir) {
+        SpillStore store = new SpillStore(dir, cast(new StringSerializer()), cast(new StringSerializer()));
+        SendWindow<Object, Object> window = new SendWindow<>(1, 1024, OverflowPolicy.SPILL, 0, 0, store);
+        window.execute(record("a"), sender);
+        assertInstanceOf(KafkaBackpressureException.class, failure(window.execute(record("b"), sender)));
+        assertEquals(1, store.size());
+        List<Object> values = new ArrayList<>();
+        store.drain(r -> values.add(new String(r.value())));
+        assertEquals(List.of("b"), values);
+        store.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Serializer<Object> cast(Serializer<T> serializer) {
+        return (Serializer<Object>) serializer;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 5s");
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.chenjie.kafka.service;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.chenjie.kafka.service.SendWindowTest.cast;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SpillStore落盘、逐行重放和重启后的恢复
+ */
+class SpillStoreTest {
+    @TempDir
+    Path dir;
+    private SpillStore store;
+
+    /**
+     * 序列化时写入类型header，模拟JsonSerializer
+     */
+    private static final Serializer<Object> TYPED = new Serializer<Object>() {
+        @Override
+        public byte[] serialize(String topic, Object data) {
+            return data.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public byte[] serialize(String topic, Headers headers, Object data) {
+            headers.add("__TypeId__", data.getClass().getName().getBytes(StandardCharsets.UTF_8));
+            return serialize(topic, data);
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        store = new SpillStore(dir, cast(new LongSerializer()), TYPED);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    private List<ProducerRecord<byte[], byte[]>> drain(SpillStore spillStore) {
+        List<ProducerRecord<byte[], byte[]>> records = new ArrayList<>();
+        spillStore.drain(records::add);
+        return records;
+    }
+
+    @Test
+    void roundTripsSerializedBytesAndHeaders() {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add("X-Message-Id", new byte[]{1, 2, 3});
+        ProducerRecord<Object, Object> record = new ProducerRecord<>("ns_topic", 3, 100L, 42L, "payload", headers);
+        store.append(record);
+        // 调用方的headers不被修改
+        assertEquals(1, record.headers().toArray().length);
+
+        List<ProducerRecord<byte[], byte[]>> records = drain(store);
+        assertEquals(1, records.size());
+        ProducerRecord<byte[], byte[]> replayed = records.get(0);
+        assertEquals("ns_topic", replayed.topic());
+        assertEquals(3, replayed.partition());
+        assertEquals(100L, replayed.timestamp());
+        assertArrayEquals(new LongSerializer().serialize("ns_topic", 42L), replayed.key());
+        assertArrayEquals("payload".getBytes(StandardCharsets.UTF_8), replayed.value());
+        assertArrayEquals(new byte[]{1, 2, 3}, replayed.headers().lastHeader("X-Message-Id").value());
+        assertArrayEquals(String.class.getName().getBytes(StandardCharsets.UTF_8), replayed.headers().lastHeader("__TypeId__").value());
+        assertEquals(0, store.size());
+        assertTrue(drain(store).isEmpty());
+    }
+
+    @Test
+    void rawValuesAndNullsKeptAsIs() {
+        store.append(new ProducerRecord<>("t", null, new byte[]{9, 8}));
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.put((byte) 7).flip();
+        store.append(new ProducerRecord<>("t", null, buffer));
+        store.append(new ProducerRecord<>("t", 1L, null));
+
+        List<ProducerRecord<byte[], byte[]>> records = drain(store);
+        assertEquals(3, records.size());
+        assertNull(records.get(0).key());
+        assertArrayEquals(new byte[]{9, 8}, records.get(0).value());
+        assertArrayEquals(new byte[]{7}, records.get(1).value());
+        assertNull(records.get(2).value());
+        assertNull(records.get(2).partition());
+    }
+
+    @Test
+    void keepsOrder() {
+        for (int i = 0; i < 1000; i++) {
+            store.append(new ProducerRecord<>("t", "v" + i));
+        }
+        assertEquals(1000, store.size());
+        List<ProducerRecord<byte[], byte[]>> records = drain(store);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("v" + i, new String(records.get(i).value(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void recoversAfterRestart() {
+        store.append(new ProducerRecord<>("t", "a"));
+        store.append(new ProducerRecord<>("t", "b"));
+        store.close();
+
+        SpillStore reopened = new SpillStore(dir, cast(new StringSerializer()), TYPED);
+        assertEquals(2, reopened.size());
+        assertEquals(2, drain(reopened).size());
+        reopened.close();
+    }
+
+    @Test
+    void recordsSpilledDuringDrainAreKeptForNextDrain() {
+        store.append(new ProducerRecord<>("t", "a"));
+        List<String> first = new ArrayList<>();
+        store.drain(record -> {
+            first.add(new String(record.value(), StandardCharsets.UTF_8));
+            // 重发时窗口仍满，再次落盘
+            store.append(new ProducerRecord<>("t", "again"));
+        });
+        assertEquals(List.of("a"), first);
+        assertEquals(1, store.size());
+        List<ProducerRecord<byte[], byte[]>> second = drain(store);
+        assertEquals("again", new String(second.get(0).value(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void failedDrainIsRetried() {
+        store.append(new ProducerRecord<>("t", "a"));
+        store.append(new ProducerRecord<>("t", "b"));
+        assertThrows(IllegalStateException.class, () -> store.drain(record -> {
+            throw new IllegalStateException("send failed");
+        }));
+        assertEquals(2, store.size());
+        assertEquals(2, drain(store).size());
+        assertEquals(0, store.size());
+    }
+}
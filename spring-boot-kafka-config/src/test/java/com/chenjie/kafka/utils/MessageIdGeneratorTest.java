@@ -0,0 +1,73 @@
+package com.chenjie.kafka.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ID为正数且递增，worker id和datacenter id的来源，开启去重但无法确定时启动失败
+ */
+class MessageIdGeneratorTest {
+
+    @Test
+    void idsArePositiveAndIncreasing() {
+        MessageIdGenerator generator = new MessageIdGenerator(31, 31);
+        long previous = generator.nextId();
+        assertTrue(previous > 0);
+        for (int i = 0; i < 10_000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    void configuredIdsWin() {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty(SPRING_KAFKA_PRODUCER_MESSAGE_ID_WORKER_ID, "3")
+                .withProperty(SPRING_KAFKA_PRODUCER_MESSAGE_ID_DATACENTER_ID, "4")
+                .withProperty("HOSTNAME", "order-service-37");
+        MessageIdGenerator generator = MessageIdGenerator.of(env);
+        assertEquals(3, generator.getWorkerId());
+        assertEquals(4, generator.getDatacenterId());
+    }
+
+    @Test
+    void derivedFromPodOrdinal() {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty(SPRING_KAFKA_CONSUMER_DEDUP_ENABLED, "true")
+                .withProperty("HOSTNAME", "order-service-37");
+        MessageIdGenerator generator = MessageIdGenerator.of(env);
+        assertEquals(5, generator.getWorkerId());
+        assertEquals(1, generator.getDatacenterId());
+    }
+
+    @Test
+    void podOrdinal() {
+        assertEquals(0, MessageIdGenerator.podOrdinal("order-service-0"));
+        assertEquals(1023, MessageIdGenerator.podOrdinal("order-service-1023"));
+        assertNull(MessageIdGenerator.podOrdinal("order-service-1024"));
+        assertNull(MessageIdGenerator.podOrdinal("order-service-7d9f8b6c4-x2k9p"));
+        assertNull(MessageIdGenerator.podOrdinal(null));
+    }
+
+    @Test
+    void dedupWithoutIdsFailsFast() {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty(SPRING_KAFKA_CONSUMER_DEDUP_ENABLED, "true")
+                .withProperty("HOSTNAME", "order-service-7d9f8b6c4-x2k9p");
+        assertThrows(IllegalStateException.class, () -> MessageIdGenerator.of(env));
+    }
+
+    @Test
+    void randomWithoutDedup() {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty(SPRING_KAFKA_PRODUCER_MESSAGE_ID_WORKER_ID, "7")
+                .withProperty("HOSTNAME", "localhost");
+        MessageIdGenerator generator = MessageIdGenerator.of(env);
+        assertEquals(7, generator.getWorkerId());
+        assertTrue(generator.getDatacenterId() >= 0 && generator.getDatacenterId() <= 31);
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.kafka.annotation.TopicPartition;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
@@ -38,20 +39,20 @@ public class KafkaListenerService {
         long offset = record.offset();
         String topic = record.topic();
         int partition = record.partition();
-        log.info("listenLogs1 >>>> Log received from kafka: {}, offset：{}, topic: {}, partition: {}", str, offset, topic, partition);
+        log.debug("listenLogs1 >>>> Log received from kafka: {}, offset：{}, topic: {}, partition: {}", str, offset, topic, partition);
 
         if (partition == 0) {
-            log.info("listenLogs1 >>>>> 222222222 >>>>> partition >>>>> 0");
+            log.debug("listenLogs1 >>>>> 222222222 >>>>> partition >>>>> 0");
             atomicBoolean1.set(true);
         }
         if (partition == 1) {
-            log.info("listenLogs1 >>>>> 222222222 >>>>> partition >>>>> 1");
+            log.debug("listenLogs1 >>>>> 222222222 >>>>> partition >>>>> 1");
             atomicBoolean2.set(true);
         }
         // 提交offset
         ack.acknowledge();
         if (atomicBoolean1.get() && atomicBoolean2.get() && atomicBoolean3.get() && atomicBoolean4.get() && atomicBoolean5.get() && atomicBoolean6.get() && atomicBoolean7.get()) {
-            log.info("都出现了");
+            log.debug("都出现了");
         }
     }
 
@@ -69,20 +70,20 @@ public class KafkaListenerService {
         String topic = record.topic();
         int partition = record.partition();
         if (partition == 0) {
-            log.info("listenLogs2 >>>>> 222222222 >>>>> partition >>>>> 0");
+            log.debug("listenLogs2 >>>>> 222222222 >>>>> partition >>>>> 0");
             atomicBoolean3.set(true);
 
         }
         if (partition == 1) {
-            log.info("listenLogs2 >>>>> 222222222 >>>>> partition >>>>> 1");
+            log.debug("listenLogs2 >>>>> 222222222 >>>>> partition >>>>> 1");
             atomicBoolean4.set(true);
 
         }
-        log.info("listenLogs2 >>>> Log received from kafka: {}, offset：{}, topic: {}, partition: {}", str, offset, topic, partition);
+        log.debug("listenLogs2 >>>> Log received from kafka: {}, offset：{}, topic: {}, partition: {}", str, offset, topic, partition);
         // 提交offset
         ack.acknowledge();
         if (atomicBoolean1.get() && atomicBoolean2.get() && atomicBoolean3.get() && atomicBoolean4.get() && atomicBoolean5.get() && atomicBoolean6.get() && atomicBoolean7.get()) {
-            log.info("都出现了");
+            log.debug("都出现了");
         }
     }
 
@@ -100,24 +101,41 @@ public class KafkaListenerService {
         String topic = record.topic();
         int partition = record.partition();
         if (partition == 0) {
-            log.info("listenLogs3 >>>>> 222222222 >>>>> partition >>>>> 0");
+            log.debug("listenLogs3 >>>>> 222222222 >>>>> partition >>>>> 0");
             atomicBoolean5.set(true);
 
         }
         if (partition == 1) {
-            log.info("listenLogs3 >>>>> 222222222 >>>>> partition >>>>> 1");
+            log.debug("listenLogs3 >>>>> 222222222 >>>>> partition >>>>> 1");
             atomicBoolean6.set(true);
         }
         if (partition == 2) {
-            log.info("listenLogs3 >>>>> 222222222 >>>>> partition >>>>> 2");
+            log.debug("listenLogs3 >>>>> 222222222 >>>>> partition >>>>> 2");
             atomicBoolean7.set(true);
         }
-        log.info("listenLogs3 >>>> Log received from kafka: {}, offset：{}, topic: {}, partition: {}", str, offset, topic, partition);
+        log.debug("listenLogs3 >>>> Log received from kafka: {}, offset：{}, topic: {}, partition: {}", str, offset, topic, partition);
         // 提交offset
         ack.acknowledge();
         if (atomicBoolean1.get() && atomicBoolean2.get() && atomicBoolean3.get() && atomicBoolean4.get() && atomicBoolean5.get() && atomicBoolean6.get() && atomicBoolean7.get()) {
-            log.info("都出现了");
+            log.debug("都出现了");
         }
     }
 
+    /**
+     * 批量消费，一次拉取的消息整体处理后提交offset
+     */
+    @KafkaListener(
+            topics = testTopic,
+            groupId = CONSUMER_GROUP_ID + "-batch",
+            id = CONSUMER_ID + "-batch",
+            containerFactory = "batchListenerContainerFactory"
+    )
+    public void listenLogsBatch(List<ConsumerRecord<Object, String>> records, Acknowledgment ack) {
+        for (ConsumerRecord<Object, String> record : records) {
+            log.debug("listenLogsBatch >>>> Log received from kafka: {}, offset：{}, topic: {}, partition: {}", record.value(), record.offset(), record.topic(), record.partition());
+        }
+        log.info("listenLogsBatch >>>> {} records received from kafka", records.size());
+        // 提交offset
+        ack.acknowledge();
+    }
 }
@@ -0,0 +1,55 @@
+package com.chenjie.kafka.benchmark;
+
+import com.chenjie.kafka.annotation.SendMessage;
+import com.chenjie.kafka.autoconfigure.ActiveActiveKafkaConfigure;
+import com.chenjie.kafka.autoconfigure.KafkaServiceAutoConfigure;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+/**
+ * 基准测试用的最小spring上下文：kafka-config的自动配置 + 一个@SendMessage方法，连接两个嵌入式kafka
+ * 不加载application.yml，避免连到真实集群
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@Import({ActiveActiveKafkaConfigure.class, KafkaServiceAutoConfigure.class})
+public class BenchmarkApplication {
+
+    @Bean
+    public BenchmarkMessageSender benchmarkMessageSender() {
+        return new BenchmarkMessageSender();
+    }
+
+    static ConfigurableApplicationContext start(EmbeddedKafkaClusters clusters, String... properties) {
+        return new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .properties("spring.config.name=kafka-benchmark",
+                        "logging.level.root=WARN",
+                        "spring.cloud.kubernetes.enabled=false",
+                        "spring.kafka.enabled=true",
+                        "spring.kafka.bootstrap-servers=" + clusters.getPrimaryBrokers(),
+                        "spring.kafka.producer.namespace=" + EmbeddedKafkaClusters.NAMESPACE,
+                        "spring.kafka.consumer.namespace=" + EmbeddedKafkaClusters.NAMESPACE,
+                        "spring.aa-kafka.enabled=true",
+                        "spring.aa-kafka.bootstrap-servers=" + clusters.getAaBrokers())
+                .properties(properties)
+                .run();
+    }
+
+    /**
+     * 被SendEmailAspect拦截的方法，返回值即消息
+     */
+    public static class BenchmarkMessageSender {
+        @SendMessage(EmbeddedKafkaClusters.SEND_MESSAGE_TOPIC)
+        public String send(String payload) {
+            return payload;
+        }
+    }
+}
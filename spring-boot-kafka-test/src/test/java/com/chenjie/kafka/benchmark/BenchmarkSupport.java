@@ -0,0 +1,48 @@
+package com.chenjie.kafka.benchmark;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基准测试公共方法
+ */
+final class BenchmarkSupport {
+    /**
+     * 吞吐量测试每次调用发送的消息条数，发完后等待全部确认
+     */
+    static final int BATCH = 1000;
+    private static final long SEED = 20240101L;
+    private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * 固定种子生成的消息体，每次运行内容相同，压缩率可复现
+     */
+    static String payload(int bytes) {
+        Random random = new Random(SEED);
+        char[] chars = new char[bytes];
+        for (int i = 0; i < bytes; i++) {
+            chars[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 等待发送结果，兼容CompletableFuture、旧版send返回的Future&lt;CompletableFuture&gt;和bothSend返回的List
+     */
+    static void await(Object handle) throws Exception {
+        Object result = handle;
+        while (result instanceof Future) {
+            result = ((Future<?>) result).get(30, TimeUnit.SECONDS);
+        }
+        if (result instanceof Collection) {
+            for (Object item : (Collection<?>) result) {
+                await(item);
+            }
+        }
+    }
+}
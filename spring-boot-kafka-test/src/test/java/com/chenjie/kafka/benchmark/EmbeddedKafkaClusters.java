@@ -0,0 +1,51 @@
+package com.chenjie.kafka.benchmark;
+
+import com.chenjie.kafka.utils.TopicNameResolver;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+/**
+ * 基准测试用的两个嵌入式kafka，分别作为kafkaTemplate和aaKafkaTemplate的集群
+ */
+final class EmbeddedKafkaClusters implements AutoCloseable {
+    static final String NAMESPACE = "bench";
+    static final String TOPIC = "benchmark";
+    static final String SEND_MESSAGE_TOPIC = "benchmark-send-message";
+    static final int PARTITIONS = 3;
+
+    private final EmbeddedKafkaKraftBroker primary;
+    private final EmbeddedKafkaKraftBroker aa;
+
+    EmbeddedKafkaClusters() {
+        this.primary = start("spring.embedded.kafka.brokers");
+        this.aa = start("spring.embedded.aa-kafka.brokers");
+    }
+
+    private static EmbeddedKafkaKraftBroker start(String brokerListProperty) {
+        EmbeddedKafkaKraftBroker broker = new EmbeddedKafkaKraftBroker(1, PARTITIONS,
+                prefixedTopic(TOPIC), prefixedTopic(SEND_MESSAGE_TOPIC));
+        broker.brokerListProperty(brokerListProperty);
+        broker.afterPropertiesSet();
+        return broker;
+    }
+
+    /**
+     * @return KafkaService实际发送到的topic
+     */
+    static String prefixedTopic(String topic) {
+        return TopicNameResolver.resolve(NAMESPACE, topic);
+    }
+
+    String getPrimaryBrokers() {
+        return primary.getBrokersAsString();
+    }
+
+    String getAaBrokers() {
+        return aa.getBrokersAsString();
+    }
+
+    @Override
+    public void close() {
+        primary.destroy();
+        aa.destroy();
+    }
+}
@@ -0,0 +1,65 @@
+package com.chenjie.kafka.benchmark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * 运行kafka基准测试并输出JSON报告，默认跳过，需要显式开启：
+ * <pre>
+ * mvn -pl spring-boot-kafka-test test -Dtest=KafkaBenchmarkTest -Dkafka.benchmark=true
+ * </pre>
+ * 可选参数：
+ * kafka.benchmark.include 要运行的基准测试(正则)，默认全部
+ * kafka.benchmark.quick=true 只做冒烟运行(迭代少、时间短)，结果不可用于对比
+ * kafka.benchmark.profilers=gc 附加GCProfiler(等同jmh的-prof gc)，报告中增加gc.alloc.rate.norm等每次调用的分配量
+ * 报告写入target/benchmarks/kafka-&lt;版本&gt;-&lt;时间&gt;.json，迭代次数、时间、堆大小和消息内容固定，不同版本的报告可以直接对比
+ */
+@EnabledIfSystemProperty(named = "kafka.benchmark", matches = "true")
+class KafkaBenchmarkTest {
+
+    @Test
+    void runBenchmarks() throws Exception {
+        boolean quick = Boolean.getBoolean("kafka.benchmark.quick");
+        Path dir = Paths.get("target", "benchmarks");
+        Files.createDirectories(dir);
+        Path report = dir.resolve("kafka-" + System.getProperty("kafka.benchmark.version", "dev") + "-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss")) + ".json");
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(System.getProperty("kafka.benchmark.include", KafkaBenchmarkTest.class.getPackage().getName() + ".*Benchmark"))
+                .forks(1)
+                .threads(1)
+                .jvmArgsAppend("-Xms1g", "-Xmx1g")
+                .shouldFailOnError(true)
+                .resultFormat(ResultFormatType.JSON)
+                .result(report.toString());
+        if ("gc".equals(System.getProperty("kafka.benchmark.profilers"))) {
+            options.addProfiler(GCProfiler.class);
+        }
+        if (quick) {
+            options.warmupIterations(1).warmupTime(TimeValue.seconds(1))
+                    .measurementIterations(1).measurementTime(TimeValue.seconds(2));
+        } else {
+            options.warmupIterations(3).warmupTime(TimeValue.seconds(5))
+                    .measurementIterations(5).measurementTime(TimeValue.seconds(10));
+        }
+        Collection<RunResult> results = new Runner(options.build()).run();
+        assertFalse(results.isEmpty(), "no benchmark was run");
+        System.out.println("kafka benchmark report: " + report.toAbsolutePath());
+    }
+}
@@ -0,0 +1,176 @@
+package com.chenjie.kafka.benchmark;
+
+import com.chenjie.kafka.aspect.SendEmailAspect;
+import com.chenjie.kafka.service.KafkaService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * KafkaService各发送方式与直接使用KafkaTemplate的吞吐量和延迟对比
+ * throughput：每次调用异步发送BATCH条消息并等待全部确认，结果为每秒确认的消息数
+ * latency：发送一条消息并等待确认，结果为延迟分布
+ */
+@State(Scope.Benchmark)
+public class KafkaSendBenchmark {
+
+    public enum SendPath {
+        /**
+         * 直接调用KafkaTemplate.send，作为基线
+         */
+        TEMPLATE,
+        /**
+         * KafkaService.send，经过workers线程池
+         */
+        SEND,
+        /**
+         * KafkaService.sendAsync
+         */
+        SEND_ASYNC,
+        /**
+         * KafkaService.bothSend，同时发往两个集群
+         */
+        BOTH_SEND,
+        /**
+         * KafkaService.bothSendAsync，BOTH模式
+         */
+        BOTH_SEND_ASYNC,
+        /**
+         * KafkaService.sendBytes，预先编码好的byte[]
+         */
+        SEND_BYTES,
+        /**
+         * KafkaService.sendPooled，每条消息写入池化的ByteBuffer
+         */
+        SEND_POOLED,
+        /**
+         * &#64;SendMessage方法，经过SendEmailAspect序列化后调用sendAsync
+         */
+        SEND_MESSAGE
+    }
+
+    @Param
+    public SendPath path;
+
+    @Param({"100", "1024"})
+    public int payloadBytes;
+
+    private EmbeddedKafkaClusters clusters;
+    private ConfigurableApplicationContext context;
+    private KafkaTemplate<String, String> kafkaTemplate;
+    private KafkaService<String, String> kafkaService;
+    private SendEmailAspect sendEmailAspect;
+    private BenchmarkApplication.BenchmarkMessageSender messageSender;
+    private String prefixedTopic;
+    private String payload;
+    private byte[] payloadBytesValue;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        clusters = new EmbeddedKafkaClusters();
+        context = BenchmarkApplication.start(clusters);
+        kafkaTemplate = context.getBean("kafkaTemplate", KafkaTemplate.class);
+        kafkaService = context.getBean(KafkaService.class);
+        sendEmailAspect = context.getBean(SendEmailAspect.class);
+        messageSender = context.getBean(BenchmarkApplication.BenchmarkMessageSender.class);
+        prefixedTopic = EmbeddedKafkaClusters.prefixedTopic(EmbeddedKafkaClusters.TOPIC);
+        payload = BenchmarkSupport.payload(payloadBytes);
+        payloadBytesValue = payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        clusters.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BenchmarkSupport.BATCH)
+    public void throughput() throws Exception {
+        if (path == SendPath.SEND_MESSAGE) {
+            long target = sendMessageCompleted() + BenchmarkSupport.BATCH;
+            for (int i = 0; i < BenchmarkSupport.BATCH; i++) {
+                messageSender.send(payload);
+            }
+            awaitSendMessage(target);
+            return;
+        }
+        List<Object> handles = new ArrayList<>(BenchmarkSupport.BATCH);
+        for (int i = 0; i < BenchmarkSupport.BATCH; i++) {
+            handles.add(send());
+        }
+        for (Object handle : handles) {
+            BenchmarkSupport.await(handle);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency() throws Exception {
+        if (path == SendPath.SEND_MESSAGE) {
+            long target = sendMessageCompleted() + 1;
+            messageSender.send(payload);
+            awaitSendMessage(target);
+            return;
+        }
+        BenchmarkSupport.await(send());
+    }
+
+    private Object send() {
+        switch (path) {
+            case TEMPLATE:
+                return kafkaTemplate.send(prefixedTopic, payload);
+            case SEND:
+                return kafkaService.send(EmbeddedKafkaClusters.TOPIC, payload);
+            case SEND_ASYNC:
+                return kafkaService.sendAsync(EmbeddedKafkaClusters.TOPIC, payload);
+            case BOTH_SEND:
+                return kafkaService.bothSend(EmbeddedKafkaClusters.TOPIC, payload);
+            case BOTH_SEND_ASYNC:
+                return kafkaService.bothSendAsync(EmbeddedKafkaClusters.TOPIC, payload);
+            case SEND_BYTES:
+                return kafkaService.sendBytes(EmbeddedKafkaClusters.TOPIC, null, payloadBytesValue);
+            case SEND_POOLED:
+                return kafkaService.sendPooled(EmbeddedKafkaClusters.TOPIC, null, buffer -> buffer.put(payloadBytesValue));
+            default:
+                throw new IllegalStateException("unsupported path " + path);
+        }
+    }
+
+    /**
+     * SendEmailAspect没有返回发送结果，按已完成(成功+失败)的条数等待
+     */
+    private long sendMessageCompleted() {
+        return sendEmailAspect.getSentCount() + sendEmailAspect.getFailedCount();
+    }
+
+    private void awaitSendMessage(long target) throws TimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (sendMessageCompleted() < target) {
+            if (System.nanoTime() > deadline) {
+                throw new TimeoutException("@SendMessage records not acknowledged in 30s");
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.chenjie.kafka.benchmark;
+
+import com.chenjie.kafka.autoconfigure.ProducerProfile;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各ProducerProfile在不同消息大小下的吞吐量和延迟
+ * low-latency的单条延迟最低，high-throughput和large-payload靠攒批和压缩换取吞吐量
+ */
+@State(Scope.Benchmark)
+public class ProducerProfileBenchmark {
+
+    @Param
+    public ProducerProfile profile;
+
+    @Param({"512", "16384"})
+    public int payloadBytes;
+
+    private EmbeddedKafkaClusters clusters;
+    private DefaultKafkaProducerFactory<String, String> producerFactory;
+    private KafkaTemplate<String, String> kafkaTemplate;
+    private String topic;
+    private String payload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        clusters = new EmbeddedKafkaClusters();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, clusters.getPrimaryBrokers());
+        properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        producerFactory = new DefaultKafkaProducerFactory<>(profile.applyTo(properties));
+        kafkaTemplate = new KafkaTemplate<>(producerFactory);
+        topic = EmbeddedKafkaClusters.prefixedTopic(EmbeddedKafkaClusters.TOPIC);
+        payload = BenchmarkSupport.payload(payloadBytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        producerFactory.destroy();
+        clusters.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BenchmarkSupport.BATCH)
+    public void throughput() throws Exception {
+        List<CompletableFuture<SendResult<String, String>>> futures = new ArrayList<>(BenchmarkSupport.BATCH);
+        for (int i = 0; i < BenchmarkSupport.BATCH; i++) {
+            futures.add(kafkaTemplate.send(topic, payload));
+        }
+        for (CompletableFuture<SendResult<String, String>> future : futures) {
+            BenchmarkSupport.await(future);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency() throws Exception {
+        BenchmarkSupport.await(kafkaTemplate.send(topic, payload));
+    }
+}
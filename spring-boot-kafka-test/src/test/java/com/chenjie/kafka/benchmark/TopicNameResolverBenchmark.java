@@ -0,0 +1,62 @@
+package com.chenjie.kafka.benchmark;
+
+import com.chenjie.kafka.utils.TopicNameResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.chenjie.kafka.constants.KafkaPropertyConstants.PUBLIC_NAMESPACE_PREFIX;
+
+/**
+ * 每条消息拼接topic前缀与TopicNameResolver缓存的对比，配合-Dkafka.benchmark.profilers=gc查看每次调用分配的字节数
+ * concat*是引入TopicNameResolver之前KafkaService中的写法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TopicNameResolverBenchmark {
+    private static final String SEPARATOR = TopicNameResolver.DEFAULT_SEPARATOR;
+
+    private String namespace;
+    private String topic;
+    private List<String> groups;
+
+    @Setup
+    public void setUp() {
+        // 不用常量，避免被JIT折叠
+        namespace = new String(EmbeddedKafkaClusters.NAMESPACE.toCharArray());
+        topic = new String(EmbeddedKafkaClusters.TOPIC.toCharArray());
+        groups = Arrays.asList("order", "payment");
+    }
+
+    @Benchmark
+    public String concat() {
+        return "".equals(namespace) ? topic : namespace + SEPARATOR + topic;
+    }
+
+    @Benchmark
+    public String resolve() {
+        return TopicNameResolver.resolve(namespace, topic);
+    }
+
+    @Benchmark
+    public String concatPublic() {
+        StringBuilder stringBuilder = new StringBuilder(PUBLIC_NAMESPACE_PREFIX + SEPARATOR);
+        groups.forEach(e -> stringBuilder.append(e).append(SEPARATOR));
+        stringBuilder.append(topic).append(SEPARATOR);
+        return stringBuilder.toString();
+    }
+
+    @Benchmark
+    public String resolvePublic() {
+        return TopicNameResolver.resolvePublic(topic, groups);
+    }
+}
@@ -0,0 +1,50 @@
+package com.chenjie.redis;
+
+import java.time.Duration;
+
+/**
+ * StarterRedisTemplate.pipelined中使用的批量操作，每次调用只记录一条命令，执行时按pipelineSize分批通过pipeline发送
+ * key、hashKey经过模板的key序列化器(RedisKeySerializer会加命名空间前缀)，结果按调用顺序返回
+ */
+public interface BatchOps<K, V> {
+
+    /**
+     * GET，结果为反序列化后的值，不存在时为null
+     */
+    BatchOps<K, V> get(K key);
+
+    /**
+     * SET，结果为Boolean
+     */
+    BatchOps<K, V> set(K key, V value);
+
+    /**
+     * SET PX，结果为Boolean
+     */
+    BatchOps<K, V> set(K key, V value, Duration ttl);
+
+    /**
+     * DEL，结果为删除的key数量
+     */
+    BatchOps<K, V> delete(K key);
+
+    /**
+     * PEXPIRE，结果为Boolean
+     */
+    BatchOps<K, V> expire(K key, Duration ttl);
+
+    /**
+     * INCRBY，结果为Long
+     */
+    BatchOps<K, V> increment(K key, long delta);
+
+    /**
+     * HGET，结果为反序列化后的值
+     */
+    BatchOps<K, V> hashGet(K key, Object hashKey);
+
+    /**
+     * HSET，结果为Boolean
+     */
+    BatchOps<K, V> hashPut(K key, Object hashKey, Object value);
+}
@@ -0,0 +1,92 @@
+package com.chenjie.redis;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 记录BatchOps的调用，key和value在记录时序列化，由StarterRedisTemplate在pipeline中执行
+ */
+class PipelinedBatchOps<K, V> implements BatchOps<K, V> {
+    private final StarterRedisTemplate<K, V> template;
+    private final List<Consumer<RedisConnection>> commands = new ArrayList<>();
+
+    PipelinedBatchOps(StarterRedisTemplate<K, V> template) {
+        this.template = template;
+    }
+
+    @Override
+    public BatchOps<K, V> get(K key) {
+        byte[] rawKey = template.serializeKey(key);
+        commands.add(connection -> connection.stringCommands().get(rawKey));
+        return this;
+    }
+
+    @Override
+    public BatchOps<K, V> set(K key, V value) {
+        byte[] rawKey = template.serializeKey(key);
+        byte[] rawValue = template.serializeValue(value);
+        commands.add(connection -> connection.stringCommands().set(rawKey, rawValue));
+        return this;
+    }
+
+    @Override
+    public BatchOps<K, V> set(K key, V value, Duration ttl) {
+        Assert.notNull(ttl, "ttl must not be null");
+        byte[] rawKey = template.serializeKey(key);
+        byte[] rawValue = template.serializeValue(value);
+        Expiration expiration = Expiration.from(ttl);
+        commands.add(connection -> connection.stringCommands().set(rawKey, rawValue, expiration, RedisStringCommands.SetOption.upsert()));
+        return this;
+    }
+
+    @Override
+    public BatchOps<K, V> delete(K key) {
+        byte[] rawKey = template.serializeKey(key);
+        commands.add(connection -> connection.keyCommands().del(rawKey));
+        return this;
+    }
+
+    @Override
+    public BatchOps<K, V> expire(K key, Duration ttl) {
+        Assert.notNull(ttl, "ttl must not be null");
+        byte[] rawKey = template.serializeKey(key);
+        long millis = ttl.toMillis();
+        commands.add(connection -> connection.keyCommands().pExpire(rawKey, millis));
+        return this;
+    }
+
+    @Override
+    public BatchOps<K, V> increment(K key, long delta) {
+        byte[] rawKey = template.serializeKey(key);
+        commands.add(connection -> connection.stringCommands().incrBy(rawKey, delta));
+        return this;
+    }
+
+    @Override
+    public BatchOps<K, V> hashGet(K key, Object hashKey) {
+        byte[] rawKey = template.serializeKey(key);
+        byte[] rawHashKey = template.serializeHashKey(hashKey);
+        commands.add(connection -> connection.hashCommands().hGet(rawKey, rawHashKey));
+        return this;
+    }
+
+    @Override
+    public BatchOps<K, V> hashPut(K key, Object hashKey, Object value) {
+        byte[] rawKey = template.serializeKey(key);
+        byte[] rawHashKey = template.serializeHashKey(hashKey);
+        byte[] rawValue = template.serializeHashValue(value);
+        commands.add(connection -> connection.hashCommands().hSet(rawKey, rawHashKey, rawValue));
+        return this;
+    }
+
+    List<Consumer<RedisConnection>> getCommands() {
+        return commands;
+    }
+}
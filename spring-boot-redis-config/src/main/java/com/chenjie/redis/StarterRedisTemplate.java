@@ -1,14 +1,29 @@
 package com.chenjie.redis;
 
 import com.chenjie.redis.constant.RedisStarterConstant;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
 
-import java.util.List;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * @Description 区分springboot自己的redistemplate
+ * 批量操作(multiGet、multiSet、pipelined)按batchSize拆分MGET/MSET，集群模式下先按序列化后(带命名空间前缀)key的slot分组，
+ * 多条命令通过pipeline一次发送，每个pipeline最多pipelineSize条命令
  */
 public class StarterRedisTemplate<K, V> extends RedisTemplate<K, V> {
+    private int batchSize = 100;
+    private int pipelineSize = 1000;
+    private volatile Boolean cluster;
 
     /**
      * 为key添加公共命名空间前缀，如public:yourkey
@@ -47,4 +62,217 @@ public class StarterRedisTemplate<K, V> extends RedisTemplate<K, V> {
         return stringBuilder.toString();
     }
 
+    /**
+     * 批量读取，返回值与keys顺序一致，不存在的key对应null
+     *
+     * @param keys
+     * @return
+     */
+    public List<V> multiGet(Collection<K> keys) {
+        Assert.notNull(keys, "keys must not be null");
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<byte[]> rawKeys = serializeKeys(keys);
+        List<List<Integer>> batches = partition(rawKeys);
+        List<V> values = new ArrayList<>(Collections.nCopies(rawKeys.size(), null));
+        for (List<List<Integer>> pipeline : chunk(batches, pipelineSize)) {
+            List<Object> results = executePipelined((RedisCallback<Object>) connection -> {
+                for (List<Integer> batch : pipeline) {
+                    connection.stringCommands().mGet(select(rawKeys, batch));
+                }
+                return null;
+            });
+            for (int i = 0; i < pipeline.size(); i++) {
+                fill(values, pipeline.get(i), (List<?>) results.get(i));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 批量写入，不设置过期时间，使用MSET
+     *
+     * @param values
+     */
+    public void multiSet(Map<K, V> values) {
+        multiSet(values, null);
+    }
+
+    /**
+     * 批量写入，ttl不为空时每个key使用SET PX(MSET不支持过期时间)，ttl为空时使用MSET
+     *
+     * @param values
+     * @param ttl    过期时间，为空时不过期
+     */
+    public void multiSet(Map<K, V> values, Duration ttl) {
+        Assert.notNull(values, "values must not be null");
+        if (values.isEmpty()) {
+            return;
+        }
+        List<byte[]> rawKeys = new ArrayList<>(values.size());
+        List<byte[]> rawValues = new ArrayList<>(values.size());
+        values.forEach((key, value) -> {
+            rawKeys.add(serializeKey(key));
+            rawValues.add(serializeValue(value));
+        });
+        if (ttl == null) {
+            for (List<List<Integer>> pipeline : chunk(partition(rawKeys), pipelineSize)) {
+                executePipelined((RedisCallback<Object>) connection -> {
+                    for (List<Integer> batch : pipeline) {
+                        Map<byte[], byte[]> tuples = new LinkedHashMap<>(batch.size() * 2);
+                        batch.forEach(i -> tuples.put(rawKeys.get(i), rawValues.get(i)));
+                        connection.stringCommands().mSet(tuples);
+                    }
+                    return null;
+                });
+            }
+            return;
+        }
+        Expiration expiration = Expiration.from(ttl);
+        List<Integer> indexes = new ArrayList<>(rawKeys.size());
+        for (int i = 0; i < rawKeys.size(); i++) {
+            indexes.add(i);
+        }
+        for (List<Integer> pipeline : chunk(indexes, pipelineSize)) {
+            executePipelined((RedisCallback<Object>) connection -> {
+                for (Integer i : pipeline) {
+                    connection.stringCommands().set(rawKeys.get(i), rawValues.get(i), expiration, RedisStringCommands.SetOption.upsert());
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 在pipeline中执行多条命令，返回值与调用顺序一致
+     * 如：pipelined(ops -> ids.forEach(id -> ops.get("user:" + id)))
+     *
+     * @param operations
+     * @return
+     */
+    public List<Object> pipelined(Consumer<BatchOps<K, V>> operations) {
+        Assert.notNull(operations, "operations must not be null");
+        PipelinedBatchOps<K, V> ops = new PipelinedBatchOps<>(this);
+        operations.accept(ops);
+        List<Object> results = new ArrayList<>(ops.getCommands().size());
+        for (List<Consumer<RedisConnection>> pipeline : chunk(ops.getCommands(), pipelineSize)) {
+            results.addAll(executePipelined((RedisCallback<Object>) connection -> {
+                pipeline.forEach(command -> command.accept(connection));
+                return null;
+            }));
+        }
+        return results;
+    }
+
+    /**
+     * 把key的下标分成多批，每批最多batchSize个，集群模式下同一批的key在同一个slot
+     * slot按序列化后的key计算，RedisKeySerializer加的命名空间前缀也参与计算，{hashtag}仍然有效
+     */
+    private List<List<Integer>> partition(List<byte[]> rawKeys) {
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        boolean clusterMode = isCluster();
+        for (int i = 0; i < rawKeys.size(); i++) {
+            int slot = clusterMode ? ClusterSlotHashUtil.calculateSlot(rawKeys.get(i)) : 0;
+            groups.computeIfAbsent(slot, k -> new ArrayList<>()).add(i);
+        }
+        List<List<Integer>> batches = new ArrayList<>();
+        for (List<Integer> group : groups.values()) {
+            batches.addAll(chunk(group, batchSize));
+        }
+        return batches;
+    }
+
+    private static <T> List<List<T>> chunk(List<T> list, int size) {
+        List<List<T>> chunks = new ArrayList<>((list.size() + size - 1) / size);
+        for (int i = 0; i < list.size(); i += size) {
+            chunks.add(list.subList(i, Math.min(i + size, list.size())));
+        }
+        return chunks;
+    }
+
+    private static byte[][] select(List<byte[]> rawKeys, List<Integer> indexes) {
+        byte[][] selected = new byte[indexes.size()][];
+        for (int i = 0; i < indexes.size(); i++) {
+            selected[i] = rawKeys.get(indexes.get(i));
+        }
+        return selected;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void fill(List<V> values, List<Integer> indexes, List<?> result) {
+        if (result == null) {
+            return;
+        }
+        for (int i = 0; i < indexes.size(); i++) {
+            values.set(indexes.get(i), (V) result.get(i));
+        }
+    }
+
+    private boolean isCluster() {
+        Boolean clusterMode = this.cluster;
+        if (clusterMode == null) {
+            clusterMode = Boolean.TRUE.equals(execute((RedisCallback<Boolean>) connection -> connection instanceof RedisClusterConnection, true));
+            this.cluster = clusterMode;
+        }
+        return clusterMode;
+    }
+
+    private List<byte[]> serializeKeys(Collection<K> keys) {
+        List<byte[]> rawKeys = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            rawKeys.add(serializeKey(key));
+        }
+        return rawKeys;
+    }
+
+    @SuppressWarnings("unchecked")
+    byte[] serializeKey(K key) {
+        Assert.notNull(key, "key must not be null");
+        RedisSerializer<K> serializer = (RedisSerializer<K>) getKeySerializer();
+        return serializer == null && key instanceof byte[] ? (byte[]) key : serializer.serialize(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    byte[] serializeValue(V value) {
+        RedisSerializer<V> serializer = (RedisSerializer<V>) getValueSerializer();
+        return serializer == null && value instanceof byte[] ? (byte[]) value : serializer.serialize(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    byte[] serializeHashKey(Object hashKey) {
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) getHashKeySerializer();
+        return serializer == null && hashKey instanceof byte[] ? (byte[]) hashKey : serializer.serialize(hashKey);
+    }
+
+    @SuppressWarnings("unchecked")
+    byte[] serializeHashValue(Object value) {
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) getHashValueSerializer();
+        return serializer == null && value instanceof byte[] ? (byte[]) value : serializer.serialize(value);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 每条MGET/MSET最多包含的key数量
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+        this.batchSize = batchSize;
+    }
+
+    public int getPipelineSize() {
+        return pipelineSize;
+    }
+
+    /**
+     * 每个pipeline最多包含的命令数量，超过时分多次发送
+     */
+    public void setPipelineSize(int pipelineSize) {
+        Assert.isTrue(pipelineSize > 0, "pipelineSize must be greater than 0");
+        this.pipelineSize = pipelineSize;
+    }
+
 }
@@ -0,0 +1,102 @@
+package com.chenjie.redis.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 二级缓存：先读本地caffeine，未命中再读redis并放入本地
+ * 写入、删除、清空时先改redis，再通过NearCacheManager广播失效通知，其它节点删除本地副本
+ * 本地缓存的key是redis中的key(cacheName::key)，各节点一致；本地返回的是同一个对象，调用方不要修改
+ */
+public class NearCache extends RedisCache {
+    private final Cache<String, Object> local;
+    private final NearCacheManager cacheManager;
+
+    protected NearCache(String name, RedisCacheWriter cacheWriter, RedisCacheConfiguration cacheConfiguration,
+                        Cache<String, Object> local, NearCacheManager cacheManager) {
+        super(name, cacheWriter, cacheConfiguration);
+        this.local = local;
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * 在caffeine的计算中读取redis，同一个key的并发未命中只读一次redis；读取期间收到的失效通知会等读取结束后再删除
+     */
+    @Override
+    protected Object lookup(Object key) {
+        return local.get(createCacheKey(key), cacheKey -> super.lookup(key));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String cacheKey = createCacheKey(key);
+        AtomicBoolean loaded = new AtomicBoolean();
+        Object storeValue = local.get(cacheKey, k -> toStoreValue(super.get(key, () -> {
+            loaded.set(true);
+            return valueLoader.call();
+        })));
+        if (loaded.get()) {
+            // redis中没有时新加载的值，其它节点可能还有过期前的本地副本
+            cacheManager.publish(getName(), cacheKey);
+        }
+        return (T) fromStoreValue(storeValue);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        super.put(key, value);
+        String cacheKey = createCacheKey(key);
+        local.put(cacheKey, toStoreValue(value));
+        cacheManager.publish(getName(), cacheKey);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = super.putIfAbsent(key, value);
+        String cacheKey = createCacheKey(key);
+        local.invalidate(cacheKey);
+        if (existing == null) {
+            cacheManager.publish(getName(), cacheKey);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        super.evict(key);
+        String cacheKey = createCacheKey(key);
+        local.invalidate(cacheKey);
+        cacheManager.publish(getName(), cacheKey);
+    }
+
+    /**
+     * clear()也会调用这里，本地缓存直接全部清空
+     */
+    @Override
+    public void clear(String keyPattern) {
+        super.clear(keyPattern);
+        local.invalidateAll();
+        cacheManager.publish(getName(), null);
+    }
+
+    /**
+     * 收到其它节点的失效通知，只删除本地副本
+     */
+    void evictLocal(String cacheKey) {
+        local.invalidate(cacheKey);
+    }
+
+    void clearLocal() {
+        local.invalidateAll();
+    }
+
+    public Cache<String, Object> getLocalCache() {
+        return local;
+    }
+}
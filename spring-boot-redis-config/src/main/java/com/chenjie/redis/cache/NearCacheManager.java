@@ -0,0 +1,113 @@
+package com.chenjie.redis.cache;
+
+import com.chenjie.redis.config.NearCacheProperties;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 二级缓存管理器：每个缓存是本地caffeine(L1) + redis(L2)
+ * 节点修改缓存后向channel发布失效通知(节点id、缓存名、key，清空时没有key)，其它节点收到后删除本地副本，忽略自己发出的通知
+ * pub/sub不保证送达，本地缓存的过期时间是旧值存在的上限
+ */
+public class NearCacheManager extends RedisCacheManager implements MessageListener {
+    private static final Logger log = LoggerFactory.getLogger(NearCacheManager.class);
+    private static final String SEPARATOR = "\n";
+
+    private final RedisConnectionFactory connectionFactory;
+    private final NearCacheProperties properties;
+    private final byte[] channel;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public NearCacheManager(RedisConnectionFactory connectionFactory, RedisCacheWriter cacheWriter,
+                            RedisCacheConfiguration defaultCacheConfiguration, NearCacheProperties properties) {
+        super(cacheWriter, withTtl(defaultCacheConfiguration, properties.getTtl()), initialCacheConfigurations(defaultCacheConfiguration, properties));
+        this.connectionFactory = connectionFactory;
+        this.properties = properties;
+        this.channel = properties.getChannel().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, RedisCacheConfiguration> initialCacheConfigurations(RedisCacheConfiguration defaultCacheConfiguration,
+                                                                                   NearCacheProperties properties) {
+        Map<String, RedisCacheConfiguration> configurations = new HashMap<>();
+        properties.getCaches().forEach((name, spec) -> configurations.put(name,
+                withTtl(defaultCacheConfiguration, spec.getTtl() != null ? spec.getTtl() : properties.getTtl())));
+        return configurations;
+    }
+
+    private static RedisCacheConfiguration withTtl(RedisCacheConfiguration configuration, Duration ttl) {
+        return ttl == null ? configuration : configuration.entryTtl(ttl);
+    }
+
+    @Override
+    protected RedisCache createRedisCache(String name, RedisCacheConfiguration cacheConfiguration) {
+        NearCacheProperties.Spec spec = properties.getCaches().get(name);
+        long maximumSize = spec != null && spec.getMaximumSize() != null ? spec.getMaximumSize() : properties.getMaximumSize();
+        Duration localTtl = spec != null && spec.getLocalTtl() != null ? spec.getLocalTtl() : properties.getLocalTtl();
+        Duration ttl = spec != null && spec.getTtl() != null ? spec.getTtl() : properties.getTtl();
+        // 本地副本不能比redis中的值活得更久
+        if (ttl != null && !ttl.isZero() && ttl.compareTo(localTtl) < 0) {
+            localTtl = ttl;
+        }
+        return new NearCache(name, getCacheWriter(), cacheConfiguration,
+                Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(localTtl).build(), this);
+    }
+
+    /**
+     * 广播失效通知，发送失败只记录日志，不影响已经完成的redis写入
+     *
+     * @param cacheName
+     * @param cacheKey  为空时表示清空
+     */
+    void publish(String cacheName, String cacheKey) {
+        String body = nodeId + SEPARATOR + cacheName + (cacheKey == null ? "" : SEPARATOR + cacheKey);
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.publish(channel, body.getBytes(StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            log.warn("publish near cache invalidation failed, cache:[{}] key:[{}]", cacheName, cacheKey, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(SEPARATOR, 3);
+        if (parts.length < 2 || nodeId.equals(parts[0])) {
+            return;
+        }
+        org.springframework.cache.Cache cache = lookupCache(parts[1]);
+        if (cache instanceof TransactionAwareCacheDecorator) {
+            cache = ((TransactionAwareCacheDecorator) cache).getTargetCache();
+        }
+        if (!(cache instanceof NearCache)) {
+            return;
+        }
+        if (parts.length == 2) {
+            ((NearCache) cache).clearLocal();
+        } else {
+            ((NearCache) cache).evictLocal(parts[2]);
+        }
+    }
+
+    public String getChannel() {
+        return properties.getChannel();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
@@ -0,0 +1,113 @@
+package com.chenjie.redis.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 二级缓存(本地caffeine + redis)配置，caches中按缓存名覆盖默认的大小和过期时间
+ */
+@ConfigurationProperties(prefix = "spring.redis.near-cache")
+public class NearCacheProperties {
+
+    /**
+     * 是否开启本地缓存，关闭时cacheManager只使用redis
+     */
+    private boolean enabled;
+    /**
+     * 失效通知的pub/sub频道，使用相同缓存名的服务需要配置相同的频道
+     */
+    private String channel = "near-cache:invalidation";
+    /**
+     * 每个缓存的本地最大条数
+     */
+    private long maximumSize = 10000;
+    /**
+     * 本地缓存写入后的过期时间，失效通知丢失时最多读到这么久的旧值
+     */
+    private Duration localTtl = Duration.ofSeconds(60);
+    /**
+     * redis中的过期时间，为空时不过期
+     */
+    private Duration ttl;
+    private final Map<String, Spec> caches = new HashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public void setChannel(String channel) {
+        this.channel = channel;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public Duration getLocalTtl() {
+        return localTtl;
+    }
+
+    public void setLocalTtl(Duration localTtl) {
+        this.localTtl = localTtl;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public Map<String, Spec> getCaches() {
+        return caches;
+    }
+
+    /**
+     * 单个缓存的配置，为空的字段使用默认值
+     */
+    public static class Spec {
+        private Long maximumSize;
+        private Duration localTtl;
+        private Duration ttl;
+
+        public Long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(Long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public Duration getLocalTtl() {
+            return localTtl;
+        }
+
+        public void setLocalTtl(Duration localTtl) {
+            this.localTtl = localTtl;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+    }
+}
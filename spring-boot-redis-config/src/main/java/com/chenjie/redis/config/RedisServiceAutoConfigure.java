@@ -1,6 +1,7 @@
 package com.chenjie.redis.config;
 
 import com.chenjie.redis.StarterRedisTemplate;
+import com.chenjie.redis.cache.NearCacheManager;
 import com.chenjie.redis.constant.RedisStarterConstant;
 import com.chenjie.redis.serializer.RedisKeySerializer;
 import com.chenjie.redis.serializer.RedisValueJacksonSerializer;
@@ -10,11 +11,13 @@ import io.lettuce.core.resource.ClientResources;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.cache.RedisCacheWriter;
@@ -25,7 +28,10 @@ import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.util.Assert;
 
 import java.time.Duration;
 
@@ -34,7 +40,7 @@ import java.time.Duration;
  */
 @Slf4j
 @Configuration
-@EnableConfigurationProperties(PrefixConfig.class)
+@EnableConfigurationProperties({PrefixConfig.class, NearCacheProperties.class})
 public class RedisServiceAutoConfigure {
 
     @Autowired
@@ -43,6 +49,12 @@ public class RedisServiceAutoConfigure {
     @Autowired
     private PrefixConfig prefixConfig;
 
+    @Autowired
+    private Environment env;
+
+    @Autowired
+    private NearCacheProperties nearCacheProperties;
+
     /**
      * key 的序列化器
      */
@@ -61,9 +73,27 @@ public class RedisServiceAutoConfigure {
         RedisSerializationContext.SerializationPair<Object> serializationPair = RedisSerializationContext.SerializationPair.fromSerializer(valueRedisSerializer);
         RedisCacheConfiguration redisCacheConfiguration = RedisCacheConfiguration.defaultCacheConfig().serializeValuesWith(serializationPair);
 
+        // 开启本地缓存时使用caffeine + redis二级缓存
+        if (nearCacheProperties.isEnabled()) {
+            return new NearCacheManager(redisConnectionFactory, redisCacheWriter, redisCacheConfiguration, nearCacheProperties);
+        }
         return new RedisCacheManager(redisCacheWriter, redisCacheConfiguration);
     }
 
+    /**
+     * 接收其它节点的二级缓存失效通知
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.redis.near-cache.enabled", havingValue = "true")
+    public RedisMessageListenerContainer nearCacheListenerContainer(RedisConnectionFactory redisConnectionFactory, CacheManager cacheManager) {
+        Assert.isInstanceOf(NearCacheManager.class, cacheManager, "near cache requires the NearCacheManager cacheManager");
+        NearCacheManager nearCacheManager = (NearCacheManager) cacheManager;
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(nearCacheManager, new ChannelTopic(nearCacheManager.getChannel()));
+        return container;
+    }
+
     private GenericObjectPoolConfig getPoolConfig(RedisProperties.Pool properties) {
         GenericObjectPoolConfig config = new GenericObjectPoolConfig();
         config.setMaxTotal(properties.getMaxActive());
@@ -148,6 +178,9 @@ public class RedisServiceAutoConfigure {
         log.info("RedisStarter  ====>  localNamespace: {}   publicNamespace: {}", localNamespace, RedisStarterConstant.publicNamespace);
         starterRedisTemplate.setKeySerializer(keyRedisSerializer);
         starterRedisTemplate.setHashKeySerializer(keyRedisSerializer);
+        // 批量操作的分批大小
+        starterRedisTemplate.setBatchSize(env.getProperty(RedisStarterConstant.BATCH_SIZE, Integer.class, 100));
+        starterRedisTemplate.setPipelineSize(env.getProperty(RedisStarterConstant.BATCH_PIPELINE_SIZE, Integer.class, 1000));
 
         return starterRedisTemplate;
     }
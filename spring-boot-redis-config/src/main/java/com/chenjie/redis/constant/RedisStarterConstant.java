@@ -17,4 +17,12 @@ public class RedisStarterConstant {
      * redis健康状态检查，检查周期
      */
     public static final String DETECT_PERIOD = "spring.redis.detector.period";
+    /**
+     * StarterRedisTemplate批量操作，每条MGET/MSET最多包含的key数量
+     */
+    public static final String BATCH_SIZE = "spring.redis.batch.size";
+    /**
+     * StarterRedisTemplate批量操作，每个pipeline最多包含的命令数量
+     */
+    public static final String BATCH_PIPELINE_SIZE = "spring.redis.batch.pipeline-size";
 }
@@ -0,0 +1,47 @@
+package com.chenjie.redis;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class RedisTestBatch {
+
+    private static final String testKey = "batchKey:";
+    @Autowired
+    private StarterRedisTemplate<String, Object> redisTemplate;
+
+    @Test
+    public void testMultiSetAndGet() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            values.put(testKey + i, "value" + i);
+            keys.add(testKey + i);
+        }
+        redisTemplate.multiSet(values, Duration.ofMinutes(1));
+
+        System.out.println(redisTemplate.multiGet(keys));
+    }
+
+    @Test
+    public void testPipelined() {
+        List<Object> results = redisTemplate.pipelined(ops -> ops
+                .set(testKey + "pipelined", "value", Duration.ofMinutes(1))
+                .get(testKey + "pipelined")
+                .expire(testKey + "pipelined", Duration.ofSeconds(30))
+                .delete(testKey + "pipelined"));
+
+        System.out.println(results);
+    }
+}
@@ -1,7 +1,10 @@
 package com.chenjie.threadlocal.config;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
@@ -10,6 +13,7 @@ import java.util.concurrent.Executor;
 /**
  * 异步配置类
  * 启用异步处理功能并配置线程池
+ * spring.threads.virtual.enabled=true且运行在JDK 21+时改用虚拟线程执行器
  */
 @Configuration
 @EnableAsync
@@ -20,6 +24,7 @@ public class AsyncConfig {
      * 使用自定义线程池来演示 TransmittableThreadLocal 的传递
      */
     @Bean(name = "taskExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
     public Executor taskExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         
@@ -51,4 +56,21 @@ public class AsyncConfig {
         
         return executor;
     }
-} 
\ No newline at end of file
+
+    /**
+     * 虚拟线程异步任务执行器
+     * 每个任务一个虚拟线程，阻塞I/O不占用平台线程；TransmittableThreadLocal随线程创建继承
+     */
+    @Bean(name = "taskExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public Executor virtualTaskExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("AsyncThread-");
+        
+        executor.setVirtualThreads(true);
+        
+        // 关闭时等待任务结束
+        executor.setTaskTerminationTimeout(60000);
+        
+        return executor;
+    }
+}
@@ -0,0 +1,120 @@
+package com.chenjie.threadlocal;
+
+import com.chenjie.threadlocal.context.SystemContext;
+import com.chenjie.threadlocal.context.SystemContextHolder;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 阻塞I/O场景下平台线程池与虚拟线程的吞吐量和尾延迟对比
+ * 每个任务模拟一次阻塞I/O，延迟从提交开始计算(包含排队时间)，10个平台线程时大部分任务在队列中等待，虚拟线程不排队
+ * 虚拟线程部分只在JDK 21+上运行
+ */
+class ExecutorLoadTest {
+    private static final int TASKS = 2000;
+    private static final long IO_MILLIS = 10;
+
+    @Test
+    void testPlatformPoolUnderBlockingIo() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(10, 10, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            LoadResult result = run(executor);
+            assertEquals(TASKS, result.completed);
+            // 2000个任务10个线程，p99几乎全部是排队时间
+            assertTrue(result.p99Millis > IO_MILLIS * TASKS / 10 / 2, "p99 " + result.p99Millis + " ms");
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    @Test
+    void testVirtualThreadsUnderBlockingIo() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "virtual threads require JDK 21+");
+        ThreadPoolExecutor platform = new ThreadPoolExecutor(10, 10, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new ThreadPoolExecutor.CallerRunsPolicy());
+        LoadResult platformResult;
+        try {
+            platformResult = run(platform);
+        } finally {
+            shutdown(platform);
+        }
+        LoadResult virtualResult = run(new VirtualThreadTaskExecutor("load-test-"));
+        assertEquals(TASKS, virtualResult.completed);
+        assertTrue(virtualResult.throughput > platformResult.throughput,
+                "virtual threads should outperform a 10 thread pool under blocking I/O");
+        assertTrue(virtualResult.p99Millis * 10 < platformResult.p99Millis,
+                "virtual p99 " + virtualResult.p99Millis + " ms, platform(10) p99 " + platformResult.p99Millis + " ms");
+    }
+
+    @Test
+    void testContextVisibleInVirtualThread() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "virtual threads require JDK 21+");
+        SystemContextHolder.setContext(SystemContext.createDefault().setUserId("virtual-user"));
+        try {
+            String userId = CompletableFuture.supplyAsync(SystemContextHolder::getUserId,
+                    new VirtualThreadTaskExecutor("load-test-")).get(5, TimeUnit.SECONDS);
+            assertEquals("virtual-user", userId);
+        } finally {
+            SystemContextHolder.clearContext();
+        }
+    }
+
+    private static LoadResult run(Executor executor) throws Exception {
+        long[] latencies = new long[TASKS];
+        AtomicInteger completed = new AtomicInteger();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[TASKS];
+        long start = System.nanoTime();
+        for (int i = 0; i < TASKS; i++) {
+            int index = i;
+            long submitted = System.nanoTime();
+            futures[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    // 模拟阻塞I/O
+                    TimeUnit.MILLISECONDS.sleep(IO_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                latencies[index] = System.nanoTime() - submitted;
+                completed.incrementAndGet();
+            }, executor);
+        }
+        CompletableFuture.allOf(futures).get(2, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        return new LoadResult(completed.get(), TASKS * 1_000_000_000.0 / elapsed, percentile(latencies, 0.99));
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)] / 1_000_000.0;
+    }
+
+    private static void shutdown(ExecutorService executor) throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private static final class LoadResult {
+        private final int completed;
+        private final double throughput;
+        private final double p99Millis;
+
+        private LoadResult(int completed, double throughput, double p99Millis) {
+            this.completed = completed;
+            this.throughput = throughput;
+            this.p99Millis = p99Millis;
+        }
+    }
+}